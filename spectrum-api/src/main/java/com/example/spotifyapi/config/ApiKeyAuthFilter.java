@@ -28,6 +28,7 @@ public class ApiKeyAuthFilter extends OncePerRequestFilter {
         "/api/auth/validate-device",
         "/api/auth/revoke-device",
         "/api/stream/",
+        "/api/sync/status",
         "/h2-console/",
         "/error"
     );
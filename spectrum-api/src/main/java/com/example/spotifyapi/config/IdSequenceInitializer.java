@@ -0,0 +1,53 @@
+package com.example.spotifyapi.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves the id sequences of albums, tracks and genres past their tables' ids.
+ *
+ * The sequences replaced identity columns, and the schema update creates them
+ * starting at 1 next to the rows that already exist. Runs once the schema is
+ * updated and before anything is synchronized.
+ */
+@Component
+public class IdSequenceInitializer {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdSequenceInitializer.class);
+
+    // Table -> sequence, with the allocation size of the entities' generators
+    private static final Map<String, String> SEQUENCES = Map.of(
+            "album", "album_seq",
+            "track", "track_seq",
+            "genre", "genre_seq");
+    private static final int ALLOCATION_SIZE = 50;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // The factory is only injected so the schema is updated first
+    public IdSequenceInitializer(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void initialize() {
+        SEQUENCES.forEach((table, sequence) -> {
+            Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + table, Long.class);
+            List<Long> current = jdbcTemplate.queryForList(
+                    "SELECT BASE_VALUE FROM INFORMATION_SCHEMA.SEQUENCES WHERE LOWER(SEQUENCE_NAME) = ?", Long.class, sequence);
+            // The pooled optimizer hands out up to an allocation below the sequence value
+            long next = maxId + ALLOCATION_SIZE + 1;
+            if (maxId > 0 && !current.isEmpty() && current.get(0) != null && current.get(0) <= maxId + ALLOCATION_SIZE) {
+                jdbcTemplate.execute("ALTER SEQUENCE " + sequence + " RESTART WITH " + next);
+                logger.info("Restarted sequence {} at {}, past the ids of table {}", sequence, next, table);
+            }
+        });
+    }
+}
@@ -1,10 +1,12 @@
 package com.example.spotifyapi.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 
 import java.util.Collections;
 
@@ -14,7 +16,21 @@ public class LidarrConfig {
 
     @Bean
     public RestTemplate lidarrRestTemplate(LidarrProperties lidarrProperties) {
-        RestTemplate restTemplate = new RestTemplate();
+        return createRestTemplate(lidarrProperties, lidarrProperties.getReadTimeoutMs());
+    }
+
+    // Artist lookups of searches give up at the search deadline, so a hung Lidarr doesn't hold search workers
+    @Bean
+    public RestTemplate lidarrSearchRestTemplate(LidarrProperties lidarrProperties,
+                                                 @Value("${search.lidarr-timeout-ms:2000}") int lidarrTimeoutMs) {
+        return createRestTemplate(lidarrProperties, lidarrTimeoutMs);
+    }
+
+    private static RestTemplate createRestTemplate(LidarrProperties lidarrProperties, int readTimeoutMs) {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(lidarrProperties.getConnectTimeoutMs());
+        requestFactory.setReadTimeout(readTimeoutMs);
+        RestTemplate restTemplate = new RestTemplate(requestFactory);
         
         // Add API key as a header interceptor
         ClientHttpRequestInterceptor apiKeyInterceptor = (request, body, execution) -> {
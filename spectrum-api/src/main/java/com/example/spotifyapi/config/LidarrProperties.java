@@ -6,6 +6,8 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 public class LidarrProperties {
     private String baseUrl = "http://192.168.0.103:8686/api/v1";
     private String apiKey = "759365b6a6cd444d9d38734199169f0f";
+    private int connectTimeoutMs = 5000;
+    private int readTimeoutMs = 60000;
 
     public String getBaseUrl() {
         return baseUrl;
@@ -22,4 +24,20 @@ public class LidarrProperties {
     public void setApiKey(String apiKey) {
         this.apiKey = apiKey;
     }
+
+    public int getConnectTimeoutMs() {
+        return connectTimeoutMs;
+    }
+
+    public void setConnectTimeoutMs(int connectTimeoutMs) {
+        this.connectTimeoutMs = connectTimeoutMs;
+    }
+
+    public int getReadTimeoutMs() {
+        return readTimeoutMs;
+    }
+
+    public void setReadTimeoutMs(int readTimeoutMs) {
+        this.readTimeoutMs = readTimeoutMs;
+    }
 }
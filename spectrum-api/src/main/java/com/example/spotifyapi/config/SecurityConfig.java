@@ -11,6 +11,7 @@ import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import org.springframework.beans.factory.annotation.Autowired;
+import com.example.spotifyapi.service.StreamingService;
 
 import java.util.Arrays;
 
@@ -58,6 +59,11 @@ public class SecurityConfig {
         configuration.setAllowedOriginPatterns(Arrays.asList("*"));
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS"));
         configuration.setAllowedHeaders(Arrays.asList("*"));
+        // Streaming headers the player reads
+        configuration.setExposedHeaders(Arrays.asList(
+                StreamingService.REPLAYGAIN_TRACK_GAIN, StreamingService.REPLAYGAIN_TRACK_PEAK,
+                StreamingService.REPLAYGAIN_ALBUM_GAIN, StreamingService.REPLAYGAIN_ALBUM_PEAK,
+                "X-Waveform-Buckets"));
         configuration.setAllowCredentials(true);
         configuration.setMaxAge(3600L);
         
@@ -1,13 +1,20 @@
 package com.example.spotifyapi.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.Map;
 
 import com.example.spotifyapi.dto.searchResultsDto;
+import com.example.spotifyapi.dto.suggestionDto;
 import com.example.spotifyapi.service.SearchService;
+import com.example.spotifyapi.service.SuggestionService;
 
 @RestController
 @RequestMapping("/search")
@@ -15,9 +22,57 @@ public class SearchController {
     
     @Autowired
     private SearchService searchService;
+    
+    @Autowired
+    private SuggestionService suggestionService;
 
+    /**
+     * Search the library and Lidarr
+     * 
+     * @param query The search query
+     * @param offset The number of results skipped in every section
+     * @param limit The most results per section, by default and at most search.max-results-per-section
+     * @return One page of every section; a section shorter than the limit has no further pages
+     */
     @GetMapping
-    public searchResultsDto search(@RequestParam("query") String query) {
-        return searchService.search(query);
+    public searchResultsDto search(@RequestParam("query") String query,
+                                   @RequestParam(value = "offset", defaultValue = "0") int offset,
+                                   @RequestParam(value = "limit", required = false) Integer limit) {
+        return searchService.search(query, offset, limit != null ? limit : Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Search like {@link #search(String, int, Integer)}, sending each section as server-sent events as soon as it is ready
+     * 
+     * @param query The search query
+     * @return The event stream
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter searchStream(@RequestParam("query") String query) {
+        return searchService.searchStream(query);
+    }
+    
+    /**
+     * Get the search cache's statistics
+     * 
+     * @return Hit, miss, shared load, eviction and invalidation counts, and the cache's size
+     */
+    @GetMapping("/cache/stats")
+    public Map<String, Long> getCacheStats() {
+        return searchService.getCacheStats();
+    }
+    
+    /**
+     * Suggest library names while the query is typed.
+     * Only the library is searched, Lidarr is searched on submit through {@link #search(String, int, Integer)}.
+     * 
+     * @param query The query typed so far
+     * @param limit The most suggestions returned
+     * @return The suggestions, most popular first
+     */
+    @GetMapping("/suggest")
+    public List<suggestionDto> suggest(@RequestParam("query") String query,
+                                       @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        return suggestionService.suggest(query, limit);
     }
 }
@@ -3,8 +3,14 @@ package com.example.spotifyapi.controller;
 import com.example.spotifyapi.model.Track;
 import com.example.spotifyapi.service.StreamingService;
 import com.example.spotifyapi.service.TrackService;
+import com.example.spotifyapi.service.WaveformService;
+import com.example.spotifyapi.streaming.TranscodeProfile;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.Resource;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -12,20 +18,33 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.IOException;
+import java.nio.file.NoSuchFileException;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/stream")
 @CrossOrigin(origins = "*")
 public class StreamingController {
 
+    private static final Logger logger = LoggerFactory.getLogger(StreamingController.class);
+
     private final StreamingService streamingService;
     private final TrackService trackService;
+    private final WaveformService waveformService;
+    
+    // Waveforms only change with the file, which changes their ETag
+    @Value("${streaming.cache-control.waveform:private, max-age=31536000}")
+    private String waveformCacheControl;
 
     @Autowired
-    public StreamingController(StreamingService streamingService, TrackService trackService) {
+    public StreamingController(StreamingService streamingService, TrackService trackService,
+                               WaveformService waveformService) {
         this.streamingService = streamingService;
         this.trackService = trackService;
+        this.waveformService = waveformService;
     }
 
     /**
@@ -33,52 +52,138 @@ public class StreamingController {
      * 
      * @param trackId The ID of the track to stream
      * @param range HTTP Range header for partial content streaming
-     * @return ResponseEntity with the audio file as a resource
+     * @param profile Bitrate profile: low, medium or lossless (the default)
+     * @param request The current request
+     * @param response The response the audio is written to
      */
     @GetMapping("/track/{trackId}")
-    public ResponseEntity<Resource> streamTrack(
+    public void streamTrack(
             @PathVariable("trackId") Long trackId,
-            @RequestHeader(value = "Range", required = false) String range) {
+            @RequestHeader(value = "Range", required = false) String range,
+            @RequestParam(value = "profile", required = false) String profile,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        
+        TranscodeProfile transcodeProfile;
+        try {
+            transcodeProfile = TranscodeProfile.fromName(profile);
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpStatus.BAD_REQUEST.value());
+            return;
+        }
         
         try {
             // Get track from database
             Optional<Track> trackOpt = trackService.getByLidarrTrackId(trackId);
             if (trackOpt.isEmpty()) {
-                return ResponseEntity.notFound().build();
+                response.setStatus(HttpStatus.NOT_FOUND.value());
+                return;
             }
             
             Track track = trackOpt.get();
             
             // Check if track has an audio file path
             if (track.getAudioUrl() == null || track.getAudioUrl().isEmpty()) {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+                response.setStatus(HttpStatus.NOT_FOUND.value());
+                return;
             }
             
             // Log the audio URL being accessed
-            System.out.println("Streaming audio from URL: " + track.getAudioUrl());
-            
-            // Get the resource and content length
-            Resource audioResource = streamingService.getAudioResource(track);
-            long contentLength = audioResource.contentLength();
+            logger.debug("Streaming audio from URL: {}", track.getAudioUrl());
             
             // Determine content type based on file extension
             String contentType = determineContentType(track.getAudioUrl());
             
-            // Handle range requests (for seeking within the audio)
-            if (range != null && !range.isEmpty()) {
-                return streamingService.prepareRangeResponse(audioResource, range, contentType, contentLength);
-            }
-            
-            // Return the full resource if no range is specified
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .contentLength(contentLength)
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + audioResource.getFilename() + "\"")
-                    .body(audioResource);
+            // Write the audio (or the requested range of it) directly to the response
+            streamingService.streamAudio(track, range, contentType, transcodeProfile, request, response);
                     
         } catch (IOException e) {
-            System.out.println("Error streaming track: " + e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            logger.warn("Error streaming track {}: {}", trackId, e.getMessage());
+            if (!response.isCommitted()) {
+                response.reset();
+                response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            }
+        }
+    }
+    
+    /**
+     * Get the HLS playlist for an MP3 track, for players that fetch fixed-duration segments.
+     * Other formats are only streamed with ranges, see streamTrack
+     * 
+     * @param trackId The ID of the track
+     * @param request The current request
+     * @param response The response the playlist is written to
+     */
+    @GetMapping("/track/{trackId}/playlist.m3u8")
+    public void streamPlaylist(
+            @PathVariable("trackId") Long trackId,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        Track track = findSegmentableTrack(trackId, response);
+        if (track == null) {
+            return;
+        }
+        
+        try {
+            streamingService.streamPlaylist(track, request, response);
+        } catch (IOException e) {
+            logger.warn("Error creating playlist of track {}: {}", trackId, e.getMessage());
+            sendError(response);
+        }
+    }
+    
+    /**
+     * Get one HLS segment of a track
+     * 
+     * @param trackId The ID of the track
+     * @param segment The segment number from the playlist
+     * @param request The current request
+     * @param response The response the segment is written to
+     */
+    @GetMapping("/track/{trackId}/segment/{segment}")
+    public void streamSegment(
+            @PathVariable("trackId") Long trackId,
+            @PathVariable("segment") int segment,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        Track track = findSegmentableTrack(trackId, response);
+        if (track == null) {
+            return;
+        }
+        
+        try {
+            streamingService.streamSegment(track, segment, request, response);
+        } catch (IOException e) {
+            logger.warn("Error streaming segment {} of track {}: {}", segment, trackId, e.getMessage());
+            sendError(response);
+        }
+    }
+    
+    /**
+     * Find a track whose audio is a local MP3 file, the format HLS carries as packed audio without remuxing
+     * 
+     * @param trackId The Lidarr ID of the track
+     * @param response The response, set to 404 if there is no such track
+     * @return The track, or null if not found
+     */
+    private Track findSegmentableTrack(Long trackId, HttpServletResponse response) {
+        Optional<Track> trackOpt = trackService.getByLidarrTrackId(trackId);
+        String audioUrl = trackOpt.map(Track::getAudioUrl).orElse(null);
+        if (audioUrl == null || audioUrl.startsWith("http")) {
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return null;
+        }
+        if (!determineContentType(audioUrl).equals("audio/mpeg")) {
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return null;
+        }
+        return trackOpt.get();
+    }
+    
+    private void sendError(HttpServletResponse response) {
+        if (!response.isCommitted()) {
+            response.reset();
+            response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
         }
     }
     
@@ -108,19 +213,73 @@ public class StreamingController {
      * Get audio metadata for a track
      * 
      * @param trackId The ID of the track
+     * @param request The current request
+     * @param response The response validators are written to
      * @return ResponseEntity with track metadata
      */
     @GetMapping("/metadata/{id}")
-    public ResponseEntity<?> getAudioMetadata(@PathVariable("id") Long trackId) {
+    public ResponseEntity<?> getAudioMetadata(
+            @PathVariable("id") Long trackId,
+            HttpServletRequest request,
+            HttpServletResponse response) {
         Optional<Track> track = trackService.getTrackById(trackId);
         if (track.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
         
         try {
+            // Answered with 304 Not Modified when the client's copy is still current
+            if (streamingService.checkMetadataNotModified(track.get(), request, response)) {
+                return null;
+            }
             return ResponseEntity.ok(streamingService.getAudioMetadata(track.get()));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error retrieving audio metadata: " + e.getMessage());
         }
     }
+    
+    /**
+     * Get the waveform peaks of a track: one signed min/max byte pair per bucket
+     * 
+     * @param trackId The ID of the track
+     * @return ResponseEntity with the peaks, once computed
+     */
+    @GetMapping("/waveform/{id}")
+    public CompletableFuture<ResponseEntity<?>> getWaveform(@PathVariable("id") Long trackId) {
+        Optional<Track> track = trackService.getTrackById(trackId);
+        if (track.isEmpty() || track.get().getAudioUrl() == null || track.get().getAudioUrl().startsWith("http")) {
+            return CompletableFuture.completedFuture(ResponseEntity.notFound().build());
+        }
+        
+        // Answered on the waveform worker thread, the request thread is released meanwhile
+        return waveformService.getWaveform(track.get())
+                .<ResponseEntity<?>>thenApply(waveform -> ResponseEntity.ok()
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .header(HttpHeaders.CACHE_CONTROL, waveformCacheControl)
+                        .header("X-Waveform-Buckets", String.valueOf(waveform.getBuckets()))
+                        .eTag("w" + waveform.getBuckets() + "-" + waveform.getTrackId() + "-"
+                                + Long.toHexString(waveform.getFileSize()) + "-" + Long.toHexString(waveform.getLastModified()))
+                        .body(waveform.getPeaks()))
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof RejectedExecutionException) {
+                        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "5").build();
+                    }
+                    if (cause instanceof IllegalStateException) {
+                        // No decoder, retrying will not help until ffmpeg is installed
+                        logger.warn("Cannot compute waveform of track {}: {}", trackId, cause.getMessage());
+                        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+                    }
+                    if (cause instanceof NoSuchFileException) {
+                        return ResponseEntity.notFound().build();
+                    }
+                    if (cause instanceof IOException) {
+                        // ffmpeg could not decode the file, there is no waveform to serve
+                        logger.warn("Cannot decode track {}: {}", trackId, cause.getMessage());
+                        return ResponseEntity.notFound().build();
+                    }
+                    logger.error("Error computing waveform of track {}", trackId, cause);
+                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error computing waveform: " + cause.getMessage());
+                });
+    }
 }
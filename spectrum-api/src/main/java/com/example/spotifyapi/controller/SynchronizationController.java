@@ -0,0 +1,31 @@
+package com.example.spotifyapi.controller;
+
+import com.example.spotifyapi.service.SynchronizationService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/sync")
+@CrossOrigin(origins = "*")
+public class SynchronizationController {
+
+    private final SynchronizationService synchronizationService;
+
+    @Autowired
+    public SynchronizationController(SynchronizationService synchronizationService) {
+        this.synchronizationService = synchronizationService;
+    }
+
+    // Public, so readiness probes can tell whether the initial synchronization completed:
+    // 503 Service Unavailable until it did, with the same body
+    @GetMapping("/status")
+    public ResponseEntity<Map<String, Object>> getStatus() {
+        Map<String, Object> status = synchronizationService.getStatus();
+        HttpStatus httpStatus = Boolean.TRUE.equals(status.get("ready")) ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE;
+        return ResponseEntity.status(httpStatus).body(status);
+    }
+}
@@ -22,7 +22,17 @@ public class AudioMetadataDto {
     private String format;
     private String sampleRate;
     private String channels;
+    private String bitDepth;
+    // Average bitrate in kbps
+    private String bitrate;
     private int duration;
+    private long durationMs;
     private long fileSize;
+    // EBU R128 loudness (LUFS), true peaks (dBTP) and ReplayGain gains (dB), null until analyzed
+    private Double integratedLoudness;
+    private Double truePeak;
+    private Double trackGain;
+    private Double albumGain;
+    private Double albumTruePeak;
     private Map<String, String> additionalProperties;
 }
@@ -14,4 +14,6 @@ public class searchResultsDto {
     private List<searchResultDto> artists = new ArrayList<>();
     private List<searchResultDto> tracks = new ArrayList<>();
     private List<searchResultDto> playlists = new ArrayList<>();
+    // Sources ("library", "lidarr") that missed their deadline, their sections may be incomplete
+    private List<String> timedOut = new ArrayList<>();
 }
@@ -0,0 +1,18 @@
+package com.example.spotifyapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class suggestionDto {
+    // ARTIST, ALBUM, TRACK or PLAYLIST
+    private String type;
+    private String name;
+    private String imageUrl;
+    private String foreignId;
+    private String lidarrId;
+    private String metadata;
+}
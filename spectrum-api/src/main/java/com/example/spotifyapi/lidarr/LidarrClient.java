@@ -4,11 +4,13 @@ import com.example.spotifyapi.config.LidarrProperties;
 import com.example.spotifyapi.lidarr.dto.LidarrAddArtistrequestDto;
 import com.example.spotifyapi.lidarr.dto.LidarrAlbumDto;
 import com.example.spotifyapi.lidarr.dto.LidarrArtistDto;
+import com.example.spotifyapi.lidarr.dto.LidarrHistoryDto;
 import com.example.spotifyapi.lidarr.dto.LidarrTrackDto;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
@@ -16,13 +18,16 @@ import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -39,12 +44,16 @@ public class LidarrClient {
     
     private final LidarrProperties lidarrProperties;
     private final RestTemplate lidarrRestTemplate;
+    private final RestTemplate lidarrSearchRestTemplate;
     private final Logger logger = LoggerFactory.getLogger(LidarrClient.class);
 
     @Autowired
-    public LidarrClient(LidarrProperties lidarrProperties, RestTemplate lidarrRestTemplate) {
+    public LidarrClient(LidarrProperties lidarrProperties,
+                        @Qualifier("lidarrRestTemplate") RestTemplate lidarrRestTemplate,
+                        @Qualifier("lidarrSearchRestTemplate") RestTemplate lidarrSearchRestTemplate) {
         this.lidarrProperties = lidarrProperties;
         this.lidarrRestTemplate = lidarrRestTemplate;
+        this.lidarrSearchRestTemplate = lidarrSearchRestTemplate;
     }
     
     /**
@@ -128,38 +137,82 @@ public class LidarrClient {
      * @param artistId Artist ID in Lidarr
      * @param albumId Album ID in Lidarr
      * @param albumReleaseId Album Release ID in Lidarr (optional)
-     * @return List of tracks for the album
+     * @return List of tracks for the album, empty on errors
      */
     public List<LidarrTrackDto> getTracksByAlbumId(Integer artistId, Integer albumId, Integer albumReleaseId) {
         try {
-            UriComponentsBuilder builder = UriComponentsBuilder
-                    .fromUriString(lidarrProperties.getBaseUrl() + "/track");
-            
-            // Add artistId if provided
-            if (artistId != null) {
-                builder.queryParam("artistId", artistId);
-            }
-            
-            // Always add albumId as it's required
-            builder.queryParam("albumId", albumId);
-            
-            // Add albumReleaseId if provided
-            if (albumReleaseId != null) {
-                builder.queryParam("albumReleaseId", albumReleaseId);
-            }
-            
-            String url = builder.build().toUriString();
-            logger.info("Fetching tracks from URL: {}", url);
+            return fetchTracksByAlbumId(artistId, albumId, albumReleaseId);
+        } catch (Exception e) {
+            logger.error("Error fetching tracks for artist ID {}, album ID {} from Lidarr: {}", artistId, albumId, e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+    
+    /**
+     * Get tracks for an album from Lidarr, for callers that must tell a failed request from an album without tracks
+     * @param artistId Artist ID in Lidarr
+     * @param albumId Album ID in Lidarr
+     * @param albumReleaseId Album Release ID in Lidarr (optional)
+     * @return List of tracks for the album
+     * @throws RestClientException If Lidarr could not be reached or answered with an error or no body
+     */
+    public List<LidarrTrackDto> fetchTracksByAlbumId(Integer artistId, Integer albumId, Integer albumReleaseId) {
+        UriComponentsBuilder builder = UriComponentsBuilder
+                .fromUriString(lidarrProperties.getBaseUrl() + "/track");
+        
+        // Add artistId if provided
+        if (artistId != null) {
+            builder.queryParam("artistId", artistId);
+        }
+        
+        // Always add albumId as it's required
+        builder.queryParam("albumId", albumId);
+        
+        // Add albumReleaseId if provided
+        if (albumReleaseId != null) {
+            builder.queryParam("albumReleaseId", albumReleaseId);
+        }
+        
+        String url = builder.build().toUriString();
+        logger.info("Fetching tracks from URL: {}", url);
+        
+        ResponseEntity<List<LidarrTrackDto>> response = lidarrRestTemplate.exchange(
+                url,
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<List<LidarrTrackDto>>() {}
+        );
+        if (response.getBody() == null) {
+            throw new RestClientException("Empty track list response for album ID " + albumId);
+        }
+        return response.getBody();
+    }
+    
+    /**
+     * Get the history events since a date from Lidarr, e.g. imported track files
+     * @param since Date of the oldest events returned
+     * @return List of events, oldest first, empty on errors
+     */
+    public List<LidarrHistoryDto> getHistorySince(Instant since) {
+        try {
+            String url = UriComponentsBuilder
+                    .fromUriString(lidarrProperties.getBaseUrl() + "/history/since")
+                    .queryParam("date", since.toString())
+                    .build()
+                    .toUriString();
             
-            ResponseEntity<List<LidarrTrackDto>> response = lidarrRestTemplate.exchange(
+            ResponseEntity<List<LidarrHistoryDto>> response = lidarrRestTemplate.exchange(
                     url,
                     HttpMethod.GET,
                     null,
-                    new ParameterizedTypeReference<List<LidarrTrackDto>>() {}
+                    new ParameterizedTypeReference<List<LidarrHistoryDto>>() {}
             );
-            return response.getBody();
+            List<LidarrHistoryDto> events = response.getBody() != null ? new ArrayList<>(response.getBody()) : new ArrayList<>();
+            events.sort(Comparator.comparing(LidarrHistoryDto::getDate, Comparator.nullsFirst(Comparator.naturalOrder()))
+                    .thenComparing(LidarrHistoryDto::getId, Comparator.nullsFirst(Comparator.naturalOrder())));
+            return events;
         } catch (Exception e) {
-            logger.error("Error fetching tracks for artist ID {}, album ID {} from Lidarr: {}", artistId, albumId, e.getMessage());
+            logger.error("Error fetching history since {} from Lidarr: {}", since, e.getMessage());
             return Collections.emptyList();
         }
     }
@@ -192,7 +245,7 @@ public class LidarrClient {
     }
     
     /**
-     * Search for artists in Lidarr
+     * Search for artists in Lidarr, with the read timeout of searches
      * @param term Search term
      * @return List of artists matching the search term
      */
@@ -204,7 +257,7 @@ public class LidarrClient {
                     .build()
                     .toUriString();
             
-            ResponseEntity<List<LidarrArtistDto>> response = lidarrRestTemplate.exchange(
+            ResponseEntity<List<LidarrArtistDto>> response = lidarrSearchRestTemplate.exchange(
                     url,
                     HttpMethod.GET,
                     null,
@@ -0,0 +1,97 @@
+package com.example.spotifyapi.lidarr;
+
+import com.example.spotifyapi.lidarr.dto.LidarrAlbumDto;
+import com.example.spotifyapi.lidarr.dto.LidarrArtistDto;
+
+import java.util.List;
+
+/**
+ * 64-bit FNV-1a hash of the fields of a Lidarr payload that the library stores,
+ * so a synchronization can tell unchanged artists and albums apart without
+ * comparing them field by field. Fields Lidarr changes on its own without
+ * affecting the library, like ratings, are left out.
+ */
+public final class PayloadHash {
+
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private long hash = OFFSET_BASIS;
+
+    private PayloadHash() {
+    }
+
+    /**
+     * @param artist An artist from Lidarr
+     * @return The hash of the artist's stored fields
+     */
+    public static long of(LidarrArtistDto artist) {
+        PayloadHash hash = new PayloadHash()
+                .add(artist.getArtistName())
+                .add(artist.getForeignArtistId())
+                .add(artist.getOverview())
+                .add(artist.getGenres());
+        if (artist.getImages() != null) {
+            for (LidarrArtistDto.LidarrImageDto image : artist.getImages()) {
+                hash.add(image.getCoverType()).add(image.getUrl()).add(image.getRemoteUrl());
+            }
+        }
+        return hash.hash;
+    }
+
+    /**
+     * @param album An album from Lidarr
+     * @return The hash of the album's stored fields, including its track file count
+     */
+    public static long of(LidarrAlbumDto album) {
+        PayloadHash hash = new PayloadHash()
+                .add(album.getTitle())
+                .add(album.getAlbumType())
+                .add(album.getReleaseDate())
+                .add(album.getForeignAlbumId())
+                .add(album.getGenres());
+        if (album.getImages() != null) {
+            for (LidarrAlbumDto.Image image : album.getImages()) {
+                hash.add(image.getCoverType()).add(image.getUrl()).add(image.getRemoteUrl());
+            }
+        }
+        if (album.getReleases() != null) {
+            for (LidarrAlbumDto.Release release : album.getReleases()) {
+                hash.add(release.getId()).add(release.getAlbumId()).add(release.getMonitored());
+            }
+        }
+        LidarrAlbumDto.Statistics statistics = album.getStatistics();
+        if (statistics != null) {
+            hash.add(statistics.getTrackFileCount()).add(statistics.getTrackCount());
+        }
+        return hash.hash;
+    }
+
+    private PayloadHash add(List<String> values) {
+        if (values != null) {
+            values.forEach(this::add);
+        }
+        // Separates the list from the next field
+        return add((Object) null);
+    }
+
+    private PayloadHash add(Object value) {
+        if (value == null) {
+            // Distinct from an empty string
+            return addByte(0xff);
+        }
+        String text = value.toString();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            addByte(c & 0xff);
+            addByte(c >>> 8);
+        }
+        return addByte(0);
+    }
+
+    private PayloadHash addByte(int b) {
+        hash ^= b;
+        hash *= PRIME;
+        return this;
+    }
+}
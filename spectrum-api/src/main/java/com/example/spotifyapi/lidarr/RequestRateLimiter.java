@@ -0,0 +1,47 @@
+package com.example.spotifyapi.lidarr;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces requests evenly to stay under a rate, shared by concurrent callers.
+ * Every caller reserves the next free slot and sleeps until it, so bursts are
+ * not allowed and waiting callers are served in the order they arrived.
+ */
+public final class RequestRateLimiter {
+
+    private final long intervalNanos;
+    private long nextFreeNanos;
+
+    /**
+     * @param requestsPerSecond The rate, zero or less for no limit
+     */
+    public RequestRateLimiter(double requestsPerSecond) {
+        this.intervalNanos = requestsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond) : 0;
+        this.nextFreeNanos = System.nanoTime();
+    }
+
+    /**
+     * Wait until the next request may be sent
+     *
+     * @return False if interrupted while waiting, the request should then not be sent
+     */
+    public boolean acquire() {
+        if (intervalNanos == 0) {
+            return !Thread.currentThread().isInterrupted();
+        }
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long slot = Math.max(nextFreeNanos, now);
+            nextFreeNanos = slot + intervalNanos;
+            waitNanos = slot - now;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
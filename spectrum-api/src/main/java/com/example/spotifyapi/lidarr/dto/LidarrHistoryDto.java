@@ -0,0 +1,21 @@
+package com.example.spotifyapi.lidarr.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+
+import java.time.ZonedDateTime;
+
+/**
+ * An event of Lidarr's history, e.g. a grabbed release or an imported track file
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class LidarrHistoryDto {
+    private Integer id;
+    private Integer albumId;
+    private Integer artistId;
+    private Integer trackId;
+    private String sourceTitle;
+    private ZonedDateTime date;
+    private String eventType;
+}
@@ -0,0 +1,410 @@
+package com.example.spotifyapi.media;
+
+import com.example.spotifyapi.search.TextNormalizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Index of the audio files under the media root by artist folder, album folder
+ * and track number, so resolving a track's file is a hash lookup instead of
+ * probing the file system.
+ *
+ * The media root is laid out as artist/album/"NN - Title.ext". Artist and
+ * album names are folded like search text, so "Sigur+Rós" on disk matches the
+ * artist "Sigur Rós". Refreshing walks the artist folders in parallel and only
+ * lists directories whose modification time changed since the last refresh.
+ * Albums whose files changed after the index was first built are remembered
+ * until {@link #drainChangedAlbums()}.
+ */
+@Component
+public class MediaIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(MediaIndex.class);
+
+    // Extensions of audio files, the earlier preferred when a track has several files
+    private static final List<String> AUDIO_EXTENSIONS = List.of(".flac", ".mp3", ".wav", ".m4a", ".ogg");
+    // Directory times this recent are not trusted, a file added within the same tick would go unnoticed
+    private static final long MTIME_GRANULARITY_MS = 2000;
+
+    private final String mediaRoot;
+    private final Path root;
+    private final int threads;
+
+    // Every directory listed by the last refreshes
+    private final Map<Path, DirectoryState> directories = new ConcurrentHashMap<>();
+    // Album key -> track number -> files of the track
+    private final Map<String, Map<Integer, List<TrackFile>>> albums = new ConcurrentHashMap<>();
+    // Keys of albums whose files were added or removed since they were last drained
+    private final Set<String> changedAlbums = ConcurrentHashMap.newKeySet();
+    // Changes are only tracked once the index was built, not everything is new then
+    private volatile boolean trackChanges;
+    // Whether a refresh completed, the missing media root is only reported once
+    private volatile boolean refreshed;
+
+    public MediaIndex(@Value("${lidarr.FileRoot}") String mediaRoot,
+                      @Value("${media.index.threads:8}") int threads) {
+        this.mediaRoot = mediaRoot;
+        this.root = Paths.get(mediaRoot);
+        this.threads = threads;
+    }
+
+    /**
+     * Find the audio file of a track, as of the last refresh
+     *
+     * @param artistName The artist's name
+     * @param albumTitle The album's title
+     * @param trackNumber The absolute track number
+     * @return The file's path under the media root, or null if there is none
+     */
+    public String find(String artistName, String albumTitle, int trackNumber) {
+        Map<Integer, List<TrackFile>> tracks = albums.get(albumKey(artistName, albumTitle));
+        return tracks != null ? preferred(tracks.get(trackNumber)) : null;
+    }
+
+    /**
+     * Find the audio files of an album, as of the last refresh
+     *
+     * @param artistName The artist's name
+     * @param albumTitle The album's title
+     * @return The file's path under the media root by track number, empty if there are none
+     */
+    public Map<Integer, String> findAlbum(String artistName, String albumTitle) {
+        Map<Integer, String> files = new HashMap<>();
+        Map<Integer, List<TrackFile>> tracks = albums.get(albumKey(artistName, albumTitle));
+        if (tracks != null) {
+            tracks.forEach((trackNumber, trackFiles) -> {
+                String path = preferred(trackFiles);
+                if (path != null) {
+                    files.put(trackNumber, path);
+                }
+            });
+        }
+        return files;
+    }
+
+    /**
+     * Get and forget the albums whose files changed since the last call
+     *
+     * @return Keys of the albums, as built by {@link #albumKey}
+     */
+    public Set<String> drainChangedAlbums() {
+        Set<String> drained = new HashSet<>();
+        for (String key : changedAlbums) {
+            if (changedAlbums.remove(key)) {
+                drained.add(key);
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * @return The key of an album in the index, equal for the album's folder and its names
+     */
+    public static String albumKey(String artistName, String albumTitle) {
+        return TextNormalizer.fold(artistName) + '\u0000' + TextNormalizer.fold(albumTitle);
+    }
+
+    /**
+     * @param albumKey A key built by {@link #albumKey}
+     * @return The folded album title of the key, as stored in the album's media title
+     */
+    public static String titleOfKey(String albumKey) {
+        return albumKey.substring(albumKey.indexOf('\u0000') + 1);
+    }
+
+    /**
+     * Bring the index up to date with the media root. Directories are only listed
+     * again if their modification time changed.
+     */
+    public synchronized void refresh() {
+        long started = System.currentTimeMillis();
+        AtomicInteger listed = new AtomicInteger();
+        try {
+            BasicFileAttributes rootAttributes = Files.readAttributes(root, BasicFileAttributes.class);
+            DirectoryState known = directories.get(root);
+            List<Path> artistDirectories;
+            if (known != null && known.isUnchanged(rootAttributes.lastModifiedTime())) {
+                artistDirectories = known.subdirectories;
+            } else {
+                artistDirectories = new ArrayList<>();
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(root, Files::isDirectory)) {
+                    entries.forEach(artistDirectories::add);
+                }
+                DirectoryState state = new DirectoryState(trustedTime(rootAttributes.lastModifiedTime(), started));
+                state.subdirectories.addAll(artistDirectories);
+                commit(root, state);
+                listed.incrementAndGet();
+            }
+
+            AtomicInteger threadCount = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "media-index-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            try {
+                CompletableFuture.allOf(artistDirectories.stream()
+                                .map(directory -> CompletableFuture.runAsync(() -> walk(directory, started, listed), executor))
+                                .toArray(CompletableFuture[]::new))
+                        .join();
+            } finally {
+                executor.shutdownNow();
+            }
+            refreshed = true;
+            trackChanges = true;
+        } catch (NoSuchFileException e) {
+            if (!refreshed) {
+                logger.warn("Media root {} does not exist, no audio files are indexed", mediaRoot);
+            }
+            clear();
+            refreshed = true;
+            trackChanges = true;
+            return;
+        } catch (IOException | RuntimeException e) {
+            logger.error("Error refreshing the media index of {}", mediaRoot, e);
+            return;
+        }
+        logger.info("Refreshed media index in {} ms: listed {} of {} directories, {} albums indexed",
+                System.currentTimeMillis() - started, listed.get(), directories.size(), albums.size());
+    }
+
+    private void walk(Path directory, long started, AtomicInteger listed) {
+        try {
+            Files.walkFileTree(directory, new RefreshVisitor(started, listed));
+        } catch (IOException e) {
+            logger.warn("Could not index media directory {}", directory, e);
+        }
+    }
+
+    /**
+     * Walks a subtree, listing changed directories and only checking the
+     * subdirectories of unchanged ones. Changes of a directory are committed
+     * once all its entries were visited.
+     */
+    private final class RefreshVisitor extends SimpleFileVisitor<Path> {
+
+        private final long started;
+        private final AtomicInteger listed;
+        // Directories being listed, innermost first
+        private final Deque<Path> pathStack = new ArrayDeque<>();
+        private final Deque<DirectoryState> stateStack = new ArrayDeque<>();
+
+        RefreshVisitor(long started, AtomicInteger listed) {
+            this.started = started;
+            this.listed = listed;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+            if (!pathStack.isEmpty() && dir.getParent().equals(pathStack.peek())) {
+                stateStack.peek().subdirectories.add(dir);
+            }
+            DirectoryState known = directories.get(dir);
+            if (known != null && known.isUnchanged(attributes.lastModifiedTime())) {
+                // Same entries as before, but files deeper down may have changed
+                for (Path subdirectory : known.subdirectories) {
+                    Files.walkFileTree(subdirectory, this);
+                }
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+            pathStack.push(dir);
+            stateStack.push(new DirectoryState(trustedTime(attributes.lastModifiedTime(), started)));
+            listed.incrementAndGet();
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+            if (attributes.isRegularFile() && !pathStack.isEmpty() && file.getParent().equals(pathStack.peek())) {
+                TrackFile trackFile = toTrackFile(file);
+                if (trackFile != null) {
+                    stateStack.peek().files.add(trackFile);
+                }
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e) {
+            logger.debug("Could not read media file {}: {}", file, e.getMessage());
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+            if (pathStack.isEmpty() || !dir.equals(pathStack.peek())) {
+                return FileVisitResult.CONTINUE;
+            }
+            pathStack.pop();
+            DirectoryState state = stateStack.pop();
+            if (e != null) {
+                // Keep what was known, the directory is listed again next time
+                logger.debug("Could not list media directory {}: {}", dir, e.getMessage());
+                DirectoryState known = directories.get(dir);
+                if (known != null) {
+                    known.mtime = null;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+            commit(dir, state);
+            return FileVisitResult.CONTINUE;
+        }
+    }
+
+    // Replace the state of a directory, adding its new files before removing its old ones
+    private void commit(Path dir, DirectoryState state) {
+        DirectoryState previous = directories.put(dir, state);
+        state.files.forEach(this::addFile);
+        if (previous == null) {
+            return;
+        }
+        Set<TrackFile> current = new HashSet<>(state.files);
+        previous.files.stream().filter(file -> !current.contains(file)).forEach(this::removeFile);
+        Set<Path> subdirectories = new HashSet<>(state.subdirectories);
+        previous.subdirectories.stream().filter(subdirectory -> !subdirectories.contains(subdirectory)).forEach(this::remove);
+    }
+
+    // Drop a directory that no longer exists, with everything below it
+    private void remove(Path dir) {
+        DirectoryState state = directories.remove(dir);
+        if (state != null) {
+            state.files.forEach(this::removeFile);
+            state.subdirectories.forEach(this::remove);
+        }
+    }
+
+    private void clear() {
+        directories.clear();
+        albums.clear();
+    }
+
+    // Changes of an album are serialized by computing its entry, lookups read the track map meanwhile
+    private void addFile(TrackFile file) {
+        albums.compute(file.albumKey(), (key, tracks) -> {
+            Map<Integer, List<TrackFile>> updatedTracks = tracks != null ? tracks : new ConcurrentHashMap<>();
+            List<TrackFile> files = updatedTracks.getOrDefault(file.trackNumber(), List.of());
+            if (!files.contains(file)) {
+                List<TrackFile> updated = new ArrayList<>(files);
+                updated.add(file);
+                updatedTracks.put(file.trackNumber(), List.copyOf(updated));
+                changed(key);
+            }
+            return updatedTracks;
+        });
+    }
+
+    private void removeFile(TrackFile file) {
+        albums.computeIfPresent(file.albumKey(), (key, tracks) -> {
+            List<TrackFile> files = tracks.get(file.trackNumber());
+            if (files != null && files.contains(file)) {
+                List<TrackFile> updated = new ArrayList<>(files);
+                updated.remove(file);
+                if (updated.isEmpty()) {
+                    tracks.remove(file.trackNumber());
+                } else {
+                    tracks.put(file.trackNumber(), List.copyOf(updated));
+                }
+                changed(key);
+            }
+            return tracks.isEmpty() ? null : tracks;
+        });
+    }
+
+    private void changed(String albumKey) {
+        if (trackChanges) {
+            changedAlbums.add(albumKey);
+        }
+    }
+
+    private static String preferred(List<TrackFile> files) {
+        if (files == null || files.isEmpty()) {
+            return null;
+        }
+        return files.stream().min(Comparator.comparingInt(TrackFile::priority)).get().path();
+    }
+
+    // The indexed file of an audio file at artist/album/.../"NN - Title.ext", or null for other files
+    private TrackFile toTrackFile(Path file) {
+        Path relative = root.relativize(file);
+        if (relative.getNameCount() < 3) {
+            return null;
+        }
+        String fileName = file.getFileName().toString();
+        String lowerName = fileName.toLowerCase(Locale.ROOT);
+        int priority = -1;
+        for (int i = 0; i < AUDIO_EXTENSIONS.size(); i++) {
+            if (lowerName.endsWith(AUDIO_EXTENSIONS.get(i))) {
+                priority = i;
+                break;
+            }
+        }
+        int digits = 0;
+        while (digits < fileName.length() && digits < 9 && Character.isDigit(fileName.charAt(digits))) {
+            digits++;
+        }
+        if (priority < 0 || digits == 0) {
+            return null;
+        }
+        int trackNumber = Integer.parseInt(fileName.substring(0, digits));
+        String albumKey = albumKey(relative.getName(0).toString(), relative.getName(1).toString());
+        // Same form as the paths stored so far: the media root as configured, then forward slashes
+        String path = mediaRoot + "/" + relative.toString().replace(File.separatorChar, '/');
+        return new TrackFile(albumKey, trackNumber, priority, path);
+    }
+
+    // Times too close to the refresh are not remembered, so the directory is listed again
+    private static FileTime trustedTime(FileTime mtime, long started) {
+        return mtime.toMillis() < started - MTIME_GRANULARITY_MS ? mtime : null;
+    }
+
+    private static final class DirectoryState {
+
+        private volatile FileTime mtime;
+        private final List<Path> subdirectories = new ArrayList<>();
+        private final List<TrackFile> files = new ArrayList<>();
+
+        DirectoryState(FileTime mtime) {
+            this.mtime = mtime;
+        }
+
+        boolean isUnchanged(FileTime current) {
+            FileTime known = mtime;
+            return known != null && known.equals(current);
+        }
+    }
+
+    private record TrackFile(String albumKey, int trackNumber, int priority, String path) {
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.spotifyapi.media;
+
+import com.example.spotifyapi.service.SynchronizationService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the library up to date with the media root between synchronizations,
+ * so new downloads show up within seconds without asking Lidarr.
+ *
+ * Local media roots are watched with a {@link WatchService} on every directory.
+ * Network mounts don't report changes made by other machines, so they are polled
+ * instead, which is cheap as refreshing the media index only lists changed
+ * directories. Bursts of events, like an album being imported, are collected
+ * until they settle and then applied together.
+ */
+@Component
+public class MediaWatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(MediaWatcher.class);
+
+    // File store types of network mounts, as reported on Linux and macOS
+    private static final Set<String> NETWORK_FILE_STORES = Set.of(
+            "cifs", "smb3", "smbfs", "nfs", "nfs4", "afpfs", "fuse.sshfs", "davfs", "webdav");
+    // Longest a burst of events delays the update, in debounce periods
+    private static final int MAX_DEBOUNCE_PERIODS = 10;
+
+    private final MediaIndex mediaIndex;
+    private final SynchronizationService synchronizationService;
+    private final String mediaRoot;
+    private final Path root;
+    private final boolean enabled;
+    private final String mode;
+    private final long debounceMs;
+    private final long pollIntervalMs;
+
+    private volatile boolean running;
+    private volatile Thread thread;
+    private volatile WatchService watchService;
+
+    public MediaWatcher(MediaIndex mediaIndex,
+                        SynchronizationService synchronizationService,
+                        @Value("${lidarr.FileRoot}") String mediaRoot,
+                        @Value("${media.watch.enabled:true}") boolean enabled,
+                        @Value("${media.watch.mode:auto}") String mode,
+                        @Value("${media.watch.debounce-ms:2000}") long debounceMs,
+                        @Value("${media.watch.poll-interval-ms:10000}") long pollIntervalMs) {
+        this.mediaIndex = mediaIndex;
+        this.synchronizationService = synchronizationService;
+        this.mediaRoot = mediaRoot;
+        this.root = Paths.get(mediaRoot);
+        this.enabled = enabled;
+        this.mode = mode.toLowerCase(Locale.ROOT);
+        this.debounceMs = debounceMs;
+        this.pollIntervalMs = pollIntervalMs;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        Thread watcher = new Thread(this::run, "media-watcher");
+        watcher.setDaemon(true);
+        thread = watcher;
+        watcher.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        Thread watcher = thread;
+        if (watcher != null) {
+            watcher.interrupt();
+        }
+        closeWatchService();
+    }
+
+    private void run() {
+        try {
+            if (!usePolling() && watch()) {
+                return;
+            }
+            logger.info("Polling media root {} for changes every {} ms", mediaRoot, pollIntervalMs);
+            while (running) {
+                Thread.sleep(pollIntervalMs);
+                update();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Stopped
+        }
+    }
+
+    /**
+     * Watch the media root for events until stopped
+     *
+     * @return False if the media root can't be watched and should be polled instead
+     */
+    private boolean watch() throws InterruptedException {
+        Map<WatchKey, Path> directories = new HashMap<>();
+        try {
+            watchService = root.getFileSystem().newWatchService();
+            register(root, directories);
+        } catch (IOException e) {
+            logger.warn("Could not watch media root {}, polling it instead: {}", mediaRoot, e.getMessage());
+            closeWatchService();
+            return false;
+        }
+        logger.info("Watching {} directories of media root {} for changes", directories.size(), mediaRoot);
+
+        try {
+            while (running) {
+                // Refresh now and then without events too, in case some were lost
+                WatchKey key = watchService.poll(pollIntervalMs, TimeUnit.MILLISECONDS);
+                long deadline = System.currentTimeMillis() + MAX_DEBOUNCE_PERIODS * debounceMs;
+                // Collect the burst until it was quiet for the debounce time
+                while (key != null) {
+                    handle(key, directories);
+                    if (System.currentTimeMillis() > deadline) {
+                        break;
+                    }
+                    key = watchService.poll(debounceMs, TimeUnit.MILLISECONDS);
+                }
+                update();
+            }
+        } finally {
+            closeWatchService();
+        }
+        return true;
+    }
+
+    private void handle(WatchKey key, Map<WatchKey, Path> directories) {
+        Path directory = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            try {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    register(root, directories);
+                } else if (directory != null && event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                    Path created = directory.resolve((Path) event.context());
+                    if (Files.isDirectory(created)) {
+                        register(created, directories);
+                    }
+                }
+            } catch (IOException e) {
+                logger.warn("Could not watch new media directories: {}", e.getMessage());
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+    }
+
+    // Watch a directory and every directory below it
+    private void register(Path start, Map<WatchKey, Path> directories) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                directories.put(dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    // Refresh the media index and apply the albums whose files changed
+    private void update() {
+        try {
+            mediaIndex.refresh();
+            synchronizationService.applyMediaChanges(mediaIndex.drainChangedAlbums());
+        } catch (RuntimeException e) {
+            logger.error("Error applying changes of media root {}", mediaRoot, e);
+        }
+    }
+
+    private boolean usePolling() {
+        if ("poll".equals(mode)) {
+            return true;
+        }
+        if ("watch".equals(mode)) {
+            return false;
+        }
+        // UNC paths are network shares
+        if (mediaRoot.startsWith("//") || mediaRoot.startsWith("\\\\")) {
+            return true;
+        }
+        try {
+            return NETWORK_FILE_STORES.contains(Files.getFileStore(root).type().toLowerCase(Locale.ROOT));
+        } catch (IOException e) {
+            // Not mounted yet, polling picks it up once it is
+            return true;
+        }
+    }
+
+    private void closeWatchService() {
+        WatchService service = watchService;
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException e) {
+                logger.debug("Could not close media watch service", e);
+            }
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com.example.spotifyapi.model;
 
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
+import com.example.spotifyapi.search.SearchIndexListener;
+import com.example.spotifyapi.search.TextNormalizer;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -15,14 +17,18 @@ import java.util.Set;
 
 
 @Entity
+@EntityListeners(SearchIndexListener.class)
+@Table(indexes = @Index(name = "idx_album_media_title", columnList = "mediaTitle"))
 @Getter
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
 public class Album {
     
+    // Sequence ids let Hibernate batch the inserts of a synchronization
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "album_seq")
+    @SequenceGenerator(name = "album_seq", sequenceName = "album_seq", allocationSize = 50)
     private Long id;
     
     private String title;
@@ -34,6 +40,10 @@ public class Album {
     private Integer lidarrAlbumReleaseId;
     private String foreignAlbumId;
     private boolean downloaded;
+    // Hash of the Lidarr payload last applied, unchanged albums are skipped by the synchronization
+    private Long lidarrHash;
+    // Folded title, so the albums of changed media folders are looked up by index, see MediaIndex#albumKey
+    private String mediaTitle;
     
     @ManyToOne
     @JoinColumn(name = "artist_id")
@@ -59,4 +69,10 @@ public class Album {
     @ManyToMany(mappedBy = "likedAlbums")
     @JsonBackReference(value = "user-liked-album-reference")
     private Set<User> likedByUsers = new HashSet<>();
+    
+    @PrePersist
+    @PreUpdate
+    void foldMediaTitle() {
+        mediaTitle = title != null ? TextNormalizer.fold(title) : null;
+    }
 }
@@ -3,6 +3,7 @@ package com.example.spotifyapi.model;
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
+import com.example.spotifyapi.search.SearchIndexListener;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -14,6 +15,7 @@ import java.util.List;
 import java.util.Set;
 
 @Entity 
+@EntityListeners(SearchIndexListener.class)
 @Getter
 @Setter
 @NoArgsConstructor
@@ -33,6 +35,8 @@ public class Artist {
     private String imageUrl;
     private Integer lidarrId; // To match with Lidarr's artist ID
     private String foreignId;
+    // Hash of the Lidarr payload last applied, unchanged artists are skipped by the synchronization
+    private Long lidarrHash;
     
     @ManyToMany
     @JoinTable(
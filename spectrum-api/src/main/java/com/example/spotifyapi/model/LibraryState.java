@@ -0,0 +1,27 @@
+package com.example.spotifyapi.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Single row counting the transactions that changed artists, albums, tracks or playlists.
+ * Files derived from the library, like the search index snapshot, record the count they
+ * reflect and are stale once it moves on.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class LibraryState {
+
+    public static final long ID = 1L;
+
+    @Id
+    private Long id;
+
+    private long changeCount;
+}
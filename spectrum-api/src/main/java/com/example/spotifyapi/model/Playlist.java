@@ -2,6 +2,7 @@ package com.example.spotifyapi.model;
 
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
+import com.example.spotifyapi.search.SearchIndexListener;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -13,6 +14,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 @Entity
+@EntityListeners(SearchIndexListener.class)
 @Getter
 @Setter
 @NoArgsConstructor
@@ -0,0 +1,32 @@
+package com.example.spotifyapi.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * Position of the incremental synchronization in an external change feed,
+ * e.g. Lidarr's history. Events up to it have been applied.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class SynchronizationCursor {
+
+    public static final String LIDARR_HISTORY = "lidarr-history";
+
+    @Id
+    private String name;
+
+    // Date of the last applied event, the next poll asks for events since then
+    private Instant since;
+
+    // ID of the last applied event, events at the same date up to it are skipped
+    private long lastEventId;
+}
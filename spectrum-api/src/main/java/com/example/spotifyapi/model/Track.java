@@ -3,6 +3,7 @@ package com.example.spotifyapi.model;
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
+import com.example.spotifyapi.search.SearchIndexListener;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -13,14 +14,17 @@ import java.util.HashSet;
 import java.util.Set;
 
 @Entity
+@EntityListeners(SearchIndexListener.class)
 @Getter
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
 public class Track {
     
+    // Sequence ids let Hibernate batch the inserts of a synchronization
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "track_seq")
+    @SequenceGenerator(name = "track_seq", sequenceName = "track_seq", allocationSize = 50)
     private Long id;
 
     private Long lidarrTrackId;
@@ -0,0 +1,47 @@
+package com.example.spotifyapi.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Stream properties and tags read from a track's audio file by the background scanner.
+ * A row is rebuilt only when the file's size or modification time changes.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrackAudioInfo {
+
+    // Same value as the track's ID
+    @Id
+    private Long trackId;
+
+    private String codec;
+    private int sampleRate;
+    // 0 for lossy formats
+    private int bitDepth;
+    private int channels;
+    private long durationMs;
+    private int bitrateKbps;
+
+    // Size and modification time of the scanned file
+    private long fileSize;
+    private long lastModified;
+
+    // SHA-256 of the whole file, hex encoded
+    @Column(length = 64)
+    private String contentHash;
+
+    private String encoder;
+    private String artist;
+    private String album;
+    private String trackNumber;
+    // "year" is a reserved word in H2
+    @Column(name = "release_year")
+    private String year;
+}
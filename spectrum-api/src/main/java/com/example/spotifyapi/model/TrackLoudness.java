@@ -0,0 +1,42 @@
+package com.example.spotifyapi.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * EBU R128 loudness and ReplayGain values of a track, written by the loudness analysis job.
+ * Rows of an album are written together, once every track of the album has been measured.
+ * A track that could not be decoded gets a failed row, so it is only retried once its file changes.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrackLoudness {
+
+    // Same value as the track's ID
+    @Id
+    private Long trackId;
+
+    // Size and modification time of the file that was measured
+    private long fileSize;
+    private long lastModified;
+
+    // Integrated loudness in LUFS and true peak in dBTP
+    private double integratedLoudness;
+    private double truePeak;
+    private double albumLoudness;
+    private double albumTruePeak;
+
+    // ReplayGain 2.0 gains in dB, relative to -18 LUFS
+    private double trackGain;
+    private double albumGain;
+
+    // The file could not be decoded, the values are not set
+    @Column(columnDefinition = "boolean default false not null")
+    private boolean failed;
+}
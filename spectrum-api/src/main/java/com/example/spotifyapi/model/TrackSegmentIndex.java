@@ -0,0 +1,32 @@
+package com.example.spotifyapi.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Segment index of a track's audio file, used for segmented (HLS) streaming.
+ * Stored next to the track so it is built only once per file version.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrackSegmentIndex {
+
+    // Same value as the track's ID
+    @Id
+    private Long trackId;
+
+    // Size and modification time of the file the index was built from
+    private long fileSize;
+    private long lastModified;
+    private int segmentMs;
+
+    @Lob
+    @Column(nullable = false)
+    private byte[] segments;
+}
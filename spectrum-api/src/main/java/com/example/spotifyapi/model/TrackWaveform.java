@@ -0,0 +1,33 @@
+package com.example.spotifyapi.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Waveform peaks of a track's audio file, for the player's seek bar.
+ * Computed once per file version by the waveform service.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrackWaveform {
+
+    // Same value as the track's ID
+    @Id
+    private Long trackId;
+
+    // Size and modification time of the file the peaks were computed from
+    private long fileSize;
+    private long lastModified;
+    private int buckets;
+
+    // Signed min/max byte pairs, one per bucket
+    @Lob
+    @Column(nullable = false)
+    private byte[] peaks;
+}
@@ -2,8 +2,13 @@ package com.example.spotifyapi.repository;
 
 import com.example.spotifyapi.model.Album;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,4 +17,48 @@ public interface AlbumRepository extends JpaRepository<Album, Long> {
     List<Album> findByTitleContainingIgnoreCase(String title);
     List<Album> findByArtistId(int artistId);
     Optional<Album> findByLidarrAlbumId(Integer lidarrAlbumId);
+    
+    // Albums known to Lidarr with their artists, in one query
+    @Query("SELECT a FROM Album a LEFT JOIN FETCH a.artist WHERE a.lidarrAlbumId IS NOT NULL")
+    List<Album> findAllWithLidarrAlbumId();
+    
+    // Albums known to Lidarr with one of the folded titles, with their artists
+    @Query("SELECT a FROM Album a LEFT JOIN FETCH a.artist WHERE a.mediaTitle IN :mediaTitles AND a.lidarrAlbumId IS NOT NULL")
+    List<Album> findByMediaTitleIn(@Param("mediaTitles") Collection<String> mediaTitles);
+    
+    // Albums saved before their media title was stored
+    List<Album> findByMediaTitleIsNullAndTitleIsNotNull();
+    
+    @Modifying
+    @Transactional
+    @Query("UPDATE Album a SET a.downloaded = :downloaded WHERE a.id = :id")
+    void updateDownloaded(@Param("id") Long id, @Param("downloaded") boolean downloaded);
+    
+    @Modifying
+    @Transactional
+    @Query("UPDATE Album a SET a.lidarrHash = :lidarrHash WHERE a.id = :id")
+    void updateLidarrHash(@Param("id") Long id, @Param("lidarrHash") Long lidarrHash);
+    
+    /**
+     * Columns of an album and its artist needed to search it
+     */
+    interface SearchView {
+        Long getId();
+        String getTitle();
+        String getCoverImageUrl();
+        Integer getLidarrAlbumId();
+        String getForeignAlbumId();
+        Long getArtistId();
+        String getArtistName();
+    }
+    
+    @Query("SELECT a.id AS id, a.title AS title, a.coverImageUrl AS coverImageUrl, a.lidarrAlbumId AS lidarrAlbumId, " +
+           "a.foreignAlbumId AS foreignAlbumId, ar.id AS artistId, ar.name AS artistName " +
+           "FROM Album a LEFT JOIN a.artist ar")
+    List<SearchView> findAllSearchViews();
+    
+    @Query("SELECT a.id AS id, a.title AS title, a.coverImageUrl AS coverImageUrl, a.lidarrAlbumId AS lidarrAlbumId, " +
+           "a.foreignAlbumId AS foreignAlbumId, ar.id AS artistId, ar.name AS artistName " +
+           "FROM Album a JOIN a.artist ar WHERE ar.id = :artistId")
+    List<SearchView> findSearchViewsByArtistId(@Param("artistId") Long artistId);
 }
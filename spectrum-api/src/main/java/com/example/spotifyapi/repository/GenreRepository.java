@@ -3,6 +3,8 @@ package com.example.spotifyapi.repository;
 import com.example.spotifyapi.model.Genre;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -11,4 +13,10 @@ import java.util.Optional;
 public interface GenreRepository extends JpaRepository<Genre, Long> {
     Optional<Genre> findByNameIgnoreCase(String name);
     List<Genre> findByNameContainingIgnoreCase(String name);
+
+    // Committed on its own, the genres are shared with other transactions before the caller's commits
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    default List<Genre> saveAllCommitted(List<Genre> genres) {
+        return saveAll(genres);
+    }
 }
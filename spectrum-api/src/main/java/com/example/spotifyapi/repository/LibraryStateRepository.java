@@ -0,0 +1,26 @@
+package com.example.spotifyapi.repository;
+
+import com.example.spotifyapi.model.LibraryState;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface LibraryStateRepository extends JpaRepository<LibraryState, Long> {
+
+    // Joins the caller's transaction, so the count moves with the change it counts
+    @Modifying
+    @Transactional
+    @Query("UPDATE LibraryState s SET s.changeCount = s.changeCount + 1")
+    int incrementChangeCount();
+
+    // Committed on its own, callers may be inside read-only transactions
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query(value = "INSERT INTO library_state (id, change_count) SELECT 1, 0 WHERE NOT EXISTS (SELECT 1 FROM library_state)",
+            nativeQuery = true)
+    int createIfMissing();
+}
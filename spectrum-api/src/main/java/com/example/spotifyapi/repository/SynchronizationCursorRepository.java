@@ -0,0 +1,9 @@
+package com.example.spotifyapi.repository;
+
+import com.example.spotifyapi.model.SynchronizationCursor;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface SynchronizationCursorRepository extends JpaRepository<SynchronizationCursor, String> {
+}
@@ -0,0 +1,9 @@
+package com.example.spotifyapi.repository;
+
+import com.example.spotifyapi.model.TrackLoudness;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface TrackLoudnessRepository extends JpaRepository<TrackLoudness, Long> {
+}
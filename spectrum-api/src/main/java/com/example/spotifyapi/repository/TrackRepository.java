@@ -3,8 +3,13 @@ package com.example.spotifyapi.repository;
 import com.example.spotifyapi.model.Album;
 import com.example.spotifyapi.model.Track;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,7 +18,59 @@ public interface TrackRepository extends JpaRepository<Track, Long> {
     List<Track> findByTitleContainingIgnoreCase(String title);
     List<Track> findByAlbum(Album album);
     List<Track> findByAlbumId(Long albumId);
+    List<Track> findByAlbumIdIn(Collection<Long> albumIds);
     List<Track> findByAudioUrlIsNull();
     Track findByLidarrTrackId(Integer id);
     Optional<Track> findByLidarrTrackId(Long trackId);
+    
+    @Query("SELECT t.lidarrTrackId FROM Track t WHERE t.lidarrTrackId IS NOT NULL")
+    List<Long> findAllLidarrTrackIds();
+    
+    @Query("SELECT t.lidarrTrackId FROM Track t WHERE t.album.id = :albumId AND t.lidarrTrackId IS NOT NULL")
+    List<Long> findLidarrTrackIdsByAlbumId(@Param("albumId") Long albumId);
+    
+    // Tracks created from audio files before Lidarr's track was synchronized
+    List<Track> findByAlbumIdAndLidarrTrackIdIsNull(Long albumId);
+    
+    @Query("SELECT DISTINCT t.album.id FROM Track t WHERE t.lidarrTrackId IS NULL AND t.album IS NOT NULL")
+    List<Long> findAlbumIdsWithoutLidarrTrackId();
+    
+    @Modifying
+    @Transactional
+    @Query("UPDATE Track t SET t.durationInSeconds = :duration WHERE t.id = :id")
+    void updateDurationInSeconds(@Param("id") Long id, @Param("duration") int duration);
+    
+    @Modifying
+    @Transactional
+    @Query("UPDATE Track t SET t.audioUrl = :audioUrl WHERE t.id = :id")
+    void updateAudioUrl(@Param("id") Long id, @Param("audioUrl") String audioUrl);
+    
+    /**
+     * Columns of a track, its album and its artist needed to search it
+     */
+    interface SearchView {
+        Long getId();
+        String getTitle();
+        Long getLidarrTrackId();
+        Long getAlbumId();
+        Integer getAlbumLidarrId();
+        String getCoverImageUrl();
+        Long getArtistId();
+        String getArtistName();
+    }
+    
+    @Query("SELECT t.id AS id, t.title AS title, t.lidarrTrackId AS lidarrTrackId, al.id AS albumId, " +
+           "al.lidarrAlbumId AS albumLidarrId, al.coverImageUrl AS coverImageUrl, ar.id AS artistId, ar.name AS artistName " +
+           "FROM Track t LEFT JOIN t.album al LEFT JOIN al.artist ar")
+    List<SearchView> findAllSearchViews();
+    
+    @Query("SELECT t.id AS id, t.title AS title, t.lidarrTrackId AS lidarrTrackId, al.id AS albumId, " +
+           "al.lidarrAlbumId AS albumLidarrId, al.coverImageUrl AS coverImageUrl, ar.id AS artistId, ar.name AS artistName " +
+           "FROM Track t JOIN t.album al LEFT JOIN al.artist ar WHERE al.id = :albumId")
+    List<SearchView> findSearchViewsByAlbumId(@Param("albumId") Long albumId);
+    
+    @Query("SELECT t.id AS id, t.title AS title, t.lidarrTrackId AS lidarrTrackId, al.id AS albumId, " +
+           "al.lidarrAlbumId AS albumLidarrId, al.coverImageUrl AS coverImageUrl, ar.id AS artistId, ar.name AS artistName " +
+           "FROM Track t JOIN t.album al JOIN al.artist ar WHERE ar.id = :artistId")
+    List<SearchView> findSearchViewsByArtistId(@Param("artistId") Long artistId);
 }
@@ -2,12 +2,30 @@ package com.example.spotifyapi.repository;
 
 import com.example.spotifyapi.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsername(String username);
     boolean existsByUsername(String username);
+    
+    // Popularity: in how many users' recently played lists an entity is, as [id, count] rows
+    @Query("SELECT t.id, COUNT(u) FROM User u JOIN u.recentlyPlayedTracks t GROUP BY t.id")
+    List<Object[]> countRecentlyPlayedTracks();
+    
+    @Query("SELECT a.id, COUNT(u) FROM User u JOIN u.recentlyPlayedAlbums a GROUP BY a.id")
+    List<Object[]> countRecentlyPlayedAlbums();
+    
+    @Query("SELECT p.id, COUNT(u) FROM User u JOIN u.recentlyPlayedPlaylists p GROUP BY p.id")
+    List<Object[]> countRecentlyPlayedPlaylists();
+    
+    @Query("SELECT a.artist.id, COUNT(u) FROM User u JOIN u.recentlyPlayedAlbums a GROUP BY a.artist.id")
+    List<Object[]> countRecentlyPlayedAlbumArtists();
+    
+    @Query("SELECT t.album.artist.id, COUNT(u) FROM User u JOIN u.recentlyPlayedTracks t GROUP BY t.album.artist.id")
+    List<Object[]> countRecentlyPlayedTrackArtists();
 }
@@ -0,0 +1,187 @@
+package com.example.spotifyapi.search;
+
+import com.example.spotifyapi.dto.searchResultDto;
+import com.example.spotifyapi.model.Album;
+import com.example.spotifyapi.model.Artist;
+import com.example.spotifyapi.model.Playlist;
+import com.example.spotifyapi.model.Track;
+import com.example.spotifyapi.repository.AlbumRepository;
+import com.example.spotifyapi.repository.TrackRepository;
+
+/**
+ * An indexed album, artist, track or playlist with everything needed to build
+ * its search result, so queries never go back to the database.
+ */
+public final class SearchDocument {
+
+    public enum Type {
+        ARTIST, ALBUM, TRACK, PLAYLIST
+    }
+
+    private final Type type;
+    private final Long entityId;
+    private final String name;
+    // Secondary searchable text, e.g. the artist of an album
+    private final String context;
+    private final String imageUrl;
+    private final String foreignId;
+    private final String lidarrId;
+    private final String metadata;
+
+    public SearchDocument(Type type, Long entityId, String name, String context,
+                          String imageUrl, String foreignId, String lidarrId, String metadata) {
+        this.type = type;
+        this.entityId = entityId;
+        this.name = name != null ? name : "";
+        this.context = context;
+        this.imageUrl = imageUrl;
+        this.foreignId = foreignId;
+        this.lidarrId = lidarrId;
+        this.metadata = metadata;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Long getEntityId() {
+        return entityId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getContext() {
+        return context;
+    }
+
+    public String getImageUrl() {
+        return imageUrl;
+    }
+
+    public String getForeignId() {
+        return foreignId;
+    }
+
+    public String getLidarrId() {
+        return lidarrId;
+    }
+
+    public String getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * @return A new search result for this document
+     */
+    public searchResultDto toResult() {
+        return new searchResultDto(name, imageUrl, foreignId, lidarrId, metadata);
+    }
+
+    /**
+     * @param entity An album, artist, track or playlist
+     * @return The document of the entity, or null for other entities
+     */
+    public static SearchDocument of(Object entity) {
+        if (entity instanceof Album album) {
+            return of(album);
+        } else if (entity instanceof Artist artist) {
+            return of(artist);
+        } else if (entity instanceof Track track) {
+            return of(track);
+        } else if (entity instanceof Playlist playlist) {
+            return of(playlist);
+        }
+        return null;
+    }
+
+    public static SearchDocument of(Artist artist) {
+        return artist(artist.getId(), artist.getName(), artist.getImageUrl(), artist.getLidarrId(), artist.getForeignId());
+    }
+
+    public static SearchDocument of(Album album) {
+        Artist artist = album.getArtist();
+        return album(album.getId(), album.getTitle(), album.getCoverImageUrl(), album.getLidarrAlbumId(),
+                album.getForeignAlbumId(), artist != null ? artist.getId() : null, artist != null ? artist.getName() : null);
+    }
+
+    public static SearchDocument of(Track track) {
+        Album album = track.getAlbum();
+        Artist artist = album != null ? album.getArtist() : null;
+        return track(track.getId(), track.getTitle(), track.getLidarrTrackId(),
+                album != null ? album.getId() : null, album != null ? album.getLidarrAlbumId() : null,
+                album != null ? album.getCoverImageUrl() : null,
+                artist != null ? artist.getId() : null, artist != null ? artist.getName() : null);
+    }
+
+    public static SearchDocument of(Playlist playlist) {
+        return playlist(playlist.getId(), playlist.getName(), playlist.getCoverImageUrl());
+    }
+
+    /**
+     * Build an artist's document from its columns, e.g. from a projection query
+     */
+    public static SearchDocument artist(Long id, String name, String imageUrl, Integer lidarrId, String foreignId) {
+        return new SearchDocument(Type.ARTIST, id, name, null,
+                imageUrl != null ? imageUrl : "/img/default-artist.jpg",
+                foreignId, lidarrId != null ? lidarrId.toString() : "0", "");
+    }
+
+    /**
+     * Build an album's document from its columns and its artist's, e.g. from a projection query
+     */
+    public static SearchDocument album(Long id, String title, String coverImageUrl, Integer lidarrAlbumId,
+                                       String foreignAlbumId, Long artistId, String artistName) {
+        String imageUrl = coverImageUrl != null ? coverImageUrl : "/img/default-album.jpg";
+        String foreignId = foreignAlbumId != null ? foreignAlbumId : "";
+        String lidarrId = lidarrAlbumId != null ? lidarrAlbumId.toString() : "0";
+
+        // Include artist ID in metadata for proper navigation
+        String metadata = artistId != null ? String.valueOf(artistId) : "";
+        return new SearchDocument(Type.ALBUM, id, title, artistName, imageUrl, foreignId, lidarrId, metadata);
+    }
+
+    public static SearchDocument album(AlbumRepository.SearchView album) {
+        return album(album.getId(), album.getTitle(), album.getCoverImageUrl(), album.getLidarrAlbumId(),
+                album.getForeignAlbumId(), album.getArtistId(), album.getArtistName());
+    }
+
+    /**
+     * Build a track's document from its columns and its album's and artist's, e.g. from a projection query.
+     * The album columns are null for tracks without an album.
+     */
+    public static SearchDocument track(Long id, String title, Long lidarrTrackId, Long albumId, Integer albumLidarrId,
+                                       String albumCoverImageUrl, Long artistId, String artistName) {
+        // For tracks, use the album cover as the image if available
+        String imageUrl = albumCoverImageUrl != null ? albumCoverImageUrl : "/img/default-track.jpg";
+        String lidarrId = lidarrTrackId != null ? lidarrTrackId.toString() : "0";
+
+        // Store album and artist information in metadata for proper navigation
+        // Format: albumId|artistId
+        String metadata = "";
+        if (albumId != null) {
+            String album = albumLidarrId != null ? albumLidarrId.toString() : albumId.toString();
+            String artist = artistId != null ? String.valueOf(artistId) : "";
+            metadata = album + "|" + artist;
+        }
+
+        // Use track ID as foreignId for tracks
+        return new SearchDocument(Type.TRACK, id, title, artistName, imageUrl, id.toString(), lidarrId, metadata);
+    }
+
+    public static SearchDocument track(TrackRepository.SearchView track) {
+        return track(track.getId(), track.getTitle(), track.getLidarrTrackId(), track.getAlbumId(), track.getAlbumLidarrId(),
+                track.getCoverImageUrl(), track.getArtistId(), track.getArtistName());
+    }
+
+    /**
+     * Build a playlist's document from its columns
+     */
+    public static SearchDocument playlist(Long id, String name, String coverImageUrl) {
+        String imageUrl = coverImageUrl != null ? coverImageUrl : "/img/default-playlist.jpg";
+
+        // Use playlist ID as foreignId, playlists don't have Lidarr IDs
+        return new SearchDocument(Type.PLAYLIST, id, name, null, imageUrl, id.toString(), "0", "");
+    }
+}
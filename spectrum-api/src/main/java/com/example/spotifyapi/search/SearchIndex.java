@@ -0,0 +1,644 @@
+package com.example.spotifyapi.search;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index over the library's artists, albums, tracks and playlists.
+ *
+ * Names and their context (e.g. the artist of an album) are tokenized with
+ * accent and case folding; every distinct token is a term with the documents
+ * containing it. All query tokens must match, the last one also as a prefix so
+ * partially typed words find results. Typos are tolerated through a trigram
+ * index over the terms: terms sharing enough trigrams with a query token are
+ * candidates, and those within a small edit distance match with a lower weight.
+ * Documents are ranked by where and how well the tokens matched.
+ *
+ * Postings, trigram lists and per-document data are primitive int arrays so a
+ * large library stays compact. Updates replace single documents; removed
+ * documents are skipped until enough of them pile up to compact the index.
+ */
+@Component
+public class SearchIndex {
+
+    private static final float NAME_WEIGHT = 2f;
+    private static final float CONTEXT_WEIGHT = 1f;
+    private static final float PREFIX_FACTOR = 0.6f;
+    private static final float EXACT_NAME_BONUS = 3f;
+    private static final float NAME_PREFIX_BONUS = 1f;
+    // Weight factor of a term one or two edits away from the query token
+    private static final float[] FUZZY_FACTORS = {1f, 0.5f, 0.3f};
+    // Query tokens of this length tolerate one edit, twice this length two edits
+    private static final int FUZZY_MIN_LENGTH = 4;
+    // Postings hold the document number shifted left, the low bit marks a context match
+    private static final int CONTEXT_BIT = 1;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Query state is reused, one per concurrent query
+    private final ConcurrentLinkedQueue<Scratch> scratches = new ConcurrentLinkedQueue<>();
+
+    private SearchDocument[] documents = new SearchDocument[1024];
+    private int documentCount;
+    private int removedCount;
+    // Incremented by every change, so derived structures know when to rebuild
+    private volatile long version;
+    // Set once the whole library was indexed
+    private volatile boolean loaded;
+    private final LongIntMap documentNumbers = new LongIntMap();
+
+    // Term numbers of every document's name in order, documents' runs are consecutive
+    private int[] nameTermStart = new int[1024];
+    private int[] nameTerms = new int[4096];
+    private int nameTermSize;
+
+    private final TreeMap<String, Term> terms = new TreeMap<>();
+    private final List<Term> termsByNumber = new ArrayList<>();
+    // Term numbers containing each trigram, three chars packed per key
+    private final Map<Long, IntList> trigrams = new HashMap<>();
+
+    /**
+     * Replace the whole index
+     *
+     * @param newDocuments The documents of the library
+     */
+    public void replaceAll(Collection<SearchDocument> newDocuments) {
+        lock.writeLock().lock();
+        try {
+            clear();
+            newDocuments.forEach(this::add);
+            version++;
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add a document, replacing the previous version of the same entity
+     *
+     * @param document The document
+     * @return The replaced document, or null if the entity was not indexed
+     */
+    public SearchDocument put(SearchDocument document) {
+        lock.writeLock().lock();
+        try {
+            SearchDocument previous = removeDocument(key(document.getType(), document.getEntityId()));
+            add(document);
+            compactIfNeeded();
+            version++;
+            return previous;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the document of an entity, if indexed
+     *
+     * @param type The document type
+     * @param entityId The ID of the entity
+     */
+    public void remove(SearchDocument.Type type, Long entityId) {
+        lock.writeLock().lock();
+        try {
+            removeDocument(key(type, entityId));
+            compactIfNeeded();
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return The number of indexed documents
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documentNumbers.size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The number of changes made to the index so far
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return Whether the whole library was indexed, rather than only changes since startup
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return A copy of all indexed documents
+     */
+    public List<SearchDocument> getDocuments() {
+        lock.readLock().lock();
+        try {
+            List<SearchDocument> live = new ArrayList<>(documentNumbers.size);
+            for (int i = 0; i < documentCount; i++) {
+                if (documents[i] != null) {
+                    live.add(documents[i]);
+                }
+            }
+            return live;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the best matching documents of every type
+     *
+     * @param query The query as typed
+     * @param limit The most documents returned per type
+     * @return The matches of each type, best first
+     */
+    public Map<SearchDocument.Type, List<SearchDocument>> search(String query, int limit) {
+        Map<SearchDocument.Type, List<SearchDocument>> results = new EnumMap<>(SearchDocument.Type.class);
+        List<String> tokens = TextNormalizer.tokenize(query);
+        if (tokens.isEmpty() || limit <= 0) {
+            return results;
+        }
+
+        Scratch scratch = scratches.poll();
+        if (scratch == null) {
+            scratch = new Scratch();
+        }
+        lock.readLock().lock();
+        try {
+            scratch.begin(documents.length, tokens.size());
+            int[] queryTerms = new int[tokens.size()];
+            // Terms the last token is a prefix of, sorted by number
+            int[] prefixTerms = new int[0];
+            for (int i = 0; i < tokens.size(); i++) {
+                String token = tokens.get(i);
+                Term term = terms.get(token);
+                queryTerms[i] = term != null ? term.number : -1;
+                collect(term, 1f, i, scratch);
+                // A token spelled like an indexed term is taken as meant, typos are looked up otherwise
+                if (term == null) {
+                    collectFuzzy(token, i, scratch);
+                }
+                // The last token may still be being typed
+                if (i == tokens.size() - 1) {
+                    Collection<Term> prefixed = terms.subMap(token, false, token + Character.MAX_VALUE, false).values();
+                    prefixTerms = new int[prefixed.size()];
+                    int count = 0;
+                    for (Term extension : prefixed) {
+                        collect(extension, PREFIX_FACTOR, i, scratch);
+                        prefixTerms[count++] = extension.number;
+                    }
+                    Arrays.sort(prefixTerms);
+                }
+                if (scratch.endToken(i) == 0) {
+                    return results;
+                }
+            }
+
+            // Keep the best matches of each type in a heap whose head is the worst kept match
+            Map<SearchDocument.Type, PriorityQueue<ScoredDocument>> ranked = new EnumMap<>(SearchDocument.Type.class);
+            for (int i = 0; i < scratch.matchedCount; i++) {
+                int number = scratch.matched[i];
+                float score = scratch.scores[number] + nameBonus(number, queryTerms, prefixTerms);
+                SearchDocument document = documents[number];
+                PriorityQueue<ScoredDocument> best = ranked.computeIfAbsent(document.getType(),
+                        type -> new PriorityQueue<>(limit + 1, ScoredDocument.RANKING.reversed()));
+                ScoredDocument scored = new ScoredDocument(document, score);
+                if (best.size() == limit && ScoredDocument.RANKING.compare(scored, best.peek()) >= 0) {
+                    continue;
+                }
+                best.add(scored);
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+            ranked.forEach((type, best) -> results.put(type, best.stream()
+                    .sorted(ScoredDocument.RANKING)
+                    .map(ScoredDocument::document)
+                    .toList()));
+            return results;
+        } finally {
+            lock.readLock().unlock();
+            scratches.offer(scratch);
+        }
+    }
+
+    // Bonus for names that equal the query, or start with it
+    private float nameBonus(int number, int[] queryTerms, int[] prefixTerms) {
+        int start = nameTermStart[number];
+        int length = nameTermEnd(number) - start;
+        if (length < queryTerms.length) {
+            return 0;
+        }
+        for (int i = 0; i < queryTerms.length - 1; i++) {
+            if (nameTerms[start + i] != queryTerms[i]) {
+                return 0;
+            }
+        }
+        int last = nameTerms[start + queryTerms.length - 1];
+        if (last == queryTerms[queryTerms.length - 1]) {
+            return length == queryTerms.length ? EXACT_NAME_BONUS : NAME_PREFIX_BONUS;
+        }
+        return Arrays.binarySearch(prefixTerms, last) >= 0 ? NAME_PREFIX_BONUS : 0;
+    }
+
+    // Best weight per document for one token, only for documents that matched all previous tokens
+    private void collect(Term term, float factor, int tokenIndex, Scratch scratch) {
+        if (term == null) {
+            return;
+        }
+        IntList list = term.postings;
+        for (int i = 0; i < list.size; i++) {
+            int posting = list.values[i];
+            int number = posting >>> 1;
+            if (documents[number] == null || !scratch.matchedPrevious(number, tokenIndex)) {
+                continue;
+            }
+            scratch.hit(number, ((posting & CONTEXT_BIT) != 0 ? CONTEXT_WEIGHT : NAME_WEIGHT) * factor);
+        }
+    }
+
+    // Postings of the terms within the allowed edit distance of the query token
+    private void collectFuzzy(String token, int tokenIndex, Scratch scratch) {
+        int maxEdits = token.length() >= FUZZY_MIN_LENGTH * 2 ? 2 : token.length() >= FUZZY_MIN_LENGTH ? 1 : 0;
+        if (maxEdits == 0) {
+            return;
+        }
+
+        // Concatenate the term lists of the query's trigrams; a term appears once per shared trigram
+        long[] queryTrigrams = trigramsOf(token);
+        int total = 0;
+        for (long trigram : queryTrigrams) {
+            IntList list = trigrams.get(trigram);
+            total += list != null ? list.size : 0;
+        }
+        int[] candidates = new int[total];
+        int filled = 0;
+        for (long trigram : queryTrigrams) {
+            IntList list = trigrams.get(trigram);
+            if (list != null) {
+                System.arraycopy(list.values, 0, candidates, filled, list.size);
+                filled += list.size;
+            }
+        }
+        Arrays.sort(candidates);
+
+        // An edit changes at most three trigrams, a transposition four
+        int minShared = Math.max(1, queryTrigrams.length - 4 * maxEdits);
+        int[][] rows = new int[3][token.length() + 1];
+        for (int i = 0; i < candidates.length; ) {
+            int number = candidates[i];
+            int shared = 0;
+            while (i < candidates.length && candidates[i] == number) {
+                shared++;
+                i++;
+            }
+            Term candidate = termsByNumber.get(number);
+            if (shared < minShared || candidate.token.equals(token)
+                    || Math.abs(candidate.token.length() - token.length()) > maxEdits) {
+                continue;
+            }
+            int distance = editDistance(token, candidate.token, maxEdits, rows);
+            if (distance <= maxEdits) {
+                collect(candidate, FUZZY_FACTORS[distance], tokenIndex, scratch);
+            }
+        }
+    }
+
+    /**
+     * Optimal string alignment distance (edits, with adjacent transpositions), bounded
+     *
+     * @param a The query token
+     * @param b The candidate term
+     * @param maxEdits The largest distance of interest
+     * @param rows Three scratch rows of at least a's length + 1
+     * @return The distance, or maxEdits + 1 if it is larger than maxEdits
+     */
+    private static int editDistance(String a, String b, int maxEdits, int[][] rows) {
+        int[] previousPrevious = rows[0];
+        int[] previous = rows[1];
+        int[] current = rows[2];
+        for (int i = 0; i <= a.length(); i++) {
+            previous[i] = i;
+        }
+        for (int j = 1; j <= b.length(); j++) {
+            current[0] = j;
+            int rowMinimum = j;
+            for (int i = 1; i <= a.length(); i++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(current[i - 1] + 1, previous[i] + 1), previous[i - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    value = Math.min(value, previousPrevious[i - 2] + 1);
+                }
+                current[i] = value;
+                rowMinimum = Math.min(rowMinimum, value);
+            }
+            if (rowMinimum > maxEdits) {
+                return maxEdits + 1;
+            }
+            int[] recycled = previousPrevious;
+            previousPrevious = previous;
+            previous = current;
+            current = recycled;
+        }
+        return Math.min(previous[a.length()], maxEdits + 1);
+    }
+
+    // Distinct trigrams of the token padded with a boundary character, three chars packed per long
+    private static long[] trigramsOf(String token) {
+        String padded = "\u0000" + token + "\u0000";
+        long[] packed = new long[padded.length() - 2];
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2);
+        }
+        Arrays.sort(packed);
+        int distinct = 0;
+        for (int i = 0; i < packed.length; i++) {
+            if (i == 0 || packed[i] != packed[i - 1]) {
+                packed[distinct++] = packed[i];
+            }
+        }
+        return Arrays.copyOf(packed, distinct);
+    }
+
+    // The term of a token, registering new terms in the trigram index
+    private Term termOf(String token) {
+        Term term = terms.get(token);
+        if (term == null) {
+            term = new Term(token, termsByNumber.size());
+            terms.put(token, term);
+            termsByNumber.add(term);
+            int number = term.number;
+            for (long trigram : trigramsOf(token)) {
+                trigrams.computeIfAbsent(trigram, t -> new IntList()).add(number);
+            }
+        }
+        return term;
+    }
+
+    private void add(SearchDocument document) {
+        if (documentCount == documents.length) {
+            documents = Arrays.copyOf(documents, documentCount * 2);
+            nameTermStart = Arrays.copyOf(nameTermStart, documentCount * 2);
+        }
+        int number = documentCount++;
+        documents[number] = document;
+        documentNumbers.put(key(document.getType(), document.getEntityId()), number);
+
+        List<String> nameTokens = TextNormalizer.tokenize(document.getName());
+        nameTermStart[number] = nameTermSize;
+        for (String token : nameTokens) {
+            if (nameTermSize == nameTerms.length) {
+                nameTerms = Arrays.copyOf(nameTerms, nameTermSize * 2);
+            }
+            nameTerms[nameTermSize++] = termOf(token).number;
+        }
+
+        Set<String> distinctName = new LinkedHashSet<>(nameTokens);
+        for (String token : distinctName) {
+            termOf(token).postings.add(number << 1);
+        }
+        for (String token : new LinkedHashSet<>(TextNormalizer.tokenize(document.getContext()))) {
+            if (!distinctName.contains(token)) {
+                termOf(token).postings.add((number << 1) | CONTEXT_BIT);
+            }
+        }
+    }
+
+    private int nameTermEnd(int number) {
+        return number + 1 < documentCount ? nameTermStart[number + 1] : nameTermSize;
+    }
+
+    private SearchDocument removeDocument(long key) {
+        int number = documentNumbers.remove(key);
+        if (number < 0) {
+            return null;
+        }
+        SearchDocument removed = documents[number];
+        documents[number] = null;
+        removedCount++;
+        return removed;
+    }
+
+    // Rebuild once removed documents outnumber the live ones
+    private void compactIfNeeded() {
+        if (removedCount > 1024 && removedCount > documentNumbers.size) {
+            List<SearchDocument> live = getDocuments();
+            clear();
+            live.forEach(this::add);
+        }
+    }
+
+    private void clear() {
+        documents = new SearchDocument[1024];
+        nameTermStart = new int[1024];
+        nameTerms = new int[4096];
+        nameTermSize = 0;
+        documentCount = 0;
+        removedCount = 0;
+        documentNumbers.clear();
+        terms.clear();
+        termsByNumber.clear();
+        trigrams.clear();
+    }
+
+    // Entity IDs are not negative, so keys are never 0
+    private static long key(SearchDocument.Type type, Long entityId) {
+        return ((entityId + 1) << 2) | type.ordinal();
+    }
+
+    private record ScoredDocument(SearchDocument document, float score) {
+        static final Comparator<ScoredDocument> RANKING = Comparator
+                .comparingDouble((ScoredDocument scored) -> -scored.score)
+                .thenComparingInt(scored -> scored.document.getName().length())
+                .thenComparing(scored -> scored.document.getName());
+    }
+
+    /**
+     * A distinct token and the postings of the documents containing it
+     */
+    private static final class Term {
+        private final String token;
+        private final int number;
+        private final IntList postings = new IntList();
+
+        Term(String token, int number) {
+            this.token = token;
+            this.number = number;
+        }
+    }
+
+    /**
+     * Query state indexed by document number, reused across queries.
+     * Stamps mark the documents that matched every token so far without clearing
+     * the arrays between queries: each query takes fresh stamp values.
+     */
+    private static final class Scratch {
+        private float[] scores = new float[0];
+        private float[] best = new float[0];
+        private int[] stamps = new int[0];
+        private int[] matched = new int[64];
+        private int matchedCount;
+        private int[] hits = new int[64];
+        private int hitCount;
+        private int base;
+        private int nextBase = 1;
+
+        void begin(int capacity, int tokenCount) {
+            if (scores.length < capacity) {
+                scores = new float[capacity];
+                best = new float[capacity];
+                stamps = new int[capacity];
+                nextBase = 1;
+            }
+            if (nextBase > Integer.MAX_VALUE - tokenCount - 1) {
+                Arrays.fill(stamps, 0);
+                nextBase = 1;
+            }
+            base = nextBase;
+            nextBase += tokenCount + 1;
+            matchedCount = 0;
+            hitCount = 0;
+        }
+
+        boolean matchedPrevious(int number, int tokenIndex) {
+            return tokenIndex == 0 || stamps[number] == base + tokenIndex;
+        }
+
+        void hit(int number, float weight) {
+            if (best[number] == 0) {
+                if (hitCount == hits.length) {
+                    hits = Arrays.copyOf(hits, hitCount * 2);
+                }
+                hits[hitCount++] = number;
+            }
+            best[number] = Math.max(best[number], weight);
+        }
+
+        // Add the token's best weights to the scores, the hit documents are the new matches
+        int endToken(int tokenIndex) {
+            for (int i = 0; i < hitCount; i++) {
+                int number = hits[i];
+                scores[number] = (tokenIndex == 0 ? 0 : scores[number]) + best[number];
+                best[number] = 0;
+                stamps[number] = base + tokenIndex + 1;
+            }
+            int[] swapped = matched;
+            matched = hits;
+            matchedCount = hitCount;
+            hits = swapped;
+            hitCount = 0;
+            return matchedCount;
+        }
+    }
+
+    /**
+     * Open-addressing map from entity keys to document numbers, without boxing
+     */
+    private static final class LongIntMap {
+        private long[] keys = new long[2048];
+        private int[] values = new int[2048];
+        private int size;
+
+        void put(long key, int value) {
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+            }
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (keys[i] != 0 && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (keys[i] == 0) {
+                size++;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        // Removes by shifting later entries of the probe sequence back into the gap
+        int remove(long key) {
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (keys[i] != key) {
+                if (keys[i] == 0) {
+                    return -1;
+                }
+                i = (i + 1) & mask;
+            }
+            int value = values[i];
+            int gap = i;
+            for (i = (i + 1) & mask; keys[i] != 0; i = (i + 1) & mask) {
+                int home = slot(keys[i], mask);
+                if (((i - home) & mask) >= ((i - gap) & mask)) {
+                    keys[gap] = keys[i];
+                    values[gap] = values[i];
+                    gap = i;
+                }
+            }
+            keys[gap] = 0;
+            size--;
+            return value;
+        }
+
+        void clear() {
+            keys = new long[2048];
+            values = new int[2048];
+            size = 0;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+    }
+
+    /**
+     * Growable array of postings in document order, or of term numbers
+     */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
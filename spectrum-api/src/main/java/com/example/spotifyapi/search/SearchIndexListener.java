@@ -0,0 +1,80 @@
+package com.example.spotifyapi.search;
+
+import com.example.spotifyapi.repository.AlbumRepository;
+import com.example.spotifyapi.repository.TrackRepository;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+
+/**
+ * JPA entity listener that keeps the search index up to date as artists,
+ * albums, tracks and playlists are saved or deleted. Inside a transaction the
+ * index is only changed once the transaction commits. Changes are also counted
+ * for the index snapshot, see {@link SearchIndexSnapshot#recordChange(Runnable)}.
+ *
+ * Album and track documents copy their artist's name and their album's cover,
+ * so when those change the documents of the albums and tracks below are
+ * indexed again from the database.
+ */
+@Component
+public class SearchIndexListener {
+
+    private final SearchIndex searchIndex;
+    private final SearchIndexSnapshot searchIndexSnapshot;
+    private final AlbumRepository albumRepository;
+    private final TrackRepository trackRepository;
+
+    // Lazy, this component is created while JPA starts
+    public SearchIndexListener(SearchIndex searchIndex, SearchIndexSnapshot searchIndexSnapshot,
+                               @Lazy AlbumRepository albumRepository, @Lazy TrackRepository trackRepository) {
+        this.searchIndex = searchIndex;
+        this.searchIndexSnapshot = searchIndexSnapshot;
+        this.albumRepository = albumRepository;
+        this.trackRepository = trackRepository;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void onSave(Object entity) {
+        SearchDocument document = SearchDocument.of(entity);
+        if (document != null) {
+            searchIndexSnapshot.recordChange(() -> {
+                SearchDocument previous = searchIndex.put(document);
+                if (previous != null) {
+                    reindexDependents(previous, document);
+                }
+            });
+        }
+    }
+
+    @PostRemove
+    public void onRemove(Object entity) {
+        SearchDocument document = SearchDocument.of(entity);
+        if (document != null) {
+            searchIndexSnapshot.recordChange(() -> searchIndex.remove(document.getType(), document.getEntityId()));
+        }
+    }
+
+    // Index the albums and tracks again whose documents copy changed fields of the document
+    private void reindexDependents(SearchDocument previous, SearchDocument document) {
+        Long id = document.getEntityId();
+        if (document.getType() == SearchDocument.Type.ARTIST) {
+            if (!Objects.equals(previous.getName(), document.getName())) {
+                albumRepository.findSearchViewsByArtistId(id).forEach(album -> searchIndex.put(SearchDocument.album(album)));
+                trackRepository.findSearchViewsByArtistId(id).forEach(track -> searchIndex.put(SearchDocument.track(track)));
+            }
+        } else if (document.getType() == SearchDocument.Type.ALBUM) {
+            // Tracks copy the album's cover, Lidarr ID and artist
+            if (!Objects.equals(previous.getImageUrl(), document.getImageUrl())
+                    || !Objects.equals(previous.getLidarrId(), document.getLidarrId())
+                    || !Objects.equals(previous.getMetadata(), document.getMetadata())
+                    || !Objects.equals(previous.getContext(), document.getContext())) {
+                trackRepository.findSearchViewsByAlbumId(id).forEach(track -> searchIndex.put(SearchDocument.track(track)));
+            }
+        }
+    }
+}
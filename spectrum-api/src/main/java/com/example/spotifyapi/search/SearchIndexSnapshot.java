@@ -0,0 +1,308 @@
+package com.example.spotifyapi.search;
+
+import com.example.spotifyapi.model.LibraryState;
+import com.example.spotifyapi.repository.LibraryStateRepository;
+import jakarta.persistence.EntityManager;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versioned snapshot file of the search index, so startup maps the index in
+ * instead of reading the whole library from the database.
+ *
+ * Every transaction that changes an indexed entity increments the library's
+ * change count in the same transaction, so the count can't miss a committed
+ * change even if the application dies right after. A snapshot records the
+ * count it reflects and is only loaded while the count is unchanged.
+ */
+@Component
+public class SearchIndexSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchIndexSnapshot.class);
+
+    // "SPIX"
+    private static final int MAGIC = 0x53504958;
+    private static final int FORMAT_VERSION = 1;
+    private static final String INCREMENT_CHANGE_COUNT = "UPDATE library_state SET change_count = change_count + 1";
+    // Attempts to capture the index between changes, and the pause between them
+    private static final int SAVE_ATTEMPTS = 100;
+    private static final long SAVE_RETRY_MS = 50;
+
+    private final SearchIndex searchIndex;
+    private final EntityManager entityManager;
+    private final LibraryStateRepository libraryStateRepository;
+    private final Path file;
+    private final boolean enabled;
+
+    // Counted changes that have not reached the index yet, and those that have
+    private final AtomicInteger changesInFlight = new AtomicInteger();
+    private final AtomicLong changesApplied = new AtomicLong();
+    // Index version of the last snapshot written or loaded
+    private long savedVersion = -1;
+    private boolean stateCreated;
+
+    // Lazy, this component is created with the entity listener while JPA starts
+    public SearchIndexSnapshot(SearchIndex searchIndex,
+                               @Lazy EntityManager entityManager,
+                               @Lazy LibraryStateRepository libraryStateRepository,
+                               @Value("${search.snapshot.path:./search-index.snapshot}") String path,
+                               @Value("${search.snapshot.enabled:true}") boolean enabled) {
+        this.searchIndex = searchIndex;
+        this.entityManager = entityManager;
+        this.libraryStateRepository = libraryStateRepository;
+        this.file = Paths.get(path);
+        this.enabled = enabled;
+    }
+
+    /**
+     * Count a change of an indexed entity and apply it to the index once committed.
+     * Called by the entity listener while the change is flushed.
+     *
+     * @param indexUpdate Applies the change to the index
+     */
+    public void recordChange(Runnable indexUpdate) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            changesInFlight.incrementAndGet();
+            try {
+                libraryStateRepository.incrementChangeCount();
+                indexUpdate.run();
+            } finally {
+                changesApplied.incrementAndGet();
+                changesInFlight.decrementAndGet();
+            }
+            return;
+        }
+
+        // Count once per transaction, right before it commits
+        if (!TransactionSynchronizationManager.hasResource(this)) {
+            CountedChange change = new CountedChange();
+            TransactionSynchronizationManager.bindResource(this, change);
+            entityManager.unwrap(SessionImplementor.class).getActionQueue().registerProcess(change);
+            TransactionSynchronizationManager.registerSynchronization(change);
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                indexUpdate.run();
+            }
+        });
+    }
+
+    /**
+     * Get the documents of the snapshot, if it is as recent as the database
+     *
+     * @return The documents, or null if there is no usable snapshot
+     */
+    public synchronized List<SearchDocument> load() {
+        if (!enabled) {
+            return null;
+        }
+        Long changeCount = findChangeCount();
+        if (changeCount == null) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                logger.info("Ignoring search index snapshot {} of another format", file);
+                return null;
+            }
+            long snapshotChangeCount = buffer.getLong();
+            if (snapshotChangeCount != changeCount) {
+                logger.info("Search index snapshot is stale ({} library changes since)", changeCount - snapshotChangeCount);
+                return null;
+            }
+
+            SearchDocument.Type[] types = SearchDocument.Type.values();
+            int count = buffer.getInt();
+            List<SearchDocument> documents = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                SearchDocument.Type type = types[buffer.get()];
+                long entityId = buffer.getLong();
+                documents.add(new SearchDocument(type, entityId, readString(buffer), readString(buffer),
+                        readString(buffer), readString(buffer), readString(buffer), readString(buffer)));
+            }
+            return documents;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not read search index snapshot {}", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Remember that the index was just loaded from the snapshot
+     */
+    public synchronized void loaded() {
+        savedVersion = searchIndex.getVersion();
+    }
+
+    /**
+     * Write the index to the snapshot file, unless it is unchanged since the last
+     * snapshot or was never built
+     */
+    public synchronized void save() {
+        if (!enabled || !searchIndex.isLoaded()) {
+            return;
+        }
+
+        // Capture the documents and the change count while no counted change is on its way to the index
+        for (int attempt = 0; attempt < SAVE_ATTEMPTS; attempt++) {
+            long applied = changesApplied.get();
+            if (changesInFlight.get() == 0) {
+                long version = searchIndex.getVersion();
+                if (version == savedVersion) {
+                    return;
+                }
+                Long changeCount = findChangeCount();
+                List<SearchDocument> documents = searchIndex.getDocuments();
+                if (changeCount != null && changesInFlight.get() == 0 && changesApplied.get() == applied) {
+                    write(documents, changeCount, version);
+                    return;
+                }
+            }
+            try {
+                Thread.sleep(SAVE_RETRY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        logger.warn("Skipped search index snapshot, the library kept changing");
+    }
+
+    private void write(List<SearchDocument> documents, long changeCount, long version) {
+        long started = System.currentTimeMillis();
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            if (directory != null) {
+                Files.createDirectories(directory);
+            }
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile), 1 << 16))) {
+                output.writeInt(MAGIC);
+                output.writeInt(FORMAT_VERSION);
+                output.writeLong(changeCount);
+                output.writeInt(documents.size());
+                for (SearchDocument document : documents) {
+                    output.writeByte(document.getType().ordinal());
+                    output.writeLong(document.getEntityId());
+                    writeString(output, document.getName());
+                    writeString(output, document.getContext());
+                    writeString(output, document.getImageUrl());
+                    writeString(output, document.getForeignId());
+                    writeString(output, document.getLidarrId());
+                    writeString(output, document.getMetadata());
+                }
+            }
+            try {
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            savedVersion = version;
+            logger.info("Wrote search index snapshot of {} documents in {} ms", documents.size(), System.currentTimeMillis() - started);
+        } catch (IOException e) {
+            logger.warn("Could not write search index snapshot {}", file, e);
+            try {
+                Files.deleteIfExists(tempFile);
+            } catch (IOException ignored) {
+                // Overwritten by the next snapshot
+            }
+        }
+    }
+
+    // The library's change count, the row is created on first use
+    private Long findChangeCount() {
+        try {
+            if (!stateCreated) {
+                libraryStateRepository.createIfMissing();
+                stateCreated = true;
+            }
+            return libraryStateRepository.findById(LibraryState.ID)
+                    .map(LibraryState::getChangeCount)
+                    .orElse(null);
+        } catch (RuntimeException e) {
+            logger.warn("Could not read the library change count", e);
+            return null;
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        if (value == null) {
+            output.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The change count increment of one transaction. It runs inside the transaction,
+     * after its last flush, and the change only counts as applied once the
+     * transaction completed and its index updates ran.
+     */
+    private final class CountedChange implements BeforeTransactionCompletionProcess, TransactionSynchronization {
+
+        private boolean counted;
+
+        @Override
+        public void doBeforeTransactionCompletion(SessionImplementor session) {
+            changesInFlight.incrementAndGet();
+            counted = true;
+            session.doWork(connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate(INCREMENT_CHANGE_COUNT);
+                }
+            });
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(SearchIndexSnapshot.this);
+            if (counted) {
+                changesApplied.incrementAndGet();
+                changesInFlight.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.spotifyapi.search;
+
+import com.example.spotifyapi.dto.searchResultDto;
+import com.example.spotifyapi.dto.searchResultsDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Weight-capped LRU cache of search results by normalized query.
+ *
+ * Entries are weighed by the estimated size of their results, and the least
+ * recently used entries are evicted once the total weight passes the cap.
+ * Concurrent misses on the same query share a single load. Library changes
+ * invalidate the whole cache; loads that started before an invalidation are
+ * returned to their callers but not stored.
+ */
+@Component
+public class SearchResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchResultCache.class);
+
+    // Rough per-object overheads of the estimate, in bytes
+    private static final int ENTRY_OVERHEAD = 128;
+    private static final int RESULT_OVERHEAD = 96;
+
+    private final long maxWeight;
+    private final long ttlMs;
+
+    // Access-ordered: normalized query -> entry
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalWeight;
+    private long generation;
+    private final ConcurrentHashMap<String, CompletableFuture<searchResultsDto>> loading = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong sharedLoads = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public SearchResultCache(
+            @Value("${search.cache.max-bytes:16777216}") long maxWeight,
+            @Value("${search.cache.ttl-ms:300000}") long ttlMs) {
+        this.maxWeight = maxWeight;
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * Get cached results
+     *
+     * @param key The normalized query
+     * @return The results, or null on a miss
+     */
+    public searchResultsDto getIfPresent(String key) {
+        searchResultsDto cached = lookup(key);
+        (cached != null ? hits : misses).incrementAndGet();
+        return cached;
+    }
+
+    /**
+     * Get cached results, or load them once for all concurrent callers.
+     * Results with a timed-out source are returned but not stored.
+     *
+     * @param key The normalized query
+     * @param loader Starts loading the results of a query
+     * @return The results, once available
+     */
+    public CompletableFuture<searchResultsDto> get(String key, Function<String, CompletableFuture<searchResultsDto>> loader) {
+        searchResultsDto cached = getIfPresent(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<searchResultsDto> created = new CompletableFuture<>();
+        CompletableFuture<searchResultsDto> running = loading.putIfAbsent(key, created);
+        if (running != null) {
+            sharedLoads.incrementAndGet();
+            return running;
+        }
+
+        long loadGeneration = currentGeneration();
+        try {
+            loader.apply(key).whenComplete((results, error) -> {
+                loading.remove(key, created);
+                if (error != null) {
+                    created.completeExceptionally(error);
+                    return;
+                }
+                put(key, results, loadGeneration);
+                created.complete(results);
+            });
+        } catch (RuntimeException e) {
+            loading.remove(key, created);
+            created.completeExceptionally(e);
+        }
+        return created;
+    }
+
+    /**
+     * Store complete results, unless the library changed since they were loaded
+     *
+     * @param key The normalized query
+     * @param results The results
+     * @param loadGeneration The generation from {@link #currentGeneration()} when loading started
+     */
+    public void put(String key, searchResultsDto results, long loadGeneration) {
+        if (!results.getTimedOut().isEmpty()) {
+            return;
+        }
+        long weight = weigh(key, results);
+        if (weight > maxWeight) {
+            return;
+        }
+        synchronized (entries) {
+            if (loadGeneration != generation) {
+                return;
+            }
+            Entry previous = entries.put(key, new Entry(results, weight, System.currentTimeMillis() + ttlMs));
+            totalWeight += weight - (previous != null ? previous.weight : 0);
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (totalWeight > maxWeight && eldest.hasNext()) {
+                totalWeight -= eldest.next().weight;
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return The current generation, to pass to {@link #put} for results loaded from now on
+     */
+    public long currentGeneration() {
+        synchronized (entries) {
+            return generation;
+        }
+    }
+
+    /**
+     * Drop all entries after the library changed
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+            totalWeight = 0;
+            generation++;
+        }
+        invalidations.incrementAndGet();
+    }
+
+    /**
+     * @return Hit, miss, shared load, eviction and invalidation counts, and the current size
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("sharedLoads", sharedLoads.get());
+        stats.put("evictions", evictions.get());
+        stats.put("invalidations", invalidations.get());
+        synchronized (entries) {
+            stats.put("entries", (long) entries.size());
+            stats.put("weightBytes", totalWeight);
+        }
+        stats.put("maxWeightBytes", maxWeight);
+        return stats;
+    }
+
+    // Scheduled task to drop expired entries and log the statistics (runs every hour)
+    @Scheduled(fixedRate = 3600000)
+    public void cleanup() {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.expiresAt < now) {
+                    totalWeight -= entry.weight;
+                    iterator.remove();
+                }
+            }
+        }
+        logger.info("Search cache: {}", getStats());
+    }
+
+    private searchResultsDto lookup(String key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt < System.currentTimeMillis()) {
+                entries.remove(key);
+                totalWeight -= entry.weight;
+                return null;
+            }
+            return entry.results;
+        }
+    }
+
+    // Estimated heap size of the results: two bytes per char plus object overheads
+    private static long weigh(String key, searchResultsDto results) {
+        long weight = ENTRY_OVERHEAD + 2L * key.length();
+        for (List<searchResultDto> section : List.of(results.getArtists(), results.getAlbums(),
+                results.getTracks(), results.getPlaylists())) {
+            for (searchResultDto result : section) {
+                weight += RESULT_OVERHEAD + 2L * (length(result.getName()) + length(result.getImageUrl())
+                        + length(result.getForeignId()) + length(result.getLidarrId()) + length(result.getMetadata()));
+            }
+        }
+        return weight;
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    private record Entry(searchResultsDto results, long weight, long expiresAt) {
+    }
+}
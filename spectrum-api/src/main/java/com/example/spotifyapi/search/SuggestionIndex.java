@@ -0,0 +1,277 @@
+package com.example.spotifyapi.search;
+
+import com.example.spotifyapi.dto.suggestionDto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Immutable prefix trie for as-you-type suggestions.
+ *
+ * Every name is folded and keyed from each of its first words, so "beat"
+ * completes "The Beatles". Suggestions are numbered by rank (most popular
+ * first), which makes the best completions of a prefix simply its smallest
+ * suggestion numbers. Trie nodes keep the range of their keys in one sorted
+ * array, and nodes with many keys also keep their best suggestions
+ * precomputed; below those nodes the few remaining keys are scanned. Lookups
+ * of precomputed prefixes allocate nothing but the result list.
+ */
+public final class SuggestionIndex {
+
+    // Trie depth, longer prefixes are scanned within the node's key range
+    private static final int MAX_DEPTH = 8;
+    // Names are also keyed from their 2nd, 3rd and 4th word
+    private static final int MAX_KEYS_PER_NAME = 4;
+
+    private final int topK;
+    private final suggestionDto[] suggestions;
+    private final String[] keys;
+    private final int[] keySuggestions;
+
+    // Nodes: label, children as a contiguous run, key range, precomputed best suggestions
+    private int nodeCount;
+    private char[] labels = new char[1024];
+    private int[] firstChild = new int[1024];
+    private int[] childCount = new int[1024];
+    private int[] rangeStart = new int[1024];
+    private int[] rangeEnd = new int[1024];
+    private int[] topStart = new int[1024];
+    private int[] topCount = new int[1024];
+    private int[] top = new int[1024];
+    private int topSize;
+
+    private SuggestionIndex(int topK, suggestionDto[] suggestions, String[] keys, int[] keySuggestions) {
+        this.topK = topK;
+        this.suggestions = suggestions;
+        this.keys = keys;
+        this.keySuggestions = keySuggestions;
+    }
+
+    /**
+     * Build the trie over the names of the given documents
+     *
+     * @param documents The documents to suggest
+     * @param popularity Popularity of a document, higher is suggested first
+     * @param topK The most suggestions returned per lookup
+     * @return The trie
+     */
+    public static SuggestionIndex build(Collection<SearchDocument> documents, ToIntFunction<SearchDocument> popularity, int topK) {
+        record Ranked(SearchDocument document, int popularity, String folded) {
+        }
+        List<Ranked> ranked = new ArrayList<>(documents.size());
+        for (SearchDocument document : documents) {
+            String folded = TextNormalizer.fold(document.getName());
+            if (!folded.isEmpty()) {
+                ranked.add(new Ranked(document, popularity.applyAsInt(document), folded));
+            }
+        }
+        ranked.sort(Comparator.comparingInt((Ranked r) -> -r.popularity())
+                .thenComparingInt(r -> r.folded().length())
+                .thenComparing(Ranked::folded));
+
+        record Key(String key, int suggestion) {
+        }
+        suggestionDto[] suggestions = new suggestionDto[ranked.size()];
+        List<Key> keyList = new ArrayList<>(ranked.size() * 2);
+        for (int i = 0; i < ranked.size(); i++) {
+            SearchDocument document = ranked.get(i).document();
+            suggestions[i] = new suggestionDto(document.getType().name(), document.getName(), document.getImageUrl(),
+                    document.getForeignId(), document.getLidarrId(), document.getMetadata());
+            String folded = ranked.get(i).folded();
+            keyList.add(new Key(folded, i));
+            int wordStart = folded.indexOf(' ');
+            for (int n = 1; n < MAX_KEYS_PER_NAME && wordStart >= 0; n++) {
+                keyList.add(new Key(folded.substring(wordStart + 1), i));
+                wordStart = folded.indexOf(' ', wordStart + 1);
+            }
+        }
+        keyList.sort(Comparator.comparing(Key::key).thenComparingInt(Key::suggestion));
+
+        String[] keys = new String[keyList.size()];
+        int[] keySuggestions = new int[keyList.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = keyList.get(i).key();
+            keySuggestions[i] = keyList.get(i).suggestion();
+        }
+
+        SuggestionIndex index = new SuggestionIndex(topK, suggestions, keys, keySuggestions);
+        int root = index.newNode('\0', 0, keys.length);
+        index.buildChildren(root, 0);
+        return index;
+    }
+
+    /**
+     * @return The number of names that can be suggested
+     */
+    public int size() {
+        return suggestions.length;
+    }
+
+    /**
+     * Get the best completions of a prefix
+     *
+     * @param prefix The folded prefix, see {@link TextNormalizer#fold(String)}
+     * @param limit The most suggestions returned, at most the trie's top-k
+     * @return The suggestions, most popular first
+     */
+    public List<suggestionDto> suggest(String prefix, int limit) {
+        limit = Math.min(limit, topK);
+        if (prefix.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        int node = 0;
+        int depth = 0;
+        while (depth < prefix.length() && childCount[node] > 0) {
+            int child = findChild(node, prefix.charAt(depth));
+            if (child < 0) {
+                return List.of();
+            }
+            node = child;
+            depth++;
+        }
+
+        if (depth == prefix.length() && topCount[node] >= 0) {
+            int count = Math.min(limit, topCount[node]);
+            List<suggestionDto> results = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                results.add(suggestions[top[topStart[node] + i]]);
+            }
+            return results;
+        }
+        return scan(prefix, rangeStart[node], rangeEnd[node], limit);
+    }
+
+    // Smallest distinct suggestion numbers among the keys starting with the prefix
+    private List<suggestionDto> scan(String prefix, int from, int to, int limit) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle].compareTo(prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        List<suggestionDto> results = new ArrayList<>(limit);
+        // Suggestion numbers kept sorted in the list's order, by insertion
+        int[] best = new int[limit];
+        int count = 0;
+        for (int i = low; i < to && keys[i].startsWith(prefix); i++) {
+            count = insert(best, count, keySuggestions[i]);
+        }
+        for (int i = 0; i < count; i++) {
+            results.add(suggestions[best[i]]);
+        }
+        return results;
+    }
+
+    // Insert into a sorted, bounded array of distinct values, returns the new count
+    private static int insert(int[] best, int count, int value) {
+        if (count == best.length && value >= best[count - 1]) {
+            return count;
+        }
+        int position = Arrays.binarySearch(best, 0, count, value);
+        if (position >= 0) {
+            return count;
+        }
+        position = -position - 1;
+        int moved = Math.min(count, best.length - 1) - position;
+        System.arraycopy(best, position, best, position + 1, moved);
+        best[position] = value;
+        return Math.min(count + 1, best.length);
+    }
+
+    private int findChild(int node, char c) {
+        int low = firstChild[node];
+        int high = low + childCount[node] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (labels[middle] < c) {
+                low = middle + 1;
+            } else if (labels[middle] > c) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Create the children of a node from its key range, then theirs.
+     * Only nodes with more keys than top-k get children and precomputed suggestions.
+     */
+    private void buildChildren(int node, int depth) {
+        int from = rangeStart[node];
+        int to = rangeEnd[node];
+        topCount[node] = -1;
+        if (to - from <= topK) {
+            return;
+        }
+        precomputeTop(node, from, to);
+        if (depth == MAX_DEPTH) {
+            return;
+        }
+
+        // Keys that end at this depth sort first and belong to no child
+        int i = from;
+        while (i < to && keys[i].length() == depth) {
+            i++;
+        }
+        int first = nodeCount;
+        while (i < to) {
+            char c = keys[i].charAt(depth);
+            int end = i + 1;
+            while (end < to && keys[end].charAt(depth) == c) {
+                end++;
+            }
+            newNode(c, i, end);
+            i = end;
+        }
+        firstChild[node] = first;
+        childCount[node] = nodeCount - first;
+        for (int child = first; child < first + childCount[node]; child++) {
+            buildChildren(child, depth + 1);
+        }
+    }
+
+    private void precomputeTop(int node, int from, int to) {
+        int[] best = new int[topK];
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            count = insert(best, count, keySuggestions[i]);
+        }
+        if (topSize + count > top.length) {
+            top = Arrays.copyOf(top, Math.max(top.length * 2, topSize + count));
+        }
+        System.arraycopy(best, 0, top, topSize, count);
+        topStart[node] = topSize;
+        topCount[node] = count;
+        topSize += count;
+    }
+
+    private int newNode(char label, int from, int to) {
+        if (nodeCount == labels.length) {
+            int capacity = nodeCount * 2;
+            labels = Arrays.copyOf(labels, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            childCount = Arrays.copyOf(childCount, capacity);
+            rangeStart = Arrays.copyOf(rangeStart, capacity);
+            rangeEnd = Arrays.copyOf(rangeEnd, capacity);
+            topStart = Arrays.copyOf(topStart, capacity);
+            topCount = Arrays.copyOf(topCount, capacity);
+        }
+        int node = nodeCount++;
+        labels[node] = label;
+        rangeStart[node] = from;
+        rangeEnd[node] = to;
+        return node;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.spotifyapi.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Case and accent folding and tokenization shared by indexing and querying,
+ * so "Sigur Rós" and "sigur ros" produce the same tokens.
+ */
+public final class TextNormalizer {
+
+    private TextNormalizer() {
+    }
+
+    /**
+     * Fold text to lower-case ASCII-like letters and digits, with single spaces between words
+     *
+     * @param text The text, may be null
+     * @return The folded text
+     */
+    public static String fold(String text) {
+        return String.join(" ", tokenize(text));
+    }
+
+    /**
+     * Split text into folded tokens
+     *
+     * @param text The text, may be null
+     * @return The tokens in order
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFKD).toLowerCase(Locale.ROOT);
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            int type = Character.getType(c);
+            if (type == Character.NON_SPACING_MARK || type == Character.COMBINING_SPACING_MARK || type == Character.ENCLOSING_MARK) {
+                continue;
+            }
+            // Apostrophes join words: "don't" is one token
+            if (c == '\'' || c == '\u2019') {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                appendFolded(token, c);
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    // Letters that do not decompose into a base letter and a mark
+    private static void appendFolded(StringBuilder token, char c) {
+        switch (c) {
+            case 'ø' -> token.append('o');
+            case 'æ' -> token.append("ae");
+            case 'œ' -> token.append("oe");
+            case 'ß' -> token.append("ss");
+            case 'đ', 'ð' -> token.append('d');
+            case 'ł' -> token.append('l');
+            case 'þ' -> token.append("th");
+            case 'ı' -> token.append('i');
+            default -> token.append(c);
+        }
+    }
+}
@@ -6,11 +6,9 @@ import com.example.spotifyapi.lidarr.dto.LidarrTrackDto;
 import com.example.spotifyapi.lidarr.dto.TrackImportDTO;
 import com.example.spotifyapi.model.Album;
 import com.example.spotifyapi.model.Artist;
-import com.example.spotifyapi.model.Genre;
 import com.example.spotifyapi.model.Track;
 import com.example.spotifyapi.repository.AlbumRepository;
 import com.example.spotifyapi.repository.ArtistRepository;
-import com.example.spotifyapi.repository.GenreRepository;
 import com.example.spotifyapi.repository.TrackRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,19 +26,19 @@ public class AlbumService {
     private final AlbumRepository albumRepository;
     private final ArtistRepository artistRepository;
     private final TrackRepository trackRepository;
-    private final GenreRepository genreRepository;
+    private final GenreService genreService;
     private final LidarrClient lidarrClient;
     
     @Autowired
     public AlbumService(AlbumRepository albumRepository,
                         ArtistRepository artistRepository,
                         TrackRepository trackRepository,
-                        GenreRepository genreRepository,
+                        GenreService genreService,
                         LidarrClient lidarrClient) {
         this.albumRepository = albumRepository;
         this.artistRepository = artistRepository;
         this.trackRepository = trackRepository;
-        this.genreRepository = genreRepository;
+        this.genreService = genreService;
         this.lidarrClient = lidarrClient;
     }
 
@@ -156,21 +154,7 @@ public class AlbumService {
             
             // Process genres
             if (lidarrAlbum.getGenres() != null && !lidarrAlbum.getGenres().isEmpty()) {
-                Set<Genre> genres = new HashSet<>();
-                
-                for (String genreName : lidarrAlbum.getGenres()) {
-                    // Find or create the genre
-                    Genre genre = genreRepository.findByNameIgnoreCase(genreName)
-                            .orElseGet(() -> {
-                                Genre newGenre = new Genre();
-                                newGenre.setName(genreName);
-                                return genreRepository.save(newGenre);
-                            });
-                    
-                    genres.add(genre);
-                }
-                
-                album.setGenres(genres);
+                album.setGenres(genreService.resolveGenres(lidarrAlbum.getGenres()));
             }
             
             // Save the album
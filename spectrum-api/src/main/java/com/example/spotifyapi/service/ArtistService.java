@@ -5,9 +5,7 @@ import com.example.spotifyapi.lidarr.dto.LidarrAddArtistrequestDto;
 import com.example.spotifyapi.lidarr.dto.LidarrAddOptionsDto;
 import com.example.spotifyapi.lidarr.dto.LidarrArtistDto;
 import com.example.spotifyapi.model.Artist;
-import com.example.spotifyapi.model.Genre;
 import com.example.spotifyapi.repository.ArtistRepository;
-import com.example.spotifyapi.repository.GenreRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -18,15 +16,15 @@ import java.util.*;
 public class ArtistService {
 
     private final ArtistRepository artistRepository;
-    private final GenreRepository genreRepository;
+    private final GenreService genreService;
     private final LidarrClient lidarrClient;
     
     @Autowired
     public ArtistService(ArtistRepository artistRepository, 
-                         GenreRepository genreRepository,
+                         GenreService genreService,
                          LidarrClient lidarrClient) {
         this.artistRepository = artistRepository;
-        this.genreRepository = genreRepository;
+        this.genreService = genreService;
         this.lidarrClient = lidarrClient;
     }
 
@@ -108,21 +106,7 @@ public class ArtistService {
             
             // Process genres
             if (lidarrArtist.getGenres() != null && !lidarrArtist.getGenres().isEmpty()) {
-                Set<Genre> genres = new HashSet<>();
-                
-                for (String genreName : lidarrArtist.getGenres()) {
-                    // Find or create the genre
-                    Genre genre = genreRepository.findByNameIgnoreCase(genreName)
-                            .orElseGet(() -> {
-                                Genre newGenre = new Genre();
-                                newGenre.setName(genreName);
-                                return genreRepository.save(newGenre);
-                            });
-                    
-                    genres.add(genre);
-                }
-                
-                artist.setGenres(genres);
+                artist.setGenres(genreService.resolveGenres(lidarrArtist.getGenres()));
             }
             
             // Save the artist
@@ -0,0 +1,377 @@
+package com.example.spotifyapi.service;
+
+import com.example.spotifyapi.model.Track;
+import com.example.spotifyapi.model.TrackAudioInfo;
+import com.example.spotifyapi.repository.TrackAudioInfoRepository;
+import com.example.spotifyapi.repository.TrackRepository;
+import com.example.spotifyapi.streaming.AudioHeaderReader;
+import com.example.spotifyapi.streaming.AudioHeaderReader.AudioInfo;
+import com.example.spotifyapi.streaming.AudioFileCache.AudioFile;
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the TrackAudioInfo table in step with the audio files of the library.
+ *
+ * After a synchronization every track's file is checked on a bounded pool of
+ * scanner threads; only files whose size or modification time changed since
+ * their last scan are read again. Metadata requests are then answered from the
+ * table, and track durations are corrected from the files. A request for a file
+ * that changed since its scan is answered from the file's header while a scan
+ * of the track is queued.
+ */
+@Service
+public class AudioInfoService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AudioInfoService.class);
+    private static final int HASH_BUFFER_SIZE = 65536;
+
+    @Value("${audio.storage.path}")
+    private String audioStoragePath;
+
+    private final TrackRepository trackRepository;
+    private final TrackAudioInfoRepository trackAudioInfoRepository;
+    private final ThreadPoolExecutor scanExecutor;
+    private final AtomicBoolean scanning = new AtomicBoolean();
+    // Tracks whose scan was queued by a request, so repeated requests queue it once
+    private final Set<Long> queuedScans = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public AudioInfoService(
+            TrackRepository trackRepository,
+            TrackAudioInfoRepository trackAudioInfoRepository,
+            @Value("${audio.scan.threads:2}") int scanThreads) {
+        this.trackRepository = trackRepository;
+        this.trackAudioInfoRepository = trackAudioInfoRepository;
+
+        // A full queue rejects the task, the library scan then scans on its own thread to bound the backlog
+        AtomicInteger threadCount = new AtomicInteger();
+        this.scanExecutor = new ThreadPoolExecutor(scanThreads, scanThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(scanThreads * 4),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "audio-scan-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.scanExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Get the audio info of a track's current file. The stored row is used while the
+     * file's size and modification time match it. Otherwise only the file's header
+     * is read, and a scan of the track is queued that stores it with its content hash.
+     *
+     * @param track The track entity
+     * @param audioFile The track's open audio file
+     * @return The audio info, without content hash if it was read from the header
+     * @throws IOException If the header has to be read and cannot be
+     */
+    public TrackAudioInfo getAudioInfo(Track track, AudioFile audioFile) throws IOException {
+        Optional<TrackAudioInfo> stored = getStoredAudioInfo(track, audioFile);
+        if (stored.isPresent()) {
+            return stored.get();
+        }
+        queueScan(track);
+        return readHeader(track, audioFile.getPath(), audioFile.getChannel(), audioFile.getSize(), audioFile.getLastModified());
+    }
+
+    /**
+     * Get the stored audio info of a track if it was scanned from the file as it is now
+     *
+     * @param track The track entity
+     * @param audioFile The track's open audio file
+     * @return The stored audio info, or empty if the file was not scanned yet or changed since
+     */
+    public Optional<TrackAudioInfo> getStoredAudioInfo(Track track, AudioFile audioFile) {
+        return trackAudioInfoRepository.findById(track.getId())
+                .filter(info -> isCurrent(info, audioFile.getSize(), audioFile.getLastModified()));
+    }
+
+    /**
+     * Resolve the local file of a track
+     *
+     * @param track The track entity
+     * @return The path of the audio file
+     */
+    public Path getAudioFilePath(Track track) {
+        String audioUrl = track.getAudioUrl();
+
+        // If it's already a full path, use it directly
+        if (audioUrl.startsWith("/") || audioUrl.contains(":\\")) {
+            return Paths.get(audioUrl);
+        }
+
+        // Otherwise, combine with the base storage path
+        return Paths.get(audioStoragePath, audioUrl);
+    }
+
+    /**
+     * Scan the library in the background, unless a scan is already running
+     */
+    public void scanLibraryAsync() {
+        Thread thread = new Thread(this::scanLibrary, "audio-scan-coordinator");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Scan the tracks of some albums in the background, e.g. the albums an incremental
+     * synchronization changed. Runs alongside a library scan.
+     *
+     * @param albumIds The IDs of the albums
+     */
+    public void scanAlbumsAsync(Collection<Long> albumIds) {
+        if (albumIds.isEmpty()) {
+            return;
+        }
+        List<Long> ids = List.copyOf(albumIds);
+        Thread thread = new Thread(() -> scanAlbums(ids), "audio-scan-coordinator");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Scan every track whose file changed since its last scan
+     */
+    public void scanLibrary() {
+        if (!scanning.compareAndSet(false, true)) {
+            logger.info("Audio scan already running, skipping");
+            return;
+        }
+        try {
+            Map<Long, TrackAudioInfo> known = new HashMap<>();
+            trackAudioInfoRepository.findAll().forEach(info -> known.put(info.getTrackId(), info));
+            scanTracks("Audio scan", trackRepository.findAll(), known);
+        } finally {
+            scanning.set(false);
+        }
+    }
+
+    private void scanAlbums(List<Long> albumIds) {
+        List<Track> tracks = trackRepository.findByAlbumIdIn(albumIds);
+        Map<Long, TrackAudioInfo> known = new HashMap<>();
+        trackAudioInfoRepository.findAllById(tracks.stream().map(Track::getId).toList())
+                .forEach(info -> known.put(info.getTrackId(), info));
+        scanTracks("Audio scan of " + albumIds.size() + " albums", tracks, known);
+    }
+
+    /**
+     * Scan the tracks whose file changed since their last scan
+     *
+     * @param label Names the scan in the log
+     * @param tracks The tracks to check
+     * @param known The stored audio info of the tracks by track ID
+     */
+    private void scanTracks(String label, List<Track> tracks, Map<Long, TrackAudioInfo> known) {
+        try {
+            long started = System.currentTimeMillis();
+            AtomicInteger scanned = new AtomicInteger();
+            AtomicInteger failed = new AtomicInteger();
+            List<Future<?>> pending = new ArrayList<>();
+            int checked = 0;
+            for (Track track : tracks) {
+                if (track.getAudioUrl() == null || track.getAudioUrl().isEmpty() || track.getAudioUrl().startsWith("http")) {
+                    continue;
+                }
+                checked++;
+                TrackAudioInfo existing = known.get(track.getId());
+                Runnable scan = () -> {
+                    try {
+                        if (scanIfChanged(track, existing)) {
+                            scanned.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        failed.incrementAndGet();
+                        logger.debug("Could not scan audio file of track {}: {}", track.getId(), e.getMessage());
+                    }
+                };
+                try {
+                    pending.add(scanExecutor.submit(scan));
+                } catch (RejectedExecutionException e) {
+                    scan.run();
+                }
+            }
+            for (Future<?> future : pending) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    failed.incrementAndGet();
+                    logger.error("Error scanning audio file", e.getCause());
+                }
+            }
+
+            logger.info("{} completed in {} ms: {} tracks checked, {} scanned, {} failed",
+                    label, System.currentTimeMillis() - started, checked, scanned.get(), failed.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("{} interrupted", label);
+        } catch (Exception e) {
+            logger.error("Error during {}", label, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scanExecutor.shutdownNow();
+    }
+
+    /**
+     * Queue a scan of a track's file, never scanning on the calling thread.
+     * Skipped while the scanners are busy, the next library scan picks the file up.
+     */
+    private void queueScan(Track track) {
+        if (scanExecutor.getQueue().remainingCapacity() == 0 || !queuedScans.add(track.getId())) {
+            return;
+        }
+        try {
+            scanExecutor.execute(() -> {
+                try {
+                    scanIfChanged(track, trackAudioInfoRepository.findById(track.getId()).orElse(null));
+                } catch (IOException e) {
+                    logger.debug("Could not scan audio file of track {}: {}", track.getId(), e.getMessage());
+                } finally {
+                    queuedScans.remove(track.getId());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queuedScans.remove(track.getId());
+        }
+    }
+
+    private boolean scanIfChanged(Track track, TrackAudioInfo existing) throws IOException {
+        Path path = getAudioFilePath(track);
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        if (existing != null && isCurrent(existing, attributes.size(), attributes.lastModifiedTime().toMillis())) {
+            return false;
+        }
+        scanTrack(track, path, attributes);
+        return true;
+    }
+
+    private static boolean isCurrent(TrackAudioInfo info, long fileSize, long lastModified) {
+        return info.getFileSize() == fileSize && info.getLastModified() == lastModified;
+    }
+
+    /**
+     * Read a track's file, store its audio info and correct the track's duration
+     *
+     * @param track The track entity
+     * @param path The audio file
+     * @param attributes The attributes of the file
+     * @return The stored audio info
+     * @throws IOException If the file cannot be read
+     */
+    private TrackAudioInfo scanTrack(Track track, Path path, BasicFileAttributes attributes) throws IOException {
+        TrackAudioInfo audioInfo;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            audioInfo = readHeader(track, path, channel, attributes.size(), attributes.lastModifiedTime().toMillis());
+            audioInfo.setContentHash(hash(channel));
+        }
+        TrackAudioInfo saved = trackAudioInfoRepository.save(audioInfo);
+
+        // Durations from Lidarr are not always in seconds, the file is authoritative
+        if (audioInfo.getDurationMs() > 0) {
+            int seconds = (int) Math.round(audioInfo.getDurationMs() / 1000.0);
+            if (track.getDurationInSeconds() != seconds) {
+                trackRepository.updateDurationInSeconds(track.getId(), seconds);
+                track.setDurationInSeconds(seconds);
+            }
+        }
+        return saved;
+    }
+
+    /**
+     * Read the stream properties and tags of a track's file, without hashing it
+     *
+     * @param track The track entity
+     * @param path The audio file
+     * @param channel The open audio file
+     * @param fileSize The size of the file
+     * @param lastModified The modification time of the file
+     * @return The unsaved audio info
+     * @throws IOException If the file cannot be read
+     */
+    private TrackAudioInfo readHeader(Track track, Path path, FileChannel channel, long fileSize, long lastModified) throws IOException {
+        String extension = FilenameUtils.getExtension(path.getFileName().toString()).toLowerCase();
+        TrackAudioInfo audioInfo = new TrackAudioInfo();
+        audioInfo.setTrackId(track.getId());
+        audioInfo.setCodec(extension);
+        audioInfo.setFileSize(fileSize);
+        audioInfo.setLastModified(lastModified);
+
+        // FLAC and MP3 headers carry the stream properties and tags
+        if ("mp3".equals(extension) || "flac".equals(extension)) {
+            AudioInfo info = AudioHeaderReader.read(channel, fileSize);
+            audioInfo.setCodec(info.getFormat());
+            audioInfo.setSampleRate(info.getSampleRate());
+            audioInfo.setBitDepth(info.getBitsPerSample());
+            audioInfo.setChannels(info.getChannels());
+            audioInfo.setDurationMs(info.getDurationMs());
+            audioInfo.setBitrateKbps(info.getBitrateKbps());
+            audioInfo.setEncoder(truncate(info.getEncoder()));
+            audioInfo.setArtist(truncate(info.getTags().get("artist")));
+            audioInfo.setAlbum(truncate(info.getTags().get("album")));
+            audioInfo.setTrackNumber(truncate(info.getTags().get("tracknumber")));
+            audioInfo.setYear(truncate(info.getTags().get("date")));
+        }
+        return audioInfo;
+    }
+
+    private String hash(FileChannel channel) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HASH_BUFFER_SIZE);
+        long position = 0;
+        int read;
+        while ((read = channel.read(buffer, position)) > 0) {
+            position += read;
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // Tag values are stored in default-length columns
+    private String truncate(String value) {
+        return value != null && value.length() > 255 ? value.substring(0, 255) : value;
+    }
+}
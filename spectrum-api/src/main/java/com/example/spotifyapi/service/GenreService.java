@@ -2,39 +2,146 @@ package com.example.spotifyapi.service;
 
 import com.example.spotifyapi.model.Genre;
 import com.example.spotifyapi.repository.GenreRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class GenreService {
 
+    private static final Logger logger = LoggerFactory.getLogger(GenreService.class);
+
     private final GenreRepository genreRepository;
-    
+
+    // Case-folded name -> genre, loaded on first use and shared by all synchronizations
+    private final Map<String, Genre> genresByName = new ConcurrentHashMap<>();
+    private volatile boolean genresLoaded;
+
     @Autowired
     public GenreService(GenreRepository genreRepository) {
         this.genreRepository = genreRepository;
     }
-    
+
     public List<Genre> getAllGenres() {
         return genreRepository.findAll();
     }
-    
+
     public Optional<Genre> getGenreById(Long id) {
         return genreRepository.findById(id);
     }
-    
+
     public List<Genre> searchGenresByName(String name) {
         return genreRepository.findByNameContainingIgnoreCase(name);
     }
-    
+
     public Genre saveGenre(Genre genre) {
-        return genreRepository.save(genre);
+        Genre savedGenre = genreRepository.save(genre);
+        synchronized (this) {
+            if (genresLoaded && savedGenre.getName() != null) {
+                genresByName.values().removeIf(cached -> cached.getId().equals(savedGenre.getId()));
+                genresByName.putIfAbsent(fold(savedGenre.getName()), savedGenre);
+            }
+        }
+        return savedGenre;
     }
-    
+
     public void deleteGenre(Long id) {
         genreRepository.deleteById(id);
+        synchronized (this) {
+            genresByName.values().removeIf(cached -> cached.getId().equals(id));
+        }
+    }
+
+    /**
+     * Get the genres of the given names, ignoring case. Known genres come from
+     * memory, missing ones are created together in one batch. Safe to call from
+     * concurrent synchronization workers.
+     *
+     * @param names The genre names, may be null or contain blank names
+     * @return The genres, detached from any persistence context
+     */
+    public Set<Genre> resolveGenres(Collection<String> names) {
+        Set<Genre> genres = new HashSet<>();
+        if (names == null || names.isEmpty()) {
+            return genres;
+        }
+        loadGenres();
+
+        // Missing genres by folded name, keeping the first spelling
+        Map<String, String> missing = new LinkedHashMap<>();
+        for (String name : names) {
+            if (name == null || name.isBlank()) {
+                continue;
+            }
+            String key = fold(name);
+            Genre genre = genresByName.get(key);
+            if (genre != null) {
+                genres.add(genre);
+            } else {
+                missing.putIfAbsent(key, name.trim());
+            }
+        }
+        if (!missing.isEmpty()) {
+            genres.addAll(createGenres(missing));
+        }
+        return genres;
+    }
+
+    // Creates the missing genres, serialized so concurrent workers don't create the same genre twice.
+    // They are committed before they are cached, a caller's rollback must not leave unknown IDs in the cache
+    private synchronized List<Genre> createGenres(Map<String, String> missing) {
+        List<Genre> genres = new ArrayList<>();
+        List<Genre> newGenres = new ArrayList<>();
+        missing.forEach((key, name) -> {
+            Genre genre = genresByName.get(key);
+            if (genre != null) {
+                genres.add(genre);
+            } else {
+                Genre newGenre = new Genre();
+                newGenre.setName(name);
+                newGenres.add(newGenre);
+            }
+        });
+        if (!newGenres.isEmpty()) {
+            for (Genre savedGenre : genreRepository.saveAllCommitted(newGenres)) {
+                genresByName.put(fold(savedGenre.getName()), savedGenre);
+                genres.add(savedGenre);
+            }
+            logger.debug("Created {} new genres", newGenres.size());
+        }
+        return genres;
+    }
+
+    private void loadGenres() {
+        if (genresLoaded) {
+            return;
+        }
+        synchronized (this) {
+            if (!genresLoaded) {
+                // Sorted by id, so the oldest of genres differing only in case wins
+                genreRepository.findAll().stream()
+                        .filter(genre -> genre.getName() != null)
+                        .sorted((a, b) -> Long.compare(a.getId(), b.getId()))
+                        .forEach(genre -> genresByName.putIfAbsent(fold(genre.getName()), genre));
+                genresLoaded = true;
+                logger.info("Loaded {} genres", genresByName.size());
+            }
+        }
+    }
+
+    private static String fold(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
     }
 }
@@ -0,0 +1,261 @@
+package com.example.spotifyapi.service;
+
+import com.example.spotifyapi.model.Track;
+import com.example.spotifyapi.model.TrackLoudness;
+import com.example.spotifyapi.repository.TrackLoudnessRepository;
+import com.example.spotifyapi.repository.TrackRepository;
+import com.example.spotifyapi.streaming.AudioFileCache.AudioFile;
+import com.example.spotifyapi.streaming.LoudnessMeter;
+import com.example.spotifyapi.streaming.PcmDecoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loudness analysis job for the library.
+ *
+ * Measures the EBU R128 integrated loudness and true peak of every local
+ * track and derives ReplayGain track and album gains, so clients can
+ * normalize volume without decoding ahead. Albums are analyzed in parallel on
+ * a fork-join pool. The results of an album are stored as soon as the album is
+ * done, which checkpoints the job: after a restart only albums with missing or
+ * outdated results are analyzed again.
+ */
+@Service
+public class LoudnessService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoudnessService.class);
+
+    // ReplayGain 2.0 reference level
+    private static final double REFERENCE_LOUDNESS = -18.0;
+
+    private final TrackRepository trackRepository;
+    private final TrackLoudnessRepository trackLoudnessRepository;
+    private final AudioInfoService audioInfoService;
+    private final PcmDecoder pcmDecoder;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // Recently used results by track ID for the stream headers, empty if a track was not analyzed yet
+    private final Map<Long, Optional<TrackLoudness>> loudnessCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Optional<TrackLoudness>> eldest) {
+            return size() > cacheSize;
+        }
+    };
+
+    @Value("${loudness.enabled:true}")
+    private boolean enabled;
+
+    @Value("${loudness.threads:2}")
+    private int threads;
+
+    @Value("${loudness.cache-size:4096}")
+    private int cacheSize;
+
+    @Autowired
+    public LoudnessService(
+            TrackRepository trackRepository,
+            TrackLoudnessRepository trackLoudnessRepository,
+            AudioInfoService audioInfoService,
+            PcmDecoder pcmDecoder) {
+        this.trackRepository = trackRepository;
+        this.trackLoudnessRepository = trackLoudnessRepository;
+        this.audioInfoService = audioInfoService;
+        this.pcmDecoder = pcmDecoder;
+    }
+
+    /**
+     * Get the loudness of a track
+     *
+     * @param trackId The ID of the track
+     * @return The loudness, or empty if the track was not analyzed yet or could not be decoded
+     */
+    public Optional<TrackLoudness> getLoudness(Long trackId) {
+        synchronized (loudnessCache) {
+            Optional<TrackLoudness> cached = loudnessCache.get(trackId);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        // Queried outside the lock, a concurrent miss only queries twice
+        Optional<TrackLoudness> loudness = trackLoudnessRepository.findById(trackId).filter(value -> !value.isFailed());
+        synchronized (loudnessCache) {
+            // Results stored meanwhile win over the query
+            Optional<TrackLoudness> cached = loudnessCache.putIfAbsent(trackId, loudness);
+            return cached != null ? cached : loudness;
+        }
+    }
+
+    /**
+     * Analyze every album that has tracks without current loudness results.
+     * Runs periodically, which also resumes an analysis interrupted by a restart.
+     */
+    @Scheduled(initialDelayString = "${loudness.initial-delay-ms:120000}", fixedDelayString = "${loudness.interval-ms:3600000}")
+    public void analyzeLibrary() {
+        if (!enabled || !pcmDecoder.isAvailable()) {
+            return;
+        }
+        if (!running.compareAndSet(false, true)) {
+            logger.info("Loudness analysis already running, skipping");
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<List<Track>> pending = findPendingAlbums();
+            if (pending.isEmpty()) {
+                return;
+            }
+            logger.info("Starting loudness analysis of {} albums", pending.size());
+            long started = System.currentTimeMillis();
+            AtomicInteger done = new AtomicInteger();
+
+            pool.submit(() -> pending.parallelStream().forEach(album -> {
+                analyzeAlbum(album);
+                int count = done.incrementAndGet();
+                if (count % 50 == 0) {
+                    logger.info("Loudness analysis: {}/{} albums", count, pending.size());
+                }
+            })).get();
+
+            logger.info("Loudness analysis of {} albums completed in {} ms",
+                    pending.size(), System.currentTimeMillis() - started);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Loudness analysis interrupted");
+        } catch (ExecutionException e) {
+            logger.error("Error during loudness analysis", e.getCause());
+        } catch (Exception e) {
+            logger.error("Error during loudness analysis", e);
+        } finally {
+            pool.shutdownNow();
+            running.set(false);
+        }
+    }
+
+    /**
+     * Group local tracks by album and keep the albums with a track whose result is missing or outdated
+     */
+    private List<List<Track>> findPendingAlbums() {
+        Map<Long, TrackLoudness> stored = new HashMap<>();
+        trackLoudnessRepository.findAll().forEach(loudness -> stored.put(loudness.getTrackId(), loudness));
+
+        Map<Long, List<Track>> albums = new LinkedHashMap<>();
+        for (Track track : trackRepository.findAll()) {
+            if (track.getAudioUrl() == null || track.getAudioUrl().isEmpty() || track.getAudioUrl().startsWith("http")) {
+                continue;
+            }
+            // Tracks without an album are their own album
+            Long key = track.getAlbum() != null ? track.getAlbum().getId() : -track.getId();
+            albums.computeIfAbsent(key, k -> new ArrayList<>()).add(track);
+        }
+
+        List<List<Track>> pending = new ArrayList<>();
+        for (List<Track> album : albums.values()) {
+            for (Track track : album) {
+                if (needsAnalysis(stored.get(track.getId()), track)) {
+                    pending.add(album);
+                    break;
+                }
+            }
+        }
+        return pending;
+    }
+
+    private boolean needsAnalysis(TrackLoudness loudness, Track track) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(audioInfoService.getAudioFilePath(track), BasicFileAttributes.class);
+            return loudness == null
+                    || loudness.getFileSize() != attributes.size()
+                    || loudness.getLastModified() != attributes.lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            // Missing files cannot be analyzed, do not retry them every run
+            return false;
+        }
+    }
+
+    /**
+     * Measure every track of an album and store the results of the album together
+     */
+    private void analyzeAlbum(List<Track> album) {
+        List<TrackLoudness> results = new ArrayList<>();
+        List<TrackLoudness> failures = new ArrayList<>();
+        List<double[]> blockEnergies = new ArrayList<>();
+        for (Track track : album) {
+            Path path = audioInfoService.getAudioFilePath(track);
+            TrackLoudness loudness = new TrackLoudness();
+            loudness.setTrackId(track.getId());
+            int channels;
+            try (AudioFile audioFile = AudioFile.openDetached(path)) {
+                loudness.setFileSize(audioFile.getSize());
+                loudness.setLastModified(audioFile.getLastModified());
+                channels = audioInfoService.getAudioInfo(track, audioFile).getChannels() == 1 ? 1 : 2;
+            } catch (IOException e) {
+                // Not readable now, retried on the next run
+                logger.warn("Could not analyze loudness of track {}: {}", track.getId(), e.getMessage());
+                continue;
+            }
+
+            try {
+                LoudnessMeter meter = new LoudnessMeter(channels);
+                pcmDecoder.decode(path, LoudnessMeter.SAMPLE_RATE, channels, meter::add);
+                loudness.setIntegratedLoudness(round(meter.getIntegratedLoudness()));
+                loudness.setTruePeak(round(LoudnessMeter.toDecibels(meter.getTruePeak())));
+                loudness.setTrackGain(round(REFERENCE_LOUDNESS - meter.getIntegratedLoudness()));
+                results.add(loudness);
+                blockEnergies.add(meter.getBlockEnergies());
+            } catch (IOException e) {
+                // Recorded, so the album is not decoded again every run until the file changes
+                logger.warn("Could not decode track {} for loudness analysis: {}", track.getId(), e.getMessage());
+                loudness.setFailed(true);
+                failures.add(loudness);
+            }
+        }
+        if (!failures.isEmpty()) {
+            trackLoudnessRepository.saveAll(failures);
+            synchronized (loudnessCache) {
+                failures.forEach(failure -> loudnessCache.put(failure.getTrackId(), Optional.empty()));
+            }
+        }
+        if (results.isEmpty()) {
+            return;
+        }
+
+        // Album loudness is gated over the blocks of all tracks together
+        double[] albumBlocks = blockEnergies.stream().flatMapToDouble(Arrays::stream).toArray();
+        double albumLoudness = LoudnessMeter.integratedLoudness(albumBlocks);
+        double albumTruePeak = results.stream().mapToDouble(TrackLoudness::getTruePeak).max().orElse(-120);
+        for (TrackLoudness loudness : results) {
+            loudness.setAlbumLoudness(round(albumLoudness));
+            loudness.setAlbumTruePeak(albumTruePeak);
+            loudness.setAlbumGain(round(REFERENCE_LOUDNESS - albumLoudness));
+        }
+
+        trackLoudnessRepository.saveAll(results);
+        synchronized (loudnessCache) {
+            results.forEach(loudness -> loudnessCache.put(loudness.getTrackId(), Optional.of(loudness)));
+        }
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -1,29 +1,55 @@
 package com.example.spotifyapi.service;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import com.example.spotifyapi.dto.searchResultDto;
 import com.example.spotifyapi.dto.searchResultsDto;
 import com.example.spotifyapi.lidarr.LidarrClient;
 import com.example.spotifyapi.lidarr.dto.LidarrArtistDto;
-import com.example.spotifyapi.model.Album;
-import com.example.spotifyapi.model.Playlist;
-import com.example.spotifyapi.model.Track;
 import com.example.spotifyapi.repository.AlbumRepository;
+import com.example.spotifyapi.repository.ArtistRepository;
 import com.example.spotifyapi.repository.PlaylistRepository;
 import com.example.spotifyapi.repository.TrackRepository;
+import com.example.spotifyapi.search.SearchDocument;
+import com.example.spotifyapi.search.SearchIndex;
+import com.example.spotifyapi.search.SearchIndexSnapshot;
+import com.example.spotifyapi.search.SearchResultCache;
 
 
 @Service
 public class SearchService {
+    private static final Logger logger = LoggerFactory.getLogger(SearchService.class);
+    
     @Autowired
     private LidarrClient lidarrClient;
     
@@ -36,54 +62,261 @@ public class SearchService {
     @Autowired
     private PlaylistRepository playlistRepository;
     
-    // Cache to store search results with timestamp
-    private final Map<String, CacheEntry<searchResultsDto>> searchCache = new ConcurrentHashMap<>();
+    @Autowired
+    private ArtistRepository artistRepository;
+    
+    @Autowired
+    private SearchIndex searchIndex;
+    
+    @Autowired
+    private SuggestionService suggestionService;
+    
+    // Most results returned per section (artists, albums, tracks, playlists)
+    @Value("${search.max-results-per-section:50}")
+    private int maxResultsPerSection;
     
-    // Cache expiration time in milliseconds (5 minutes)
-    private static final long CACHE_EXPIRATION_MS = TimeUnit.MINUTES.toMillis(5);
+    // Threads running the Lidarr lookups of searches, the library is searched inline
+    @Value("${search.threads:8}")
+    private int searchThreads;
+    
+    // Deadline of the Lidarr lookup, counted from the start of a search
+    @Value("${search.lidarr-timeout-ms:2000}")
+    private long lidarrTimeoutMs;
+    
+    private static final String SOURCE_LIBRARY = "library";
+    private static final String SOURCE_LIDARR = "lidarr";
+    private static final long STREAM_TIMEOUT_GRACE_MS = 5000;
+    
+    private ThreadPoolExecutor searchExecutor;
+    
+    @Autowired
+    private SearchResultCache searchCache;
+
+    @Autowired
+    private SearchIndexSnapshot searchIndexSnapshot;
 
-    public searchResultsDto search(String query) {
-        // Normalize query for cache lookup (trim and lowercase)
-        String normalizedQuery = query.trim().toLowerCase();
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        searchExecutor = new ThreadPoolExecutor(searchThreads, searchThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(searchThreads * 8),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "search-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        searchExecutor.allowCoreThreadTimeOut(true);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        searchExecutor.shutdownNow();
+        // Here rather than in the snapshot, which must write before the database closes
+        searchIndexSnapshot.save();
+    }
+
+    /**
+     * Search the library and Lidarr concurrently, returning one page of every section.
+     * Sections hold at most search.max-results-per-section results in total.
+     * 
+     * @param query The search query
+     * @param offset The number of results skipped in every section
+     * @param limit The most results returned per section
+     * @return The page of search results
+     */
+    public searchResultsDto search(String query, int offset, int limit) {
+        // Concurrent searches for the same query share one load
+        searchResultsDto results = searchCache.get(normalize(query), key -> searchAsync(query)).join();
         
-        // Return cached results if available and not expired
-        if (searchCache.containsKey(normalizedQuery)) {
-            CacheEntry<searchResultsDto> cacheEntry = searchCache.get(normalizedQuery);
-            if (!cacheEntry.isExpired()) {
-                return cacheEntry.getValue();
-            } else {
-                // Remove expired entry
-                searchCache.remove(normalizedQuery);
-            }
+        int from = Math.max(0, offset);
+        int count = Math.max(0, Math.min(limit, maxResultsPerSection));
+        searchResultsDto page = new searchResultsDto();
+        page.setArtists(slice(results.getArtists(), from, count));
+        page.setAlbums(slice(results.getAlbums(), from, count));
+        page.setTracks(slice(results.getTracks(), from, count));
+        page.setPlaylists(slice(results.getPlaylists(), from, count));
+        page.setTimedOut(results.getTimedOut());
+        return page;
+    }
+    
+    private static List<searchResultDto> slice(List<searchResultDto> section, int offset, int limit) {
+        int from = Math.min(offset, section.size());
+        int to = (int) Math.min((long) from + limit, section.size());
+        return new ArrayList<>(section.subList(from, to));
+    }
+    
+    /**
+     * Stream search results as server-sent events, each section as soon as it is ready.
+     * Library sections ("albums", "tracks", "playlists", "artists") come first, then the sections
+     * of the complete results, whose artists include Lidarr's, replace them. Last is "done" with
+     * the sources that timed out.
+     * 
+     * @param query The search query
+     * @return The emitter the events are sent to
+     */
+    public SseEmitter searchStream(String query) {
+        SseEmitter emitter = new SseEmitter(lidarrTimeoutMs + STREAM_TIMEOUT_GRACE_MS);
+        String normalizedQuery = normalize(query);
+        
+        searchResultsDto cached = searchCache.getIfPresent(normalizedQuery);
+        if (cached != null) {
+            sendSections(emitter, cached);
+            sendEvent(emitter, "done", Map.of("timedOut", cached.getTimedOut()));
+            emitter.complete();
+            return emitter;
         }
         
-        // If no valid cache entry exists, perform the search
-        ArrayList<searchResultDto> artists = getArtists(query);
-        ArrayList<searchResultDto> albums = getAlbums(query);
-        ArrayList<searchResultDto> tracks = getTracks(query);
-        ArrayList<searchResultDto> playlists = getPlaylists(query);
-
+        // The library answers on its own first, its matches are reused for the complete results
+        List<String> timedOut = new CopyOnWriteArrayList<>();
+        Map<SearchDocument.Type, List<SearchDocument>> matches = searchLibrary(query, timedOut);
+        sendSections(emitter, buildResults(matches, new ArrayList<>(), List.of()));
+        searchCache.get(normalizedQuery, key -> searchAsync(query, matches, timedOut))
+                .whenComplete((results, error) -> {
+                    if (error != null) {
+                        logger.error("Error streaming search results for '{}'", query, error);
+                        emitter.completeWithError(error);
+                        return;
+                    }
+                    sendSections(emitter, results);
+                    sendEvent(emitter, "done", Map.of("timedOut", results.getTimedOut()));
+                    emitter.complete();
+                });
+        return emitter;
+    }
+    
+    /**
+     * @return Statistics of the search cache
+     */
+    public Map<String, Long> getCacheStats() {
+        return searchCache.getStats();
+    }
+    
+    // Normalize query for cache lookup (trim and lowercase)
+    private static String normalize(String query) {
+        return query.trim().toLowerCase();
+    }
+    
+    /**
+     * Search the library, then Lidarr on the search executor.
+     * A Lidarr lookup that misses its deadline is left out and listed in the results' timedOut.
+     */
+    private CompletableFuture<searchResultsDto> searchAsync(String query) {
+        List<String> timedOut = new CopyOnWriteArrayList<>();
+        return searchAsync(query, searchLibrary(query, timedOut), timedOut);
+    }
+    
+    private CompletableFuture<searchResultsDto> searchAsync(String query, Map<SearchDocument.Type, List<SearchDocument>> matches,
+                                                          List<String> timedOut) {
+        return searchLidarr(query, timedOut).thenApply(artists -> buildResults(matches, artists, timedOut));
+    }
+    
+    /**
+     * Search the in-memory index on the calling thread, so a slow Lidarr can't hold up library results
+     */
+    private Map<SearchDocument.Type, List<SearchDocument>> searchLibrary(String query, List<String> timedOut) {
+        try {
+            return searchIndex.search(query, maxResultsPerSection);
+        } catch (RuntimeException e) {
+            recordFailure(SOURCE_LIBRARY, query, e, timedOut);
+            return Map.of();
+        }
+    }
+    
+    /**
+     * Look up artists in Lidarr on the search executor, within the Lidarr deadline
+     */
+    private CompletableFuture<ArrayList<searchResultDto>> searchLidarr(String query, List<String> timedOut) {
+        return submit(() -> getArtists(query), lidarrTimeoutMs)
+                .handle((artists, error) -> {
+                    if (error != null) {
+                        recordFailure(SOURCE_LIDARR, query, error, timedOut);
+                        return new ArrayList<>();
+                    }
+                    return artists;
+                });
+    }
+    
+    private <T> CompletableFuture<T> submit(Supplier<T> source, long timeoutMs) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task;
+        try {
+            task = searchExecutor.submit(() -> {
+                try {
+                    result.complete(source.get());
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        // Cancel the task at the deadline, so it doesn't keep its worker after the search gave up on it
+        result.orTimeout(timeoutMs, TimeUnit.MILLISECONDS).whenComplete((value, error) -> task.cancel(true));
+        return result;
+    }
+    
+    private void recordFailure(String source, String query, Throwable error, List<String> timedOut) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof TimeoutException || cause instanceof RejectedExecutionException) {
+            logger.warn("Search source {} did not answer in time for '{}'", source, query);
+            timedOut.add(source);
+        } else {
+            logger.error("Error searching {} for '{}'", source, query, cause);
+        }
+    }
+    
+    private searchResultsDto buildResults(Map<SearchDocument.Type, List<SearchDocument>> matches,
+                                          ArrayList<searchResultDto> lidarrArtists, List<String> timedOut) {
+        // Library matches come from the in-memory index, only new artists need Lidarr
+        ArrayList<searchResultDto> artists = getLocalResults(matches, SearchDocument.Type.ARTIST);
+        mergeArtists(artists, lidarrArtists);
+        
         searchResultsDto results = new searchResultsDto();
         results.setArtists(artists);
-        results.setAlbums(albums);
-        results.setTracks(tracks);
-        results.setPlaylists(playlists);
-        
-        // Cache the results
-        searchCache.put(normalizedQuery, new CacheEntry<>(results, CACHE_EXPIRATION_MS));
-        
+        results.setAlbums(getLocalResults(matches, SearchDocument.Type.ALBUM));
+        results.setTracks(getLocalResults(matches, SearchDocument.Type.TRACK));
+        results.setPlaylists(getLocalResults(matches, SearchDocument.Type.PLAYLIST));
+        results.setTimedOut(new ArrayList<>(timedOut));
         return results;
     }
     
-    // Scheduled task to clean up expired cache entries (runs every hour)
-    @Scheduled(fixedRate = 3600000)
-    public void cleanupCache() {
-        searchCache.entrySet().removeIf(entry -> entry.getValue().isExpired());
+    private void sendSections(SseEmitter emitter, searchResultsDto results) {
+        sendEvent(emitter, "albums", results.getAlbums());
+        sendEvent(emitter, "tracks", results.getTracks());
+        sendEvent(emitter, "playlists", results.getPlaylists());
+        sendEvent(emitter, "artists", results.getArtists());
+    }
+    
+    private void sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+        } catch (IOException | IllegalStateException e) {
+            // The client went away
+            logger.debug("Could not send search event {}: {}", name, e.getMessage());
+        }
+    }
+    
+    /**
+     * Append Lidarr artists that are not already among the library's artists
+     * 
+     * @param artists The library's matching artists
+     * @param lidarrArtists The artists found by Lidarr
+     */
+    private void mergeArtists(ArrayList<searchResultDto> artists, ArrayList<searchResultDto> lidarrArtists) {
+        Set<String> known = new HashSet<>();
+        artists.forEach(artist -> known.add(artist.getForeignId()));
+        lidarrArtists.stream()
+                .filter(artist -> artist.getForeignId() == null || !known.contains(artist.getForeignId()))
+                .forEach(artists::add);
     }
 
     private ArrayList<searchResultDto> getArtists(String query) {
         List<LidarrArtistDto> artists = lidarrClient.searchArtists(query);
         ArrayList<searchResultDto> results = new ArrayList<>();
+        if (artists == null) {
+            return results;
+        }
         artists.forEach(artist -> {
             String imageUrl = null;
             
@@ -123,127 +356,57 @@ public class SearchService {
     }
     
     /**
-     * Search for albums matching the query
-     * 
-     * @param query The search query
-     * @return List of album search results
+     * Load the search index from its snapshot, or rebuild it from the database
+     * if the snapshot is missing or stale.
+     * Afterwards the index is kept up to date by the entity listener.
+     * Runs before the initial synchronization starts, see {@link SynchronizationService#initialize()}.
      */
-    private ArrayList<searchResultDto> getAlbums(String query) {
-        List<Album> albums = albumRepository.findByTitleContainingIgnoreCase(query);
-        ArrayList<searchResultDto> results = new ArrayList<>();
-        
-        albums.forEach(album -> {
-            String imageUrl = album.getCoverImageUrl() != null ? album.getCoverImageUrl() : "/img/default-album.jpg";
-            String foreignId = album.getForeignAlbumId() != null ? album.getForeignAlbumId() : "";
-            String lidarrId = album.getLidarrAlbumId() != null ? album.getLidarrAlbumId().toString() : "0";
-            
-            // Include artist ID in metadata for proper navigation
-            String metadata = "";
-            if (album.getArtist() != null) {
-                metadata = String.valueOf(album.getArtist().getId());
-            }
-            
-            results.add(new searchResultDto(
-                album.getTitle(),
-                imageUrl,
-                foreignId,
-                lidarrId,
-                metadata
-            ));
-        });
-        
-        return results;
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(0)
+    @Transactional(readOnly = true)
+    public void rebuildIndex() {
+        long started = System.currentTimeMillis();
+        List<SearchDocument> documents = searchIndexSnapshot.load();
+        if (documents != null) {
+            searchIndex.replaceAll(documents);
+            searchIndexSnapshot.loaded();
+            logger.info("Loaded search index of {} documents from snapshot in {} ms", documents.size(), System.currentTimeMillis() - started);
+            suggestionService.refresh();
+            return;
+        }
+
+        documents = getLibraryDocuments();
+        searchIndex.replaceAll(documents);
+        logger.info("Built search index of {} documents in {} ms", documents.size(), System.currentTimeMillis() - started);
+        suggestionService.refresh();
+        searchIndexSnapshot.save();
     }
     
     /**
-     * Search for tracks matching the query
+     * Get the search documents of the whole library from the database
      * 
-     * @param query The search query
-     * @return List of track search results
+     * @return The documents of all artists, albums, tracks and playlists
      */
-    private ArrayList<searchResultDto> getTracks(String query) {
-        List<Track> tracks = trackRepository.findByTitleContainingIgnoreCase(query);
-        ArrayList<searchResultDto> results = new ArrayList<>();
-        
-        tracks.forEach(track -> {
-            // For tracks, use the album cover as the image if available
-            String imageUrl = "/img/default-track.jpg";
-            if (track.getAlbum() != null && track.getAlbum().getCoverImageUrl() != null) {
-                imageUrl = track.getAlbum().getCoverImageUrl();
-            }
-            
-            String lidarrId = track.getLidarrTrackId() != null ? track.getLidarrTrackId().toString() : "0";
-            
-            // Store album and artist information in metadata for proper navigation
-            // Format: albumId|artistId
-            String metadata = "";
-            if (track.getAlbum() != null) {
-                String albumId = track.getAlbum().getLidarrAlbumId() != null ? 
-                    track.getAlbum().getLidarrAlbumId().toString() : 
-                    (track.getAlbum().getId() != null ? track.getAlbum().getId().toString() : "");
-                
-                String artistId = "";
-                if (track.getAlbum().getArtist() != null) {
-                    artistId = String.valueOf(track.getAlbum().getArtist().getId());
-                }
-                
-                metadata = albumId + "|" + artistId;
-            }
-            
-            results.add(new searchResultDto(
-                track.getTitle(),
-                imageUrl,
-                track.getId().toString(), // Use track ID as foreignId for tracks
-                lidarrId,
-                metadata
-            ));
-        });
-        
-        return results;
+    private List<SearchDocument> getLibraryDocuments() {
+        List<SearchDocument> documents = new ArrayList<>();
+        artistRepository.findAll().forEach(artist -> documents.add(SearchDocument.of(artist)));
+        // Albums and tracks are read as one joined projection each, without loading entities
+        albumRepository.findAllSearchViews().forEach(album -> documents.add(SearchDocument.album(album)));
+        trackRepository.findAllSearchViews().forEach(track -> documents.add(SearchDocument.track(track)));
+        playlistRepository.findAll().forEach(playlist -> documents.add(SearchDocument.of(playlist)));
+        return documents;
     }
     
     /**
-     * Search for playlists matching the query
+     * Get the search results of one type from the index matches
      * 
-     * @param query The search query
-     * @return List of playlist search results
+     * @param matches The index matches of all types
+     * @param type The type of results
+     * @return List of search results, best first
      */
-    private ArrayList<searchResultDto> getPlaylists(String query) {
-        List<Playlist> playlists = playlistRepository.findByNameContainingIgnoreCase(query);
+    private ArrayList<searchResultDto> getLocalResults(Map<SearchDocument.Type, List<SearchDocument>> matches, SearchDocument.Type type) {
         ArrayList<searchResultDto> results = new ArrayList<>();
-        
-        playlists.forEach(playlist -> {
-            String imageUrl = playlist.getCoverImageUrl() != null ? playlist.getCoverImageUrl() : "/img/default-playlist.jpg";
-            
-            results.add(new searchResultDto(
-                playlist.getName(),
-                imageUrl,
-                playlist.getId().toString(), // Use playlist ID as foreignId
-                "0" // Playlists don't have Lidarr IDs
-            ));
-        });
-        
+        matches.getOrDefault(type, List.of()).forEach(document -> results.add(document.toResult()));
         return results;
     }
-    
-    /**
-     * Generic cache entry class to store values with expiration time
-     */
-    private static class CacheEntry<T> {
-        private final T value;
-        private final long expirationTime;
-        
-        public CacheEntry(T value, long ttlMs) {
-            this.value = value;
-            this.expirationTime = System.currentTimeMillis() + ttlMs;
-        }
-        
-        public T getValue() {
-            return value;
-        }
-        
-        public boolean isExpired() {
-            return System.currentTimeMillis() > expirationTime;
-        }
-    }
 }
@@ -2,207 +2,643 @@ package com.example.spotifyapi.service;
 
 import com.example.spotifyapi.dto.AudioMetadataDto;
 import com.example.spotifyapi.model.Track;
-import org.apache.commons.io.FilenameUtils;
-import org.apache.tika.Tika;
+import com.example.spotifyapi.model.TrackAudioInfo;
+import com.example.spotifyapi.model.TrackSegmentIndex;
+import com.example.spotifyapi.repository.TrackSegmentIndexRepository;
+import com.example.spotifyapi.streaming.AudioChannelWriter;
+import com.example.spotifyapi.streaming.AudioFileCache;
+import com.example.spotifyapi.streaming.AudioFileCache.AudioFile;
+import com.example.spotifyapi.streaming.ByteRange;
+import com.example.spotifyapi.streaming.Mp3Format;
+import com.example.spotifyapi.streaming.SegmentIndex;
+import com.example.spotifyapi.streaming.TranscodeCache;
+import com.example.spotifyapi.streaming.TranscodeProfile;
+import com.example.spotifyapi.streaming.Transcoder;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.context.request.ServletWebRequest;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Files;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 
 @Service
 public class StreamingService {
 
-    @Value("${audio.storage.path}")
-    private String audioStoragePath;
+    private static final Logger logger = LoggerFactory.getLogger(StreamingService.class);
+    private static final String MP3_CONTENT_TYPE = "audio/mpeg";
+    private static final String HLS_PLAYLIST_CONTENT_TYPE = "application/vnd.apple.mpegurl";
+    public static final String REPLAYGAIN_TRACK_GAIN = "X-ReplayGain-Track-Gain";
+    public static final String REPLAYGAIN_TRACK_PEAK = "X-ReplayGain-Track-Peak";
+    public static final String REPLAYGAIN_ALBUM_GAIN = "X-ReplayGain-Album-Gain";
+    public static final String REPLAYGAIN_ALBUM_PEAK = "X-ReplayGain-Album-Peak";
+
+    // Largest number of bytes served for one range request, across all its ranges, 0 disables the cap
+    @Value("${streaming.max-range-bytes:16777216}")
+    private long maxRangeBytes;
+    
+    // Requests asking for more (non-overlapping) ranges than this are rejected
+    @Value("${streaming.max-ranges:16}")
+    private int maxRanges;
+    
+    // Cache-Control policies sent with the audio and metadata endpoints
+    @Value("${streaming.cache-control.audio:private, max-age=86400}")
+    private String audioCacheControl;
+    
+    @Value("${streaming.cache-control.metadata:private, max-age=3600}")
+    private String metadataCacheControl;
+    
+    @Value("${streaming.cache-control.segment:private, max-age=86400}")
+    private String segmentCacheControl;
+    
+    // Target duration of HLS segments
+    @Value("${streaming.hls.segment-ms:10000}")
+    private int segmentMs;
+
+    private final AudioChannelWriter audioChannelWriter;
+    private final AudioFileCache audioFileCache;
+    private final Transcoder transcoder;
+    private final TranscodeCache transcodeCache;
+    private final TrackSegmentIndexRepository segmentIndexRepository;
+    private final AudioInfoService audioInfoService;
+    private final LoudnessService loudnessService;
+    
+    // Recently used segment indexes, so segment requests do not query the database
+    private final Map<Long, TrackSegmentIndex> segmentIndexCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, TrackSegmentIndex> eldest) {
+            return size() > 1024;
+        }
+    };
+
+    @Autowired
+    public StreamingService(AudioChannelWriter audioChannelWriter, AudioFileCache audioFileCache,
+                            Transcoder transcoder, TranscodeCache transcodeCache,
+                            TrackSegmentIndexRepository segmentIndexRepository, AudioInfoService audioInfoService,
+                            LoudnessService loudnessService) {
+        this.audioChannelWriter = audioChannelWriter;
+        this.audioFileCache = audioFileCache;
+        this.transcoder = transcoder;
+        this.transcodeCache = transcodeCache;
+        this.segmentIndexRepository = segmentIndexRepository;
+        this.audioInfoService = audioInfoService;
+        this.loudnessService = loudnessService;
+    }
     
     /**
-     * Get the audio file as a resource
+     * Stream the audio file of a track straight to the response.
+     * Local files are served with sendfile where the container supports it, or
+     * through pooled buffers otherwise, so the audio never goes through Spring's
+     * resource message converter.
      * 
      * @param track The track entity
-     * @return Resource representing the audio file
+     * @param range The HTTP Range header value, or null for the whole file
+     * @param contentType The content type of the audio
+     * @param profile The bitrate profile to stream the track in
+     * @param request The current request
+     * @param response The response to write to
      * @throws IOException If the file cannot be accessed
      */
-    public Resource getAudioResource(Track track) throws IOException {
+    public void streamAudio(Track track, String range, String contentType, TranscodeProfile profile,
+                            HttpServletRequest request, HttpServletResponse response) throws IOException {
         String audioUrl = track.getAudioUrl();
         
         // Check if the URL is a full path or just a filename
         if (audioUrl.startsWith("http://") || audioUrl.startsWith("https://")) {
-            // Handle remote URLs
-            return new UrlResource(audioUrl);
-        } else {
-            // Handle local files
-            Path filePath = getAudioFilePath(track);
-            Resource resource = new FileSystemResource(filePath.toFile());
-            
-            if (resource.exists() && resource.isReadable()) {
-                return resource;
+            // Remote URLs are proxied as a whole, ranges are not supported for them
+            streamRemoteAudio(new UrlResource(audioUrl), contentType, request, response);
+            return;
+        }
+        
+        setLoudnessHeaders(track, response);
+        
+        // Handle local files, reusing the resolved path and open handle across requests
+        try (AudioFile audioFile = audioFileCache.acquire(track.getId(), () -> getAudioFilePath(track))) {
+            if (profile.isPassthrough() || !transcoder.isAvailable()) {
+                streamLocalAudio("a", track.getId(), audioFile, range, contentType, request, response);
             } else {
-                throw new IOException("Could not read audio file: " + audioUrl);
+                streamTranscodedAudio(track.getId(), audioFile, profile, range, request, response);
             }
         }
     }
     
     /**
-     * Get the full path to the audio file
+     * Send the ReplayGain values of a track, so clients can normalize without decoding ahead
      * 
      * @param track The track entity
-     * @return Path to the audio file
+     * @param response The response to add the headers to
      */
-    private Path getAudioFilePath(Track track) {
-        String audioUrl = track.getAudioUrl();
+    private void setLoudnessHeaders(Track track, HttpServletResponse response) {
+        loudnessService.getLoudness(track.getId()).ifPresent(loudness -> {
+            response.setHeader(REPLAYGAIN_TRACK_GAIN, String.format(Locale.ROOT, "%.2f dB", loudness.getTrackGain()));
+            response.setHeader(REPLAYGAIN_TRACK_PEAK, String.format(Locale.ROOT, "%.6f", Math.pow(10, loudness.getTruePeak() / 20)));
+            response.setHeader(REPLAYGAIN_ALBUM_GAIN, String.format(Locale.ROOT, "%.2f dB", loudness.getAlbumGain()));
+            response.setHeader(REPLAYGAIN_ALBUM_PEAK, String.format(Locale.ROOT, "%.6f", Math.pow(10, loudness.getAlbumTruePeak() / 20)));
+        });
+    }
+    
+    /**
+     * Stream a track encoded to a lower bitrate profile.
+     * Outputs already in the transcode cache are served like any local file,
+     * including ranges and validators; otherwise the track is encoded while it
+     * is streamed and the finished output is cached for the next play.
+     * 
+     * @param trackId The ID of the track
+     * @param source The track's original audio file
+     * @param profile The bitrate profile
+     * @param range The HTTP Range header value, or null for the whole file
+     * @param request The current request
+     * @param response The response to write to
+     * @throws IOException If the file cannot be read or encoded
+     */
+    private void streamTranscodedAudio(Long trackId, AudioFile source, TranscodeProfile profile, String range,
+                                       HttpServletRequest request, HttpServletResponse response) throws IOException {
+        // The key changes whenever the source file changes, so stale outputs are never served
+        String cacheKey = trackId + "-" + profile.getProfileName() + "-" + Long.toHexString(source.getSize())
+                + "-" + Long.toHexString(source.getLastModified()) + "." + profile.getExtension();
+        
+        AudioFile cached = openCachedTranscode(cacheKey);
+        if (cached != null) {
+            try (AudioFile audioFile = cached) {
+                streamLocalAudio(profile.getProfileName(), trackId, audioFile, range, profile.getContentType(), request, response);
+            }
+            return;
+        }
+        
+        // The encoded length is not known up front, so the response is chunked and not seekable
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(profile.getContentType());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "none");
         
-        // If it's already a full path, use it directly
-        if (audioUrl.startsWith("/") || audioUrl.contains(":\\")) {
-            return Paths.get(audioUrl);
+        if (HttpMethod.HEAD.matches(request.getMethod())) {
+            return;
+        }
+        
+        transcoder.transcode(source.getPath(), profile, cacheKey, response.getOutputStream());
+    }
+    
+    /**
+     * Evaluate the conditional request headers of a metadata request.
+     * Sets the validators and Cache-Control on the response, and answers
+     * with 304 Not Modified when the client's copy is still current.
+     * 
+     * @param track The track entity
+     * @param request The current request
+     * @param response The response to write to
+     * @return true if the response is complete and no metadata needs to be extracted
+     * @throws IOException If the audio file cannot be accessed
+     */
+    public boolean checkMetadataNotModified(Track track, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try (AudioFile audioFile = audioFileCache.acquire(track.getId(), () -> getAudioFilePath(track))) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, metadataCacheControl);
+            String eTag = buildETag("m" + metadataVersion(track, audioFile), track.getId(), audioFile);
+            // The metadata also changes without the file, so the modification time is no validator for it
+            return new ServletWebRequest(request, response).checkNotModified(eTag);
+        }
+    }
+    
+    /**
+     * Write the HLS media playlist of an MP3 track.
+     * Every entry is a fixed-duration segment of packed audio that starts on a
+     * frame boundary, so each seek becomes one small, cacheable request.
+     * 
+     * @param track The track entity
+     * @param request The current request
+     * @param response The response to write to
+     * @throws IOException If the file cannot be read or segmented
+     */
+    public void streamPlaylist(Track track, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try (AudioFile audioFile = audioFileCache.acquire(track.getId(), () -> getAudioFilePath(track))) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, segmentCacheControl);
+            String eTag = buildETag("l" + segmentMs, track.getId(), audioFile);
+            if (new ServletWebRequest(request, response).checkNotModified(eTag, audioFile.getLastModified())) {
+                return;
+            }
+            
+            SegmentIndex index = getSegmentIndex(track.getId(), audioFile);
+            StringBuilder playlist = new StringBuilder();
+            playlist.append("#EXTM3U\n");
+            playlist.append("#EXT-X-VERSION:3\n");
+            playlist.append("#EXT-X-TARGETDURATION:").append((index.getMaxDurationMs() + 999) / 1000).append('\n');
+            playlist.append("#EXT-X-MEDIA-SEQUENCE:0\n");
+            playlist.append("#EXT-X-PLAYLIST-TYPE:VOD\n");
+            playlist.append("#EXT-X-INDEPENDENT-SEGMENTS\n");
+            for (int segment = 0; segment < index.segmentCount(); segment++) {
+                playlist.append(String.format(Locale.ROOT, "#EXTINF:%.3f,%n", index.getDurationMs(segment) / 1000.0));
+                playlist.append("segment/").append(segment).append('\n');
+            }
+            playlist.append("#EXT-X-ENDLIST\n");
+            
+            byte[] body = playlist.toString().getBytes(StandardCharsets.UTF_8);
+            response.setStatus(HttpStatus.OK.value());
+            response.setContentType(HLS_PLAYLIST_CONTENT_TYPE);
+            response.setContentLength(body.length);
+            if (!HttpMethod.HEAD.matches(request.getMethod())) {
+                response.getOutputStream().write(body);
+            }
+        }
+    }
+    
+    /**
+     * Write one segment of an MP3 track, straight from its precomputed offsets.
+     * The segment starts with the ID3 timestamp tag HLS requires of packed audio.
+     * 
+     * @param track The track entity
+     * @param segment The segment number
+     * @param request The current request
+     * @param response The response to write to
+     * @throws IOException If the file cannot be read or segmented
+     */
+    public void streamSegment(Track track, int segment, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try (AudioFile audioFile = audioFileCache.acquire(track.getId(), () -> getAudioFilePath(track))) {
+            SegmentIndex index = getSegmentIndex(track.getId(), audioFile);
+            if (segment < 0 || segment >= index.segmentCount()) {
+                response.setStatus(HttpStatus.NOT_FOUND.value());
+                return;
+            }
+            
+            response.setHeader(HttpHeaders.CACHE_CONTROL, segmentCacheControl);
+            String eTag = buildETag("a" + segmentMs + "." + segment, track.getId(), audioFile);
+            if (new ServletWebRequest(request, response).checkNotModified(eTag, audioFile.getLastModified())) {
+                return;
+            }
+            
+            byte[] timestamp = Mp3Format.transportStreamTimestampTag(index.getStartSample(segment), index.getSampleRate());
+            long start = index.getSegmentStart(segment);
+            long length = index.getSegmentEnd(segment) - start;
+            response.setStatus(HttpStatus.OK.value());
+            response.setContentType(MP3_CONTENT_TYPE);
+            response.setContentLengthLong(timestamp.length + length);
+            if (HttpMethod.HEAD.matches(request.getMethod())) {
+                return;
+            }
+            // Written through the channel, sendfile cannot send the tag in front of the file's bytes
+            OutputStream out = response.getOutputStream();
+            out.write(timestamp);
+            audioChannelWriter.write(audioFile.getChannel(), start, length, out);
+        }
+    }
+    
+    /**
+     * Get the segment index of a track, building and storing it if the stored one
+     * is missing or was built from another version of the file
+     * 
+     * @param trackId The ID of the track
+     * @param audioFile The cached audio file
+     * @return The segment index
+     * @throws IOException If the file cannot be read or segmented
+     */
+    private SegmentIndex getSegmentIndex(Long trackId, AudioFile audioFile) throws IOException {
+        TrackSegmentIndex stored;
+        synchronized (segmentIndexCache) {
+            stored = segmentIndexCache.get(trackId);
+        }
+        if (stored == null) {
+            stored = segmentIndexRepository.findById(trackId).orElse(null);
+        }
+        if (stored != null && stored.getFileSize() == audioFile.getSize()
+                && stored.getLastModified() == audioFile.getLastModified() && stored.getSegmentMs() == segmentMs) {
+            SegmentIndex index = SegmentIndex.fromBytes(stored.getSegments());
+            if (index != null) {
+                synchronized (segmentIndexCache) {
+                    segmentIndexCache.put(trackId, stored);
+                }
+                return index;
+            }
         }
         
-        // Otherwise, combine with the base storage path
-        return Paths.get(audioStoragePath, audioUrl);
+        logger.info("Building segment index for track {} from {}", trackId, audioFile.getPath());
+        SegmentIndex index = SegmentIndex.build(audioFile.getPath(), segmentMs);
+        TrackSegmentIndex built = segmentIndexRepository.save(new TrackSegmentIndex(
+                trackId, audioFile.getSize(), audioFile.getLastModified(), segmentMs, index.toBytes()));
+        synchronized (segmentIndexCache) {
+            segmentIndexCache.put(trackId, built);
+        }
+        return index;
+    }
+    
+    /**
+     * Open a finished transcode from the transcode cache
+     * 
+     * @param cacheKey The transcode cache key
+     * @return The opened file, or null if it is not cached
+     */
+    private AudioFile openCachedTranscode(String cacheKey) {
+        Path cached = transcodeCache.lookup(cacheKey);
+        if (cached == null) {
+            return null;
+        }
+        try {
+            return AudioFile.openDetached(cached);
+        } catch (IOException e) {
+            // Evicted between lookup and open, it will be encoded again
+            logger.debug("Cached transcode {} disappeared: {}", cacheKey, e.getMessage());
+            return null;
+        }
     }
     
     /**
-     * Prepare a response for range requests (for seeking in audio)
+     * Stream a local audio file, or the requested ranges of it.
+     * Conditional requests are answered with 304 when the client's copy is current,
+     * and If-Range falls back to the whole file when the client's copy is stale.
      * 
-     * @param resource The audio resource
-     * @param range The HTTP Range header value
+     * @param variant Distinguishes the representations served for the same track
+     * @param trackId The ID of the track
+     * @param audioFile The cached audio file
+     * @param range The HTTP Range header value, or null for the whole file
      * @param contentType The content type of the audio
-     * @param contentLength The total length of the audio file
-     * @return ResponseEntity with partial content
-     * @throws IOException If the file cannot be accessed
+     * @param request The current request
+     * @param response The response to write to
+     * @throws IOException If the file cannot be read
      */
-    public ResponseEntity<Resource> prepareRangeResponse(
-            Resource resource, String range, String contentType, long contentLength) throws IOException {
+    private void streamLocalAudio(String variant, Long trackId, AudioFile audioFile, String range, String contentType,
+                                  HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long contentLength = audioFile.getSize();
+        String eTag = buildETag(variant, trackId, audioFile);
         
-        // Parse the range header
-        String[] ranges = range.replace("bytes=", "").split("-");
-        long start = Long.parseLong(ranges[0]);
-        long end = ranges.length > 1 && !ranges[1].isEmpty() 
-                ? Long.parseLong(ranges[1]) 
-                : contentLength - 1;
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CACHE_CONTROL, audioCacheControl);
         
-        // Ensure the range is valid
-        if (start > end || start < 0 || end >= contentLength) {
-            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
-                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + contentLength)
-                    .build();
+        // Sets ETag and Last-Modified, and 304 if the client already has this version
+        if (new ServletWebRequest(request, response).checkNotModified(eTag, audioFile.getLastModified())) {
+            return;
         }
         
-        // Calculate the content length for this range
-        long rangeLength = end - start + 1;
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + audioFile.getPath().getFileName() + "\"");
+        
+        // Handle range requests (for seeking within the audio)
+        List<ByteRange> ranges = null;
+        if (range != null && !range.isEmpty() && ifRangeMatches(request, eTag, audioFile.getLastModified())) {
+            try {
+                ranges = ByteRange.parse(range, contentLength, maxRangeBytes);
+            } catch (IllegalArgumentException e) {
+                // A malformed Range header is ignored and the whole file is served
+                logger.debug("Ignoring Range header: {}", e.getMessage());
+            }
+        }
         
-        // Return partial content response
-        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
-                .contentType(MediaType.parseMediaType(contentType))
-                .contentLength(rangeLength)
-                .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + contentLength)
-                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
-                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + resource.getFilename() + "\"")
-                .body(resource);
+        if (ranges == null) {
+            response.setStatus(HttpStatus.OK.value());
+            writeRegion(audioFile, new ByteRange(0, contentLength - 1), contentType, request, response);
+        } else if (ranges.isEmpty() || ranges.size() > maxRanges) {
+            response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + contentLength);
+        } else if (ranges.size() == 1) {
+            ByteRange byteRange = ranges.get(0);
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, byteRange.contentRange(contentLength));
+            writeRegion(audioFile, byteRange, contentType, request, response);
+        } else {
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+            writeMultipartRanges(audioFile, ranges, contentType, contentLength, request, response);
+        }
+    }
+    
+    /**
+     * Build a strong entity tag from the track ID and the file's size and modification time
+     * 
+     * @param variant Distinguishes the representations served for the same file
+     * @param trackId The ID of the track
+     * @param audioFile The cached audio file
+     * @return The quoted entity tag
+     */
+    private String buildETag(String variant, Long trackId, AudioFile audioFile) {
+        return "\"" + variant + "-" + trackId + "-" + Long.toHexString(audioFile.getSize())
+                + "-" + Long.toHexString(audioFile.getLastModified()) + "\"";
     }
     
     /**
-     * Extract metadata from the audio file
+     * Get a version of the metadata fields that do not come from the file's size and modification time:
+     * the track title, the stored audio info (header-only until the file is scanned) and the loudness
      * 
      * @param track The track entity
-     * @return AudioMetadataDto containing the metadata
-     * @throws Exception If metadata extraction fails
+     * @param audioFile The cached audio file
+     * @return The version as hex digits
      */
-    public AudioMetadataDto getAudioMetadata(Track track) throws Exception {
-        Path filePath = getAudioFilePath(track);
-        File file = filePath.toFile();
+    private String metadataVersion(Track track, AudioFile audioFile) {
+        String contentHash = audioInfoService.getStoredAudioInfo(track, audioFile)
+                .map(info -> String.valueOf(info.getContentHash()))
+                .orElse(null);
+        int loudness = loudnessService.getLoudness(track.getId())
+                .map(value -> Objects.hash(value.getFileSize(), value.getLastModified(), value.getIntegratedLoudness(),
+                        value.getTruePeak(), value.getTrackGain(), value.getAlbumGain(), value.getAlbumTruePeak()))
+                .orElse(0);
+        return Integer.toHexString(Objects.hash(track.getTitle(), track.getDurationInSeconds(), contentHash, loudness));
+    }
+    
+    /**
+     * Check the If-Range header (RFC 7233 section 3.2)
+     * 
+     * @param request The current request
+     * @param eTag The current entity tag
+     * @param lastModified The current modification time in milliseconds
+     * @return true if the Range header should be honoured
+     */
+    private boolean ifRangeMatches(HttpServletRequest request, String eTag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // Entity tags are compared strongly, so weak tags never match
+            return ifRange.equals(eTag);
+        }
+        try {
+            // Dates only match if they are exactly the Last-Modified value
+            return request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Write one region of a local file as the response body
+     * 
+     * @param audioFile The cached audio file
+     * @param byteRange The region to write
+     * @param contentType The content type of the audio
+     * @param request The current request
+     * @param response The response to write to
+     * @throws IOException If the file cannot be read
+     */
+    private void writeRegion(AudioFile audioFile, ByteRange byteRange, String contentType,
+                             HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long length = Math.max(0, byteRange.length());
+        response.setContentType(contentType);
+        response.setContentLengthLong(length);
         
-        if (!file.exists()) {
-            throw new IOException("Audio file not found: " + filePath);
+        if (HttpMethod.HEAD.matches(request.getMethod()) || length == 0) {
+            return;
         }
         
-        String extension = FilenameUtils.getExtension(file.getName()).toLowerCase();
+        // Let the container transfer the bytes with sendfile if it can
+        if (audioChannelWriter.trySendfile(request, audioFile.getPath(), byteRange.getStart(), length)) {
+            return;
+        }
         
-        // Create a metadata object based on the file type
-        AudioMetadataDto metadata = new AudioMetadataDto();
-        metadata.setTrackId(track.getId());
-        metadata.setTitle(track.getTitle());
-        metadata.setDuration(track.getDurationInSeconds());
-        metadata.setFormat(extension);
+        audioChannelWriter.write(audioFile.getChannel(), byteRange.getStart(), length, response.getOutputStream());
+    }
+    
+    /**
+     * Write several ranges of a local file as a multipart/byteranges body.
+     * Only the requested bytes are read, all parts share one positioned channel.
+     * 
+     * @param audioFile The cached audio file
+     * @param ranges The ranges to write, in ascending order
+     * @param contentType The content type of the audio
+     * @param contentLength The total length of the audio file
+     * @param request The current request
+     * @param response The response to write to
+     * @throws IOException If the file cannot be read
+     */
+    private void writeMultipartRanges(AudioFile audioFile, List<ByteRange> ranges, String contentType, long contentLength,
+                                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
         
-        // For MP3 files, we can extract more detailed metadata
-        if ("mp3".equals(extension)) {
-            extractMp3Metadata(file, metadata);
-        } else if ("flac".equals(extension)) {
-            // For FLAC files, we could use a FLAC-specific parser
-            extractFlacMetadata(file, metadata);
+        // Build the part headers up front so the exact body length is known
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        long bodyLength = 0;
+        for (ByteRange byteRange : ranges) {
+            String partHeader = "\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": " + byteRange.contentRange(contentLength) + "\r\n\r\n";
+            byte[] headerBytes = partHeader.getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(headerBytes);
+            bodyLength += headerBytes.length + byteRange.length();
         }
+        byte[] closingBoundary = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        bodyLength += closingBoundary.length;
         
-        return metadata;
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(bodyLength);
+        
+        if (HttpMethod.HEAD.matches(request.getMethod())) {
+            return;
+        }
+        
+        OutputStream out = response.getOutputStream();
+        for (int i = 0; i < ranges.size(); i++) {
+            out.write(partHeaders.get(i));
+            audioChannelWriter.write(audioFile.getChannel(), ranges.get(i).getStart(), ranges.get(i).length(), out);
+        }
+        out.write(closingBoundary);
     }
     
     /**
-     * Extract metadata from MP3 files using Apache Tika
+     * Proxy a remote audio resource to the response
      * 
-     * @param file The MP3 file
-     * @param metadataDto The DTO to populate with metadata
-     * @throws Exception If metadata extraction fails
+     * @param resource The remote audio resource
+     * @param contentType The content type of the audio
+     * @param request The current request
+     * @param response The response to write to
+     * @throws IOException If the resource cannot be read
      */
-    private void extractMp3Metadata(File file, AudioMetadataDto metadataDto) throws Exception {
-        Tika tika = new Tika();
+    private void streamRemoteAudio(Resource resource, String contentType,
+                                   HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long contentLength = resource.contentLength();
         
-        try (InputStream input = new FileInputStream(file)) {
-            // Use Tika's facade to detect the content type
-            String mediaType = tika.detect(file);
-            metadataDto.setFormat(mediaType);
-            
-            // Set basic file metadata
-            metadataDto.setFileSize(file.length());
-            
-            // If we have track data from the database, use it
-            if (metadataDto.getTitle() == null || metadataDto.getTitle().isEmpty()) {
-                // Try to extract the title from the filename if not set
-                String filename = file.getName();
-                String title = FilenameUtils.getBaseName(filename);
-                metadataDto.setTitle(title);
-            }
-            
-            // Create a simple map for additional properties
-            Map<String, String> additionalProps = new HashMap<>();
-            additionalProps.put("mediaType", mediaType);
-            additionalProps.put("fileSize", String.valueOf(file.length()));
-            additionalProps.put("fileName", file.getName());
-            metadataDto.setAdditionalProperties(additionalProps);
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(contentType);
+        if (contentLength >= 0) {
+            response.setContentLengthLong(contentLength);
+        }
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + resource.getFilename() + "\"");
+        
+        if (HttpMethod.HEAD.matches(request.getMethod())) {
+            return;
+        }
+        
+        try (InputStream input = resource.getInputStream()) {
+            audioChannelWriter.copy(input, response.getOutputStream());
         }
     }
     
     /**
-     * Extract metadata from FLAC files
+     * Get the full path to the audio file
      * 
-     * @param file The FLAC file
-     * @param metadataDto The DTO to populate with metadata
-     * @throws Exception If metadata extraction fails
+     * @param track The track entity
+     * @return Path to the audio file
      */
-    private void extractFlacMetadata(File file, AudioMetadataDto metadataDto) throws Exception {
-        // For a production app, you would use a library like jaudiotagger or JavaFLAC
-        // For simplicity, we'll just get basic file information
+    private Path getAudioFilePath(Track track) {
+        return audioInfoService.getAudioFilePath(track);
+    }
+    
+    /**
+     * Get the audio metadata of a track from the audio info table
+     * 
+     * @param track The track entity
+     * @return AudioMetadataDto containing the metadata
+     * @throws Exception If the file changed since its scan and cannot be read
+     */
+    public AudioMetadataDto getAudioMetadata(Track track) throws Exception {
+        TrackAudioInfo info;
+        try (AudioFile audioFile = audioFileCache.acquire(track.getId(), () -> getAudioFilePath(track))) {
+            info = audioInfoService.getAudioInfo(track, audioFile);
+        }
         
-        // Get file size
-        long fileSize = Files.size(file.toPath());
-        metadataDto.setFileSize(fileSize);
+        AudioMetadataDto metadata = new AudioMetadataDto();
+        metadata.setTrackId(track.getId());
+        metadata.setTitle(track.getTitle());
+        metadata.setFormat(info.getCodec());
+        metadata.setFileSize(info.getFileSize());
+        metadata.setArtist(info.getArtist());
+        metadata.setAlbum(info.getAlbum());
+        metadata.setTrackNumber(info.getTrackNumber());
+        metadata.setYear(info.getYear());
+        if (info.getSampleRate() > 0) {
+            metadata.setSampleRate(String.valueOf(info.getSampleRate()));
+            metadata.setChannels(String.valueOf(info.getChannels()));
+            metadata.setBitrate(String.valueOf(info.getBitrateKbps()));
+        }
+        if (info.getBitDepth() > 0) {
+            metadata.setBitDepth(String.valueOf(info.getBitDepth()));
+        }
+        if (info.getDurationMs() > 0) {
+            metadata.setDurationMs(info.getDurationMs());
+            metadata.setDuration((int) Math.round(info.getDurationMs() / 1000.0));
+        } else {
+            metadata.setDuration(track.getDurationInSeconds());
+        }
         
-        // Add this as an additional property
         Map<String, String> additionalProps = new HashMap<>();
-        additionalProps.put("fileSize", String.valueOf(fileSize));
-        metadataDto.setAdditionalProperties(additionalProps);
+        additionalProps.put("fileSize", String.valueOf(info.getFileSize()));
+        // Not known yet while the file's scan is queued
+        if (info.getContentHash() != null) {
+            additionalProps.put("contentHash", info.getContentHash());
+        }
+        if (info.getEncoder() != null) {
+            additionalProps.put("encoder", info.getEncoder());
+        }
+        metadata.setAdditionalProperties(additionalProps);
+        
+        loudnessService.getLoudness(track.getId()).ifPresent(loudness -> {
+            metadata.setIntegratedLoudness(loudness.getIntegratedLoudness());
+            metadata.setTruePeak(loudness.getTruePeak());
+            metadata.setTrackGain(loudness.getTrackGain());
+            metadata.setAlbumGain(loudness.getAlbumGain());
+            metadata.setAlbumTruePeak(loudness.getAlbumTruePeak());
+        });
+        return metadata;
     }
 }
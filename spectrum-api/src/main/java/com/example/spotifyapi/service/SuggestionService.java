@@ -0,0 +1,110 @@
+package com.example.spotifyapi.service;
+
+import com.example.spotifyapi.dto.suggestionDto;
+import com.example.spotifyapi.repository.UserRepository;
+import com.example.spotifyapi.search.SearchDocument;
+import com.example.spotifyapi.search.SearchIndex;
+import com.example.spotifyapi.search.SuggestionIndex;
+import com.example.spotifyapi.search.TextNormalizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * As-you-type suggestions over the library's names.
+ *
+ * Suggestions come from an immutable prefix trie that is rebuilt in the
+ * background whenever the search index or the recently played lists changed,
+ * and swapped in whole, so lookups never wait and never touch the database or
+ * Lidarr. Names in more users' recently played lists are suggested first.
+ */
+@Service
+public class SuggestionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SuggestionService.class);
+
+    private final SearchIndex searchIndex;
+    private final UserRepository userRepository;
+
+    private volatile SuggestionIndex suggestionIndex;
+    private long builtVersion = -1;
+    private Map<String, Integer> builtPopularity = Map.of();
+
+    // Most suggestions returned per lookup
+    @Value("${search.suggest.max-results:10}")
+    private int maxResults;
+
+    @Autowired
+    public SuggestionService(SearchIndex searchIndex, UserRepository userRepository) {
+        this.searchIndex = searchIndex;
+        this.userRepository = userRepository;
+    }
+
+    /**
+     * Get the most popular names starting with the query
+     *
+     * @param query The query as typed so far
+     * @param limit The most suggestions returned
+     * @return The suggestions, most popular first
+     */
+    public List<suggestionDto> suggest(String query, int limit) {
+        SuggestionIndex index = suggestionIndex;
+        if (index == null) {
+            return List.of();
+        }
+        return index.suggest(TextNormalizer.fold(query), Math.min(limit, maxResults));
+    }
+
+    /**
+     * Rebuild the trie if the library or the popularity changed since the last build
+     */
+    @Scheduled(initialDelayString = "${search.suggest.refresh-ms:60000}", fixedDelayString = "${search.suggest.refresh-ms:60000}")
+    public synchronized void refresh() {
+        long version = searchIndex.getVersion();
+        Map<String, Integer> popularity = loadPopularity();
+        if (suggestionIndex != null && version == builtVersion && popularity.equals(builtPopularity)) {
+            return;
+        }
+
+        long started = System.currentTimeMillis();
+        SuggestionIndex index = SuggestionIndex.build(searchIndex.getDocuments(),
+                document -> popularity.getOrDefault(key(document.getType(), document.getEntityId()), 0), maxResults);
+        suggestionIndex = index;
+        builtVersion = version;
+        builtPopularity = popularity;
+        logger.info("Built suggestion index of {} names in {} ms", index.size(), System.currentTimeMillis() - started);
+    }
+
+    /**
+     * Count how many users recently played each track, album and playlist.
+     * An artist counts the plays of their albums and tracks.
+     */
+    private Map<String, Integer> loadPopularity() {
+        Map<String, Integer> popularity = new HashMap<>();
+        addCounts(popularity, SearchDocument.Type.TRACK, userRepository.countRecentlyPlayedTracks());
+        addCounts(popularity, SearchDocument.Type.ALBUM, userRepository.countRecentlyPlayedAlbums());
+        addCounts(popularity, SearchDocument.Type.PLAYLIST, userRepository.countRecentlyPlayedPlaylists());
+        addCounts(popularity, SearchDocument.Type.ARTIST, userRepository.countRecentlyPlayedAlbumArtists());
+        addCounts(popularity, SearchDocument.Type.ARTIST, userRepository.countRecentlyPlayedTrackArtists());
+        return popularity;
+    }
+
+    private static void addCounts(Map<String, Integer> popularity, SearchDocument.Type type, List<Object[]> rows) {
+        for (Object[] row : rows) {
+            if (row[0] != null) {
+                popularity.merge(key(type, ((Number) row[0]).longValue()), ((Number) row[1]).intValue(), Integer::sum);
+            }
+        }
+    }
+
+    private static String key(SearchDocument.Type type, Long entityId) {
+        return type.name() + ":" + entityId;
+    }
+}
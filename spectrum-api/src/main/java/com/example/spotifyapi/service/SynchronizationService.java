@@ -1,33 +1,64 @@
 package com.example.spotifyapi.service;
 
 import com.example.spotifyapi.lidarr.LidarrClient;
+import com.example.spotifyapi.lidarr.PayloadHash;
+import com.example.spotifyapi.lidarr.RequestRateLimiter;
+import com.example.spotifyapi.media.MediaIndex;
 import com.example.spotifyapi.lidarr.dto.LidarrAlbumDto;
+import com.example.spotifyapi.lidarr.dto.LidarrArtistDto;
+import com.example.spotifyapi.lidarr.dto.LidarrHistoryDto;
 import com.example.spotifyapi.lidarr.dto.LidarrTrackDto;
 import com.example.spotifyapi.lidarr.dto.LidarrAlbumDto.Release;
 import com.example.spotifyapi.model.Album;
 import com.example.spotifyapi.model.Artist;
-import com.example.spotifyapi.model.Genre;
+import com.example.spotifyapi.model.SynchronizationCursor;
 import com.example.spotifyapi.model.Track;
 import com.example.spotifyapi.repository.AlbumRepository;
 import com.example.spotifyapi.repository.ArtistRepository;
-import com.example.spotifyapi.repository.GenreRepository;
+import com.example.spotifyapi.repository.SynchronizationCursorRepository;
 import com.example.spotifyapi.repository.TrackRepository;
-import jakarta.annotation.PostConstruct;
+import com.example.spotifyapi.search.SearchIndexSnapshot;
+import com.example.spotifyapi.search.SearchResultCache;
+import com.example.spotifyapi.search.TextNormalizer;
+import com.example.spotifyapi.streaming.AudioFileCache;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Service responsible for synchronizing data between the local database and external services like Lidarr.
- * Performs initial synchronization at startup and scheduled synchronization at regular intervals.
+ * Performs initial synchronization in the background once the application is ready,
+ * and scheduled synchronization at regular intervals.
  */
 @Service
 public class SynchronizationService {
@@ -37,122 +68,352 @@ public class SynchronizationService {
     private final ArtistRepository artistRepository;
     private final AlbumRepository albumRepository;
     private final TrackRepository trackRepository;
-    private final GenreRepository genreRepository;
+    private final GenreService genreService;
     private final LidarrClient lidarrClient;
+    private final AudioFileCache audioFileCache;
+    private final AudioInfoService audioInfoService;
+    private final SearchResultCache searchResultCache;
+    private final SearchIndexSnapshot searchIndexSnapshot;
+    private final SynchronizationCursorRepository synchronizationCursorRepository;
+    private final MediaIndex mediaIndex;
     
 
     @Value("${lidarr.FileRoot}")
     private String mediaRoot;
 
+    // Threads fetching and saving the albums and tracks of artists concurrently
+    @Value("${sync.threads:8}")
+    private int syncThreads;
+
+    // Most requests per second sent to Lidarr by a synchronization, zero for no limit
+    @Value("${sync.lidarr.requests-per-second:20}")
+    private double lidarrRequestsPerSecond;
+
+    @Value("${sync.progress-interval-ms:10000}")
+    private long progressIntervalMs;
+
+    /**
+     * State of the synchronization: the initial one is pending until the application is
+     * ready, then runs in the background. Once it completed the library is up to date.
+     */
+    public enum SyncState {
+        PENDING, SYNCHRONIZING, READY, FAILED
+    }
+
+    // Lidarr history events that add, change or remove files of an album
+    private static final Set<String> LIBRARY_EVENT_TYPES = Set.of(
+            "trackFileImported", "downloadImported", "trackFileDeleted", "trackFileRenamed",
+            "trackFileRetagged", "albumImportIncomplete", "artistFolderImported");
+
+    private volatile SyncState state = SyncState.PENDING;
+    private volatile SyncProgress fullSyncProgress;
+    private volatile LocalDateTime lastFullSynchronization;
+    // Held by the running synchronization, scheduled ones are skipped meanwhile
+    private final ReentrantLock syncLock = new ReentrantLock();
+
     @Autowired
     public SynchronizationService(
             ArtistRepository artistRepository,
             AlbumRepository albumRepository,
             TrackRepository trackRepository,
-            GenreRepository genreRepository,
-            LidarrClient lidarrClient) {
+            GenreService genreService,
+            LidarrClient lidarrClient,
+            AudioFileCache audioFileCache,
+            AudioInfoService audioInfoService,
+            SearchResultCache searchResultCache,
+            SearchIndexSnapshot searchIndexSnapshot,
+            SynchronizationCursorRepository synchronizationCursorRepository,
+            MediaIndex mediaIndex) {
         this.artistRepository = artistRepository;
         this.albumRepository = albumRepository;
         this.trackRepository = trackRepository;
-        this.genreRepository = genreRepository;
+        this.genreService = genreService;
         this.lidarrClient = lidarrClient;
+        this.audioFileCache = audioFileCache;
+        this.audioInfoService = audioInfoService;
+        this.searchResultCache = searchResultCache;
+        this.searchIndexSnapshot = searchIndexSnapshot;
+        this.synchronizationCursorRepository = synchronizationCursorRepository;
+        this.mediaIndex = mediaIndex;
     }
 
     /**
-     * Initialize synchronization when the application starts.
-     * This method runs once after the service is constructed.
+     * Start the initial synchronization once the application is ready.
+     * It runs in the background, requests are served from the database meanwhile.
+     * Ordered after the search index is loaded, so the index sees every change.
      */
-    @PostConstruct
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.LOWEST_PRECEDENCE)
     public void initialize() {
-        logger.info("Initializing synchronization service...");
+        logger.info("Starting initial synchronization in the background...");
+        Thread thread = new Thread(this::runInitialSynchronization, "sync-initial");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void runInitialSynchronization() {
+        syncLock.lock();
         try {
+            state = SyncState.SYNCHRONIZING;
             performFullSynchronization();
+            state = SyncState.READY;
             logger.info("Initial synchronization completed successfully");
         } catch (Exception e) {
+            state = SyncState.FAILED;
             logger.error("Error during initial synchronization", e);
+        } finally {
+            syncLock.unlock();
         }
     }
 
+    /**
+     * Check whether the initial synchronization completed
+     * 
+     * @return true once the library is up to date
+     */
+    public boolean isReady() {
+        return state == SyncState.READY;
+    }
+
+    /**
+     * Get the state of the synchronization with Lidarr
+     * 
+     * @return The state, whether the initial synchronization completed, and the progress of the last full synchronization
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("state", state);
+        status.put("ready", isReady());
+        SyncProgress progress = fullSyncProgress;
+        status.put("progress", progress != null ? progress.toString() : null);
+        status.put("lastFullSynchronization", lastFullSynchronization);
+        return status;
+    }
+
     /**
      * Scheduled synchronization job that runs every 30 seconds.
      * Updates local database with changes from external services.
      */
     @Scheduled(fixedRate = 30000) // 30 seconds in milliseconds
     public void scheduledSynchronization() {
+        if (!syncLock.tryLock()) {
+            logger.debug("Skipping scheduled synchronization, another synchronization is running");
+            return;
+        }
         logger.info("Starting scheduled synchronization...");
         try {
             performIncrementalSynchronization();
             logger.info("Scheduled synchronization completed successfully");
         } catch (Exception e) {
             logger.error("Error during scheduled synchronization", e);
+        } finally {
+            syncLock.unlock();
         }
     }
 
     /**
      * Performs a full synchronization of all data.
-     * This is a more intensive operation typically done at startup.
-     * 
-     * Note: This method is currently not called automatically but is kept for manual synchronization if needed.
-     * You can call this method through a REST endpoint or other trigger mechanism.
+     * This is a more intensive operation done in the background at startup.
      */
     private void performFullSynchronization() {
         logger.info("Performing full synchronization...");
+        // Changes from now on are picked up by the incremental synchronization
+        Instant started = Instant.now();
+        SyncProgress progress = new SyncProgress();
+        fullSyncProgress = progress;
+        RequestRateLimiter rateLimiter = new RequestRateLimiter(lidarrRequestsPerSecond);
         
         // Synchronize artists
-        syncArtists();
+        syncArtists(rateLimiter, progress);
+        
+        // Albums from before the media title was stored are otherwise not found by the media watcher
+        foldMediaTitles();
         
-        // Synchronize albums
-        syncAlbums();
+        // Index the audio files, new tracks are resolved against it
+        mediaIndex.refresh();
         
-        // Synchronize tracks
-        syncTracks();
+        // Synchronize the albums and tracks of all artists
+        syncCatalogs(rateLimiter, progress);
         
-        logger.info("Full synchronization completed");
+        // Audio files may have been moved or replaced, drop cached paths and handles
+        audioFileCache.invalidateAll();
+        
+        // Cached search results may miss new entities or list removed ones
+        searchResultCache.invalidateAll();
+        
+        // Let the next startup map the synchronized index in instead of rebuilding it
+        searchIndexSnapshot.save();
+        
+        // Read stream properties of new and changed files in the background
+        audioInfoService.scanLibraryAsync();
+        
+        SynchronizationCursor cursor = synchronizationCursorRepository.findById(SynchronizationCursor.LIDARR_HISTORY)
+                .orElseGet(() -> new SynchronizationCursor(SynchronizationCursor.LIDARR_HISTORY, started, 0));
+        cursor.setSince(started);
+        synchronizationCursorRepository.save(cursor);
+        
+        lastFullSynchronization = LocalDateTime.now();
+        logger.info("Full synchronization completed: {}", progress);
+    }
+
+    private void foldMediaTitles() {
+        List<Album> albums = albumRepository.findByMediaTitleIsNullAndTitleIsNotNull();
+        if (!albums.isEmpty()) {
+            albums.forEach(album -> album.setMediaTitle(TextNormalizer.fold(album.getTitle())));
+            albumRepository.saveAll(albums);
+            logger.info("Stored the media titles of {} albums", albums.size());
+        }
     }
 
     /**
      * Performs an incremental synchronization, focusing only on recently changed data.
      * This is less intensive and suitable for frequent updates.
+     * 
+     * Lidarr's history is polled from the stored cursor, and only the albums of new
+     * events are fetched and applied, including renamed and deleted files. A tick costs
+     * one history request plus, per affected album, one album request, one track request
+     * if it is downloaded and one artist request if the artist is new, and rescans only
+     * the audio files of the affected albums, whatever the size of the library.
      */
     private void performIncrementalSynchronization() {
         logger.info("Performing incremental synchronization...");
+        Optional<SynchronizationCursor> storedCursor = synchronizationCursorRepository.findById(SynchronizationCursor.LIDARR_HISTORY);
+        if (storedCursor.isEmpty()) {
+            // Set by the first full synchronization
+            logger.info("Skipping incremental synchronization until a full synchronization completed");
+            return;
+        }
+        SynchronizationCursor cursor = storedCursor.get();
+        SyncProgress progress = new SyncProgress();
+        RequestRateLimiter rateLimiter = new RequestRateLimiter(lidarrRequestsPerSecond);
         
-
+        if (!rateLimiter.acquire()) {
+            return;
+        }
+        progress.requests.incrementAndGet();
+        List<LidarrHistoryDto> events = lidarrClient.getHistorySince(cursor.getSince()).stream()
+                .filter(event -> event.getId() != null && event.getDate() != null)
+                .filter(event -> event.getId() > cursor.getLastEventId() || event.getDate().toInstant().isAfter(cursor.getSince()))
+                .toList();
+        if (events.isEmpty()) {
+            logger.info("Incremental synchronization completed, no new Lidarr events");
+            return;
+        }
+        
+        // Albums of the events that change files, in the order they happened
+        Set<Integer> albumIds = new LinkedHashSet<>();
+        for (LidarrHistoryDto event : events) {
+            if (event.getAlbumId() != null && event.getAlbumId() > 0 && LIBRARY_EVENT_TYPES.contains(event.getEventType())) {
+                albumIds.add(event.getAlbumId());
+            }
+        }
+        
+        if (!albumIds.isEmpty()) {
+            mediaIndex.refresh();
+        }
+        
+        boolean failed = false;
+        Set<Long> syncedAlbumIds = new LinkedHashSet<>();
+        for (Integer albumId : albumIds) {
+            try {
+                Album album = syncAlbumById(albumId, rateLimiter, progress);
+                if (album != null) {
+                    syncedAlbumIds.add(album.getId());
+                }
+            } catch (Exception e) {
+                failed = true;
+                logger.error("Error synchronizing album with Lidarr ID {}", albumId, e);
+            }
+        }
+        
+        // Keep the cursor after failures, the events are applied again on the next tick
+        if (!failed) {
+            LidarrHistoryDto last = events.get(events.size() - 1);
+            cursor.setSince(last.getDate().toInstant());
+            cursor.setLastEventId(Math.max(cursor.getLastEventId(),
+                    events.stream().mapToLong(LidarrHistoryDto::getId).max().orElse(0)));
+            synchronizationCursorRepository.save(cursor);
+        }
         
-        logger.info("Incremental synchronization completed");
+        if (progress.albumsCreated.get() > 0 || progress.albumsChanged.get() > 0 || progress.albumsUpdated.get() > 0
+                || progress.tracksCreated.get() > 0 || progress.tracksUpdated.get() > 0) {
+            searchResultCache.invalidateAll();
+        }
+        // Renamed and retagged files keep their tracks, so the affected albums are rescanned either way
+        audioInfoService.scanAlbumsAsync(syncedAlbumIds);
+        logger.info("Incremental synchronization completed: {} events, {} albums, {}", events.size(), albumIds.size(), progress);
+    }
+    
+    /**
+     * Synchronizes one album, its tracks and, if new, its artist from Lidarr to the local database.
+     * 
+     * @param albumId The album's ID in Lidarr
+     * @param rateLimiter Limits the requests to Lidarr
+     * @param progress Counts requests and saved entities
+     * @return The saved album, or null if the rate limiter was interrupted
+     */
+    private Album syncAlbumById(Integer albumId, RequestRateLimiter rateLimiter, SyncProgress progress) {
+        if (!rateLimiter.acquire()) {
+            return null;
+        }
+        progress.requests.incrementAndGet();
+        LidarrAlbumDto lidarrAlbum = lidarrClient.getAlbumById(albumId);
+        if (lidarrAlbum == null || lidarrAlbum.getArtistId() == null) {
+            throw new IllegalStateException("Album not available from Lidarr");
+        }
+        
+        Artist artist = artistRepository.findByLidarrId(lidarrAlbum.getArtistId()).orElse(null);
+        if (artist == null) {
+            if (!rateLimiter.acquire()) {
+                return null;
+            }
+            progress.requests.incrementAndGet();
+            LidarrArtistDto lidarrArtist = lidarrClient.getArtistById(lidarrAlbum.getArtistId());
+            if (lidarrArtist == null) {
+                throw new IllegalStateException("Artist " + lidarrAlbum.getArtistId() + " not available from Lidarr");
+            }
+            artist = createArtist(lidarrArtist);
+        }
+        
+        Album album = syncAlbum(artist, lidarrAlbum, progress);
+        if (album.isDownloaded() && syncTracks(artist, album, null, null, rateLimiter, progress)) {
+            albumRepository.updateLidarrHash(album.getId(), PayloadHash.of(lidarrAlbum));
+        }
+        return album;
     }
     
     /**
      * Synchronizes all artists from Lidarr to the local database.
      */
-    private void syncArtists() {
+    private void syncArtists(RequestRateLimiter rateLimiter, SyncProgress progress) {
         logger.info("Synchronizing artists...");
         try {
             // Fetch artists from Lidarr API
+            if (!rateLimiter.acquire()) {
+                return;
+            }
+            progress.requests.incrementAndGet();
             var lidarrArtists = lidarrClient.getAllArtists();
             logger.info("Retrieved {} artists from Lidarr", lidarrArtists.size());
             
+            // Existing artists are looked up in memory, and only written if their payload changed
+            Map<Integer, Artist> existingArtists = new HashMap<>();
+            artistRepository.findAll().stream()
+                    .filter(artist -> artist.getLidarrId() != null)
+                    .forEach(artist -> existingArtists.put(artist.getLidarrId(), artist));
+            
             // Process each artist and update/save to local database
             for (var lidarrArtist : lidarrArtists) {
-                // Check if artist already exists in database
-                var existingArtist = artistRepository.findByLidarrId(lidarrArtist.getId());
-                
-                if (existingArtist.isPresent()) {
-                    // Update existing artist
-                    logger.debug("Updating existing artist: {}", lidarrArtist.getArtistName());
-                    // Update logic here
-                } else {
-                    // Create new artist
-                    Artist newArtist = new Artist(
-                        0, 
-                        lidarrArtist.getArtistName(),
-                        lidarrArtist.getOverview(), 
-                        lidarrArtist.getImages().get(0).getRemoteUrl(),
-                        lidarrArtist.getId(),
-                        lidarrArtist.getForeignArtistId(),
-                        lidarrArtist.getGenres()
-                    );
-                    artistRepository.save(newArtist);
+                try {
+                    Artist existingArtist = existingArtists.get(lidarrArtist.getId());
+                    if (existingArtist == null) {
+                        createArtist(lidarrArtist);
+                    } else if (!Objects.equals(existingArtist.getLidarrHash(), PayloadHash.of(lidarrArtist))) {
+                        updateArtist(existingArtist, lidarrArtist);
+                        progress.artistsUpdated.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    logger.error("Error processing artist: {}", lidarrArtist.getArtistName(), e);
                 }
             }
         } catch (Exception e) {
@@ -161,212 +422,542 @@ public class SynchronizationService {
     }
     
     /**
-     * Synchronizes all albums from Lidarr to the local database.
+     * Create an artist from Lidarr in the local database
+     * 
+     * @param lidarrArtist The artist in Lidarr
+     * @return The saved artist
      */
-    private void syncAlbums() {
-        logger.info("Synchronizing albums...");
-        // Get all artists from local database
-        List<Artist> artists = artistRepository.findAll();
-        logger.info("Found {} artists in database to sync albums for", artists.size());
-        
-        // Process each artist individually so one failure doesn't stop the entire process
-        for (Artist artist : artists) {
-            try {
-                // Skip artists without Lidarr ID
-                if (artist.getLidarrId() == null) {
-                    logger.debug("Skipping artist without Lidarr ID: {}", artist.getName());
-                    continue;
+    private Artist createArtist(LidarrArtistDto lidarrArtist) {
+        Artist newArtist = new Artist(
+            0, 
+            lidarrArtist.getArtistName(),
+            lidarrArtist.getOverview(), 
+            lidarrArtist.getImages().get(0).getRemoteUrl(),
+            lidarrArtist.getId(),
+            lidarrArtist.getForeignArtistId(),
+            lidarrArtist.getGenres()
+        );
+        newArtist.setGenres(genreService.resolveGenres(lidarrArtist.getGenres()));
+        newArtist.setLidarrHash(PayloadHash.of(lidarrArtist));
+        return artistRepository.save(newArtist);
+    }
+    
+    /**
+     * Apply a changed artist from Lidarr to the local database
+     * 
+     * @param artist The artist in the database
+     * @param lidarrArtist The artist in Lidarr
+     */
+    private void updateArtist(Artist artist, LidarrArtistDto lidarrArtist) {
+        logger.debug("Updating changed artist: {}", lidarrArtist.getArtistName());
+        artist.setName(lidarrArtist.getArtistName());
+        artist.setBiography(lidarrArtist.getOverview());
+        if (lidarrArtist.getImages() != null && !lidarrArtist.getImages().isEmpty()) {
+            artist.setImageUrl(lidarrArtist.getImages().get(0).getRemoteUrl());
+        }
+        artist.setForeignId(lidarrArtist.getForeignArtistId());
+        artist.setGenres(genreService.resolveGenres(lidarrArtist.getGenres()));
+        artist.setLidarrHash(PayloadHash.of(lidarrArtist));
+        artistRepository.save(artist);
+    }
+    
+    /**
+     * Synchronizes the albums and tracks of all artists from Lidarr to the local database.
+     * Artists are processed concurrently, and the tracks of each album once its artist's
+     * albums are saved. Lidarr requests are rate limited across all workers.
+     */
+    private void syncCatalogs(RequestRateLimiter rateLimiter, SyncProgress progress) {
+        // Get all artists from local database, skipping those without Lidarr ID
+        List<Artist> artists = artistRepository.findAll().stream()
+                .filter(artist -> artist.getLidarrId() != null)
+                .toList();
+        progress.artistCount = artists.size();
+        logger.info("Synchronizing albums and tracks of {} artists with {} threads...", artists.size(), syncThreads);
+
+        // Existing albums and tracks are looked up in memory instead of one query per album and track
+        Map<Integer, Album> existingAlbums = new HashMap<>();
+        albumRepository.findAllWithLidarrAlbumId().forEach(album -> existingAlbums.put(album.getLidarrAlbumId(), album));
+        LongHashSet existingTrackIds = new LongHashSet();
+        trackRepository.findAllLidarrTrackIds().forEach(existingTrackIds::add);
+        LongHashSet fileTrackAlbumIds = new LongHashSet();
+        trackRepository.findAlbumIdsWithoutLidarrTrackId().forEach(fileTrackAlbumIds::add);
+        logger.info("Loaded {} existing albums and {} existing tracks", existingAlbums.size(), existingTrackIds.size());
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(syncThreads, syncThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "sync-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        try {
+            // One failure doesn't stop the others, errors are logged per artist, album and track
+            CompletableFuture<?>[] catalogs = artists.stream()
+                    .map(artist -> CompletableFuture
+                            .supplyAsync(() -> syncAlbums(artist, existingAlbums, rateLimiter, progress), executor)
+                            .thenCompose(albums -> CompletableFuture.allOf(albums.stream()
+                                    .map(pending -> CompletableFuture.runAsync(() -> {
+                                        if (syncTracks(artist, pending.album(), existingTrackIds, fileTrackAlbumIds, rateLimiter, progress)) {
+                                            albumRepository.updateLidarrHash(pending.album().getId(), pending.lidarrHash());
+                                        }
+                                    }, executor))
+                                    .toArray(CompletableFuture[]::new)))
+                            .whenComplete((result, error) -> progress.artistsDone.incrementAndGet()))
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture<Void> all = CompletableFuture.allOf(catalogs);
+            while (true) {
+                try {
+                    all.get(progressIntervalMs, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    logger.info("Synchronization progress: {}", progress);
                 }
-                
-                logger.info("Processing albums for artist: {} (ID: {})", artist.getName(), artist.getLidarrId());
-                
-                // Fetch albums for this artist from Lidarr
-                List<LidarrAlbumDto> lidarrAlbums = lidarrClient.getAlbumsByArtistId(artist.getLidarrId());
-                logger.debug("Retrieved {} albums for artist: {}", lidarrAlbums.size(), artist.getName());
-                
-                // Process each album individually
-                for (LidarrAlbumDto lidarrAlbum : lidarrAlbums) {
-                    try {
-                        // Check if album already exists
-                        Optional<Album> existingAlbum = albumRepository.findByLidarrAlbumId(lidarrAlbum.getId());
-                        
-                        if (existingAlbum.isPresent()) {
-                            if(lidarrAlbum.getStatistics().getTrackFileCount() == lidarrAlbum.getStatistics().getTrackCount()){
-                                existingAlbum.get().setDownloaded(true);
-                                albumRepository.save(existingAlbum.get());
-                            }
-                        } else {
-                            // Create new album
-                            logger.debug("Creating new album: {}", lidarrAlbum.getTitle());
-
-                            Album album = new Album();
-                            album.setLidarrAlbumId(lidarrAlbum.getId());
-                            album.setArtist(artist);
-                            album.setTitle(lidarrAlbum.getTitle());
-                            album.setAlbumType(lidarrAlbum.getAlbumType());
-                            album.setReleaseDate(lidarrAlbum.getReleaseDateAsLocalDate());
-                            album.setCoverImageUrl(lidarrAlbum.getCoverArt());
-                            
-                            // Safely set albumId from releases if available
-                            if (lidarrAlbum.getReleases() != null && !lidarrAlbum.getReleases().isEmpty() && 
-                                lidarrAlbum.getReleases().get(0) != null && 
-                                lidarrAlbum.getReleases().get(0).getAlbumId() != null) {
-                                album.setAlbumId(lidarrAlbum.getReleases().get(0).getAlbumId());
-                            }
-                            
-                            album.setForeignAlbumId(lidarrAlbum.getForeignAlbumId());
-                            
-                            // Set downloaded status based on statistics if available
-                            if (lidarrAlbum.getStatistics() != null && 
-                                lidarrAlbum.getStatistics().getTrackFileCount() != null && 
-                                lidarrAlbum.getStatistics().getTrackCount() != null) {
-                                album.setDownloaded(lidarrAlbum.getStatistics().getTrackFileCount() > 0);
-                            } else {
-                                album.setDownloaded(false);
-                            }
-                            album.setGenres(new HashSet<>());
-
-                            for (Release releases : lidarrAlbum.getReleases()) {
-                            if(releases.getMonitored()){
-                                album.setLidarrAlbumReleaseId(releases.getId());
-                                break;
-                            }
-                            }
-                            
-                            // Save the album first to get an ID
-                            Album savedAlbum = albumRepository.save(album);
-                            logger.debug("Saved new album with ID: {}", savedAlbum.getId());
-
-
-                            
-                            // Process genres - fetch each genre separately to avoid LazyInitializationException
-                            if (lidarrAlbum.getGenres() != null && !lidarrAlbum.getGenres().isEmpty()) {
-                                for (String genreName : lidarrAlbum.getGenres()) {
-                                    try {
-                                        // Find or create the genre
-                                        Genre genre = genreRepository.findByNameIgnoreCase(genreName)
-                                                .orElseGet(() -> {
-                                                    Genre newGenre = new Genre();
-                                                    newGenre.setName(genreName);
-                                                    return genreRepository.save(newGenre);
-                                                });
-                                        
-                                        // Add genre to album's genres
-                                        savedAlbum.getGenres().add(genre);
-                                    } catch (Exception e) {
-                                        logger.error("Error processing genre '{}' for album '{}'", genreName, lidarrAlbum.getTitle(), e);
-                                    }
-                                }
-                                // Save the album again with updated genres
-                                albumRepository.save(savedAlbum);
-                            }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Synchronization of albums and tracks interrupted: {}", progress);
+        } catch (ExecutionException e) {
+            logger.error("Error synchronizing albums and tracks", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        
+        logger.info("Album and track synchronization completed");
+    }
+    
+    /**
+     * Synchronizes the albums of an artist from Lidarr to the local database.
+     * New albums are built in memory and saved together. Existing albums whose
+     * payload hash is unchanged are skipped, their tracks included.
+     * 
+     * @param artist The artist, with a Lidarr ID
+     * @param existingAlbums The albums in the database by Lidarr album ID
+     * @param rateLimiter Limits the requests to Lidarr
+     * @param progress Counts requests and saved albums
+     * @return The artist's new or changed downloaded albums, whose tracks to synchronize
+     */
+    private List<AlbumToSync> syncAlbums(Artist artist, Map<Integer, Album> existingAlbums,
+                                         RequestRateLimiter rateLimiter, SyncProgress progress) {
+        List<AlbumToSync> downloadedAlbums = new ArrayList<>();
+        try {
+            logger.debug("Processing albums for artist: {} (ID: {})", artist.getName(), artist.getLidarrId());
+            
+            // Fetch albums for this artist from Lidarr
+            if (!rateLimiter.acquire()) {
+                return downloadedAlbums;
+            }
+            progress.requests.incrementAndGet();
+            List<LidarrAlbumDto> lidarrAlbums = lidarrClient.getAlbumsByArtistId(artist.getLidarrId());
+            logger.debug("Retrieved {} albums for artist: {}", lidarrAlbums.size(), artist.getName());
+            
+            // Create the genres new to all these albums in one batch
+            genreService.resolveGenres(lidarrAlbums.stream()
+                    .filter(lidarrAlbum -> lidarrAlbum.getGenres() != null
+                            && !existingAlbums.containsKey(lidarrAlbum.getId()))
+                    .flatMap(lidarrAlbum -> lidarrAlbum.getGenres().stream())
+                    .toList());
+            
+            // Process each album individually
+            List<Album> newAlbums = new ArrayList<>();
+            List<Long> newAlbumHashes = new ArrayList<>();
+            for (LidarrAlbumDto lidarrAlbum : lidarrAlbums) {
+                try {
+                    long lidarrHash = PayloadHash.of(lidarrAlbum);
+                    Album existingAlbum = existingAlbums.get(lidarrAlbum.getId());
+                    if (existingAlbum != null) {
+                        // The hash covers the track file count, an unchanged album has the same tracks
+                        if (Objects.equals(existingAlbum.getLidarrHash(), lidarrHash)) {
+                            progress.albumsUnchanged.incrementAndGet();
+                            continue;
+                        }
+                        Album album = updateAlbum(existingAlbum, lidarrAlbum, lidarrHash, progress);
+                        if (album.isDownloaded()) {
+                            downloadedAlbums.add(new AlbumToSync(album, lidarrHash));
                         }
-                    } catch (Exception e) {
-                        logger.error("Error processing album: {}", lidarrAlbum.getTitle(), e);
-                        // Continue with next album
+                    } else {
+                        newAlbums.add(buildAlbum(artist, lidarrAlbum, lidarrHash));
+                        newAlbumHashes.add(lidarrHash);
                     }
+                } catch (Exception e) {
+                    logger.error("Error processing album: {}", lidarrAlbum.getTitle(), e);
+                    // Continue with next album
                 }
-                
-                logger.info("Finished processing albums for artist: {}", artist.getName());
-                
-            } catch (Exception e) {
-                logger.error("Error synchronizing albums for artist: {}", artist.getName(), e);
-                // Continue with next artist
             }
+            
+            if (!newAlbums.isEmpty()) {
+                List<Album> savedAlbums = albumRepository.saveAll(newAlbums);
+                for (int i = 0; i < savedAlbums.size(); i++) {
+                    progress.albumsCreated.incrementAndGet();
+                    if (savedAlbums.get(i).isDownloaded()) {
+                        downloadedAlbums.add(new AlbumToSync(savedAlbums.get(i), newAlbumHashes.get(i)));
+                    }
+                }
+            }
+            
+            logger.debug("Finished processing albums for artist: {}", artist.getName());
+            
+        } catch (Exception e) {
+            logger.error("Error synchronizing albums for artist: {}", artist.getName(), e);
         }
-        
-        logger.info("Album synchronization completed");
+        return downloadedAlbums;
     }
     
     /**
-     * Synchronizes all tracks from Lidarr to the local database.
+     * Synchronizes one album of an artist from Lidarr to the local database.
+     * 
+     * @param artist The album's artist
+     * @param lidarrAlbum The album in Lidarr
+     * @param progress Counts saved albums
+     * @return The saved album
      */
-    private void syncTracks() {
-        logger.info("Synchronizing tracks...");
-        List<Album> albums = albumRepository.findAll();
-        for (Album album : albums) {
-            if (!album.isDownloaded()) {
-                continue;
+    private Album syncAlbum(Artist artist, LidarrAlbumDto lidarrAlbum, SyncProgress progress) {
+        long lidarrHash = PayloadHash.of(lidarrAlbum);
+        Optional<Album> existingAlbum = albumRepository.findByLidarrAlbumId(lidarrAlbum.getId());
+        if (existingAlbum.isPresent()) {
+            return updateAlbum(existingAlbum.get(), lidarrAlbum, lidarrHash, progress);
+        }
+        Album savedAlbum = albumRepository.save(buildAlbum(artist, lidarrAlbum, lidarrHash));
+        logger.debug("Saved new album with ID: {}", savedAlbum.getId());
+        progress.albumsCreated.incrementAndGet();
+        return savedAlbum;
+    }
+    
+    /**
+     * Apply a changed album from Lidarr to the local database, and mark it
+     * downloaded once Lidarr has files for all its tracks
+     * 
+     * @param album The album in the database
+     * @param lidarrAlbum The album in Lidarr
+     * @param lidarrHash The hash of the album's payload
+     * @param progress Counts updated albums
+     * @return The saved album
+     */
+    private Album updateAlbum(Album album, LidarrAlbumDto lidarrAlbum, long lidarrHash, SyncProgress progress) {
+        if (!Objects.equals(album.getLidarrHash(), lidarrHash)) {
+            logger.debug("Updating changed album: {}", lidarrAlbum.getTitle());
+            album.setTitle(lidarrAlbum.getTitle());
+            album.setAlbumType(lidarrAlbum.getAlbumType());
+            album.setReleaseDate(lidarrAlbum.getReleaseDateAsLocalDate());
+            album.setCoverImageUrl(lidarrAlbum.getCoverArt());
+            album.setForeignAlbumId(lidarrAlbum.getForeignAlbumId());
+            for (Release release : lidarrAlbum.getReleases()) {
+                if (Boolean.TRUE.equals(release.getMonitored())) {
+                    album.setLidarrAlbumReleaseId(release.getId());
+                    break;
+                }
             }
-            Artist artist = album.getArtist();
-            // Skip if either artist or artist's Lidarr ID is null
-            if (artist == null || artist.getLidarrId() == null) {
-                logger.debug("Skipping album without valid artist: {}", album.getTitle());
-                continue;
+            album.setGenres(genreService.resolveGenres(lidarrAlbum.getGenres()));
+            progress.albumsChanged.incrementAndGet();
+        }
+        LidarrAlbumDto.Statistics statistics = lidarrAlbum.getStatistics();
+        if (!album.isDownloaded() && statistics != null && statistics.getTrackCount() != null
+                && statistics.getTrackCount() > 0
+                && Objects.equals(statistics.getTrackFileCount(), statistics.getTrackCount())) {
+            album.setDownloaded(true);
+            progress.albumsUpdated.incrementAndGet();
+        } else if (album.isDownloaded() && statistics != null && Objects.equals(statistics.getTrackFileCount(), 0)) {
+            // Lidarr deleted all of the album's files, its tracks are not fetched again
+            album.setDownloaded(false);
+            progress.albumsUpdated.incrementAndGet();
+            for (Track track : trackRepository.findByAlbumId(album.getId())) {
+                if (track.getAudioUrl() != null) {
+                    trackRepository.updateAudioUrl(track.getId(), null);
+                    audioFileCache.invalidate(track.getId());
+                    progress.tracksUpdated.incrementAndGet();
+                }
+            }
+        }
+        album.setLidarrHash(hashToStore(album, lidarrHash));
+        return albumRepository.save(album);
+    }
+    
+    // Downloaded albums get their hash once their tracks are synchronized, so an interrupted synchronization retries them
+    private static Long hashToStore(Album album, long lidarrHash) {
+        return album.isDownloaded() ? null : lidarrHash;
+    }
+    
+    /**
+     * Build a new album from Lidarr with its genres, without saving it
+     * 
+     * @param artist The album's artist
+     * @param lidarrAlbum The album in Lidarr
+     * @param lidarrHash The hash of the album's payload
+     * @return The unsaved album
+     */
+    private Album buildAlbum(Artist artist, LidarrAlbumDto lidarrAlbum, long lidarrHash) {
+        // Create new album
+        logger.debug("Creating new album: {}", lidarrAlbum.getTitle());
+
+        Album album = new Album();
+        album.setLidarrAlbumId(lidarrAlbum.getId());
+        album.setArtist(artist);
+        album.setTitle(lidarrAlbum.getTitle());
+        album.setAlbumType(lidarrAlbum.getAlbumType());
+        album.setReleaseDate(lidarrAlbum.getReleaseDateAsLocalDate());
+        album.setCoverImageUrl(lidarrAlbum.getCoverArt());
+        
+        // Safely set albumId from releases if available
+        if (lidarrAlbum.getReleases() != null && !lidarrAlbum.getReleases().isEmpty() && 
+            lidarrAlbum.getReleases().get(0) != null && 
+            lidarrAlbum.getReleases().get(0).getAlbumId() != null) {
+            album.setAlbumId(lidarrAlbum.getReleases().get(0).getAlbumId());
+        }
+        
+        album.setForeignAlbumId(lidarrAlbum.getForeignAlbumId());
+        
+        // Set downloaded status based on statistics if available
+        if (lidarrAlbum.getStatistics() != null && 
+            lidarrAlbum.getStatistics().getTrackFileCount() != null && 
+            lidarrAlbum.getStatistics().getTrackCount() != null) {
+            album.setDownloaded(lidarrAlbum.getStatistics().getTrackFileCount() > 0);
+        } else {
+            album.setDownloaded(false);
+        }
+
+        for (Release releases : lidarrAlbum.getReleases()) {
+        if(releases.getMonitored()){
+            album.setLidarrAlbumReleaseId(releases.getId());
+            break;
+        }
+        }
+        
+        // Genres are saved with the album, in the same insert batch
+        album.setGenres(genreService.resolveGenres(lidarrAlbum.getGenres()));
+        album.setLidarrHash(hashToStore(album, lidarrHash));
+        return album;
+    }
+    
+    /**
+     * Synchronizes the tracks of a downloaded album from Lidarr to the local database.
+     * New tracks are built in memory and saved together in one transaction.
+     * Tracks created from the album's files before are taken over by track number,
+     * and known tracks are pointed at their current files.
+     * 
+     * @param artist The album's artist, with a Lidarr ID
+     * @param album The album
+     * @param existingTrackIds Lidarr IDs of the tracks in the database, or null to look up the album's
+     * @param fileTrackAlbumIds IDs of the albums with tracks created from files, or null to look up the album's
+     * @param rateLimiter Limits the requests to Lidarr
+     * @param progress Counts requests and saved tracks
+     * @return Whether all tracks were synchronized
+     */
+    private boolean syncTracks(Artist artist, Album album, LongHashSet existingTrackIds, LongHashSet fileTrackAlbumIds,
+                               RequestRateLimiter rateLimiter, SyncProgress progress) {
+        // Use lidarrAlbumId instead of albumId
+        if (album.getLidarrAlbumId() == null) {
+            logger.debug("Skipping album without Lidarr album ID: {}", album.getTitle());
+            return false;
+        }
+        
+        boolean complete = true;
+        try {
+            // Fetch tracks using the correct Lidarr album ID
+            if (!rateLimiter.acquire()) {
+                return false;
             }
+            progress.requests.incrementAndGet();
+            // Throws if the request failed, so the album counts as incomplete and its hash is not stored
+            List<LidarrTrackDto> tracks = lidarrClient.fetchTracksByAlbumId(artist.getLidarrId(), album.getLidarrAlbumId(), album.getLidarrAlbumReleaseId());
+            logger.debug("Retrieved {} tracks for album: {}", tracks.size(), album.getTitle());
             
-            // Use lidarrAlbumId instead of albumId
-            if (album.getLidarrAlbumId() == null) {
-                logger.debug("Skipping album without Lidarr album ID: {}", album.getTitle());
-                continue;
+            if (existingTrackIds == null) {
+                existingTrackIds = new LongHashSet();
+                trackRepository.findLidarrTrackIdsByAlbumId(album.getId()).forEach(existingTrackIds::add);
+            }
+            Map<Integer, Track> fileTracks = new HashMap<>();
+            if (fileTrackAlbumIds == null || fileTrackAlbumIds.contains(album.getId())) {
+                trackRepository.findByAlbumIdAndLidarrTrackIdIsNull(album.getId())
+                        .forEach(fileTrack -> fileTracks.putIfAbsent(fileTrack.getTrackNumber(), fileTrack));
             }
             
-            try {
-                // Fetch tracks using the correct Lidarr album ID
-                List<LidarrTrackDto> tracks = lidarrClient.getTracksByAlbumId(artist.getLidarrId(), album.getLidarrAlbumId(), album.getLidarrAlbumReleaseId());
-                logger.debug("Retrieved {} tracks for album: {}", tracks.size(), album.getTitle());
-                
-                tracks.forEach(lidarrTrack -> {
-                    try {
-                        Track track = trackRepository.findByLidarrTrackId(lidarrTrack.getId());
-                        if (track == null) {
-                            track = new Track();
-                            track.setLidarrTrackId(lidarrTrack.getId().longValue());
-                            track.setTitle(lidarrTrack.getTitle());
-                            track.setDurationInSeconds(lidarrTrack.getDuration());
-                            // Convert string track number to integer, using absoluteTrackNumber as fallback
-                            track.setTrackNumber(lidarrTrack.getAbsoluteTrackNumber() != null ? lidarrTrack.getAbsoluteTrackNumber() : 0);
-                            // Use mediumNumber as discNumber, or default to 1
-                            Integer discNumber = lidarrTrack.getMediumNumber();
-                            track.setDiscNumber(discNumber != null ? discNumber : 1);
-                            track.setExplicit(lidarrTrack.getExplicit());
-                            track.setAlbum(album);
-                            track.setAudioUrl(generateStreamUrl(artist.getName(), album.getTitle(), lidarrTrack.getTitle(), lidarrTrack.getAbsoluteTrackNumber()));
-                            trackRepository.save(track);
-                            logger.debug("Created new track: {}", lidarrTrack.getTitle());
-                        }
-                    } catch (Exception e) {
-                        logger.error("Error processing track: {}", lidarrTrack.getTitle(), e);
+            List<Track> newTracks = new ArrayList<>();
+            List<LidarrTrackDto> knownTracks = new ArrayList<>();
+            for (LidarrTrackDto lidarrTrack : tracks) {
+                try {
+                    if (lidarrTrack.getId() == null) {
+                        continue;
                     }
-                });
-            } catch (Exception e) {
-                logger.error("Error fetching tracks for album: {}", album.getTitle(), e);
+                    if (existingTrackIds.contains(lidarrTrack.getId())) {
+                        knownTracks.add(lidarrTrack);
+                        continue;
+                    }
+                    Track track = fileTracks.remove(lidarrTrack.getAbsoluteTrackNumber());
+                    if (track == null) {
+                        track = new Track();
+                    }
+                    track.setLidarrTrackId(lidarrTrack.getId().longValue());
+                    track.setTitle(lidarrTrack.getTitle());
+                    track.setDurationInSeconds(lidarrTrack.getDuration());
+                    // Convert string track number to integer, using absoluteTrackNumber as fallback
+                    track.setTrackNumber(lidarrTrack.getAbsoluteTrackNumber() != null ? lidarrTrack.getAbsoluteTrackNumber() : 0);
+                    // Use mediumNumber as discNumber, or default to 1
+                    Integer discNumber = lidarrTrack.getMediumNumber();
+                    track.setDiscNumber(discNumber != null ? discNumber : 1);
+                    track.setExplicit(lidarrTrack.getExplicit());
+                    track.setAlbum(album);
+                    track.setAudioUrl(generateStreamUrl(artist.getName(), album.getTitle(), lidarrTrack.getTitle(), lidarrTrack.getAbsoluteTrackNumber()));
+                    newTracks.add(track);
+                } catch (Exception e) {
+                    logger.error("Error processing track: {}", lidarrTrack.getTitle(), e);
+                    complete = false;
+                }
             }
             
+            if (!newTracks.isEmpty()) {
+                trackRepository.saveAll(newTracks);
+                progress.tracksCreated.addAndGet(newTracks.size());
+                logger.debug("Created {} new tracks for album: {}", newTracks.size(), album.getTitle());
+            }
+            if (!knownTracks.isEmpty()) {
+                progress.tracksUpdated.addAndGet(applyTrackFiles(artist, album, knownTracks));
+            }
+        } catch (Exception e) {
+            logger.error("Error fetching tracks for album: {}", album.getTitle(), e);
+            complete = false;
         }
+        progress.albumsDone.incrementAndGet();
+        return complete;
     }
-    private String generateStreamUrl(String artistName, String albumTitle, String trackTitle, int trackNumber) {
-        // Format track number as two digits (e.g., 1 -> 01, 10 -> 10)
-        String formattedTrackNumber = String.format("%02d", trackNumber);
-        String basePath = mediaRoot + "/" + sanitizeArtistName(artistName) + "/" + albumTitle + "/" + formattedTrackNumber + " - " + trackTitle;
-        
-        // Check for file extensions and append the correct one
-        // Prioritize FLAC files since that's what we have in the media folder
-        String[] possibleExtensions = {".flac", ".mp3", ".wav", ".m4a", ".ogg"};
-        
-        for (String ext : possibleExtensions) {
-            java.io.File file = new java.io.File(basePath + ext);
-            if (file.exists()) {
-                logger.info("Found audio file with extension: {} at path: {}", ext, basePath + ext);
-                return basePath + ext;
+    
+    /**
+     * Point an album's known tracks at their current files. Renamed files are found
+     * again in the media index, and tracks whose file Lidarr deleted lose their path.
+     * 
+     * @param artist The album's artist
+     * @param album The album
+     * @param lidarrTracks Lidarr's tracks of the album that are already in the database
+     * @return The number of tracks whose path changed
+     */
+    private int applyTrackFiles(Artist artist, Album album, List<LidarrTrackDto> lidarrTracks) {
+        Map<Long, Track> tracks = new HashMap<>();
+        for (Track track : trackRepository.findByAlbumId(album.getId())) {
+            if (track.getLidarrTrackId() != null) {
+                tracks.put(track.getLidarrTrackId(), track);
             }
         }
-        
-        // If no file is found with the exact name, try a case-insensitive search for FLAC files
-        java.io.File directory = new java.io.File(mediaRoot + "/" + sanitizeArtistName(artistName) + "/" + albumTitle);
-        if (directory.exists() && directory.isDirectory()) {
-            String trackFilePrefix = formattedTrackNumber + " - ";
-            java.io.File[] files = directory.listFiles();
-            if (files != null) {
-                for (java.io.File file : files) {
-                    String fileName = file.getName().toLowerCase();
-                    if (fileName.startsWith(trackFilePrefix.toLowerCase()) && fileName.endsWith(".flac")) {
-                        logger.info("Found FLAC file with case-insensitive match: {}", file.getAbsolutePath());
-                        return mediaRoot + "/" + sanitizeArtistName(artistName) + "/" + albumTitle + "/" + file.getName();
+        int updated = 0;
+        for (LidarrTrackDto lidarrTrack : lidarrTracks) {
+            Track track = tracks.get(lidarrTrack.getId().longValue());
+            if (track == null) {
+                continue;
+            }
+            String path = null;
+            if (!Boolean.FALSE.equals(lidarrTrack.getHasFile())) {
+                path = mediaIndex.find(artist.getName(), album.getTitle(), track.getTrackNumber());
+                if (path == null) {
+                    // Not indexed yet, the media watcher points the track at it once it appears
+                    continue;
+                }
+            }
+            if (!Objects.equals(path, track.getAudioUrl())) {
+                trackRepository.updateAudioUrl(track.getId(), path);
+                audioFileCache.invalidate(track.getId());
+                updated++;
+            }
+        }
+        return updated;
+    }
+    
+    /**
+     * Apply changes of audio files under the media root to the library, without
+     * asking Lidarr. Tracks are pointed at their current files, albums without
+     * tracks get tracks created from their files, and albums with files are
+     * marked downloaded. Removed files are left to the Lidarr synchronization.
+     * Waits for a running synchronization.
+     * 
+     * @param albumKeys Keys of the albums whose files changed, see {@link MediaIndex#albumKey}
+     */
+    public void applyMediaChanges(Set<String> albumKeys) {
+        if (albumKeys.isEmpty()) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            int tracksUpdated = 0;
+            int tracksCreated = 0;
+            int albumsUpdated = 0;
+            Set<String> mediaTitles = new HashSet<>();
+            albumKeys.forEach(key -> mediaTitles.add(MediaIndex.titleOfKey(key)));
+            // Albums of other artists with the same title are filtered out by the full key
+            Set<Long> changedAlbumIds = new LinkedHashSet<>();
+            for (Album album : albumRepository.findByMediaTitleIn(mediaTitles)) {
+                Artist artist = album.getArtist();
+                if (artist == null || !albumKeys.contains(MediaIndex.albumKey(artist.getName(), album.getTitle()))) {
+                    continue;
+                }
+                Map<Integer, String> files = mediaIndex.findAlbum(artist.getName(), album.getTitle());
+                if (files.isEmpty()) {
+                    continue;
+                }
+                changedAlbumIds.add(album.getId());
+                
+                List<Track> tracks = trackRepository.findByAlbumId(album.getId());
+                for (Track track : tracks) {
+                    String path = files.get(track.getTrackNumber());
+                    if (path != null && !path.equals(track.getAudioUrl())) {
+                        trackRepository.updateAudioUrl(track.getId(), path);
+                        audioFileCache.invalidate(track.getId());
+                        tracksUpdated++;
                     }
                 }
+                
+                // Taken over by the Lidarr synchronization once it knows the tracks
+                if (tracks.isEmpty()) {
+                    List<Track> newTracks = new ArrayList<>();
+                    files.forEach((trackNumber, path) -> {
+                        Track track = new Track();
+                        track.setTitle(titleOfFile(path));
+                        track.setTrackNumber(trackNumber);
+                        track.setDiscNumber(1);
+                        track.setAlbum(album);
+                        track.setAudioUrl(path);
+                        newTracks.add(track);
+                    });
+                    trackRepository.saveAll(newTracks);
+                    tracksCreated += newTracks.size();
+                }
+                
+                if (!album.isDownloaded()) {
+                    albumRepository.updateDownloaded(album.getId(), true);
+                    albumsUpdated++;
+                }
             }
+            
+            if (tracksUpdated > 0 || tracksCreated > 0 || albumsUpdated > 0) {
+                searchResultCache.invalidateAll();
+            }
+            // Replaced and retagged files keep their paths, so the albums are rescanned either way
+            audioInfoService.scanAlbumsAsync(changedAlbumIds);
+            logger.info("Applied media changes of {} albums: {} tracks moved, {} tracks created, {} albums downloaded",
+                    albumKeys.size(), tracksUpdated, tracksCreated, albumsUpdated);
+        } finally {
+            syncLock.unlock();
         }
+    }
+    
+    // The title in a file name like "01 - Title.flac"
+    private static String titleOfFile(String path) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        int extension = name.lastIndexOf('.');
+        if (extension > 0) {
+            name = name.substring(0, extension);
+        }
+        return name.replaceFirst("^\\d+\\s*[-.]?\\s*", "");
+    }
+    
+    private String generateStreamUrl(String artistName, String albumTitle, String trackTitle, int trackNumber) {
+        // Look the file up in the media index, refreshed at the start of every synchronization
+        // Prefers FLAC files since that's what we have in the media folder
+        String path = mediaIndex.find(artistName, albumTitle, trackNumber);
+        if (path != null) {
+            logger.debug("Found audio file at path: {}", path);
+            return path;
+        }
+        
+        // Format track number as two digits (e.g., 1 -> 01, 10 -> 10)
+        String formattedTrackNumber = String.format("%02d", trackNumber);
+        String basePath = mediaRoot + "/" + sanitizeArtistName(artistName) + "/" + albumTitle + "/" + formattedTrackNumber + " - " + trackTitle;
         
         // Default to flac if no file is found (since that's what we have in the folder)
         logger.warn("No audio file found for track: {}, defaulting to .flac extension", trackTitle);
@@ -378,30 +969,103 @@ public class SynchronizationService {
     }
     
     /**
-     * Synchronizes only recently updated artists.
+     * A downloaded album whose tracks to synchronize, and the payload hash to store once they are
      */
-    private void syncRecentlyUpdatedArtists() {
-        logger.info("Checking for recently updated artists...");
-        // Implementation would fetch only recently updated artists
-        // This is a placeholder for the actual implementation
+    private record AlbumToSync(Album album, long lidarrHash) {
     }
-    
+
     /**
-     * Synchronizes only recently updated albums.
+     * Open addressing hash set of longs, without boxing. Not thread-safe,
+     * but safe to read from several threads once filled.
      */
-    private void syncRecentlyUpdatedAlbums() {
-        logger.info("Checking for recently updated albums...");
-        // Implementation would fetch only recently updated albums
-        // This is a placeholder for the actual implementation
+    private static final class LongHashSet {
+
+        private static final long FREE = Long.MIN_VALUE;
+
+        private long[] keys = newTable(1024);
+        private int size;
+
+        void add(long key) {
+            if (key == FREE) {
+                throw new IllegalArgumentException("Unsupported key");
+            }
+            if ((size + 1) * 2 > keys.length) {
+                long[] old = keys;
+                keys = newTable(old.length * 2);
+                size = 0;
+                for (long k : old) {
+                    if (k != FREE) {
+                        add(k);
+                    }
+                }
+            }
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (keys[i] != FREE) {
+                if (keys[i] == key) {
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            size++;
+        }
+
+        boolean contains(long key) {
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (keys[i] != FREE) {
+                if (keys[i] == key) {
+                    return true;
+                }
+                i = (i + 1) & mask;
+            }
+            return false;
+        }
+
+        int size() {
+            return size;
+        }
+
+        private static long[] newTable(int capacity) {
+            long[] table = new long[capacity];
+            Arrays.fill(table, FREE);
+            return table;
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
     }
-    
+
     /**
-     * Synchronizes only recently updated tracks.
+     * Counters of a running synchronization, updated by all workers
      */
-    private void syncRecentlyUpdatedTracks() {
-        logger.info("Checking for recently updated tracks...");
-        // Implementation would fetch only recently updated tracks
-        // This is a placeholder for the actual implementation
+    private static final class SyncProgress {
+
+        private final long startedAt = System.currentTimeMillis();
+        private volatile int artistCount;
+        private final AtomicInteger artistsDone = new AtomicInteger();
+        private final AtomicInteger artistsUpdated = new AtomicInteger();
+        private final AtomicInteger albumsDone = new AtomicInteger();
+        private final AtomicInteger albumsCreated = new AtomicInteger();
+        private final AtomicInteger albumsChanged = new AtomicInteger();
+        private final AtomicInteger albumsUnchanged = new AtomicInteger();
+        private final AtomicInteger albumsUpdated = new AtomicInteger();
+        private final AtomicInteger tracksCreated = new AtomicInteger();
+        private final AtomicInteger tracksUpdated = new AtomicInteger();
+        private final AtomicInteger requests = new AtomicInteger();
+
+        @Override
+        public String toString() {
+            double seconds = Math.max(1, System.currentTimeMillis() - startedAt) / 1000.0;
+            return String.format("%d/%d artists (%d changed), %d albums' tracks, %d new albums, %d changed albums, "
+                            + "%d unchanged albums, %d albums newly downloaded or removed, %d new tracks, "
+                            + "%d tracks with moved or removed files, %d Lidarr requests in %.1f s (%.1f requests/s)",
+                    artistsDone.get(), artistCount, artistsUpdated.get(), albumsDone.get(), albumsCreated.get(),
+                    albumsChanged.get(), albumsUnchanged.get(), albumsUpdated.get(), tracksCreated.get(),
+                    tracksUpdated.get(), requests.get(), seconds, requests.get() / seconds);
+        }
     }
-    
 }
@@ -0,0 +1,211 @@
+package com.example.spotifyapi.service;
+
+import com.example.spotifyapi.model.Track;
+import com.example.spotifyapi.model.TrackWaveform;
+import com.example.spotifyapi.repository.TrackWaveformRepository;
+import com.example.spotifyapi.streaming.PcmDecoder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes and stores the waveform peaks of tracks.
+ *
+ * Each file is decoded once, in a single streaming pass, on a small pool of
+ * low-priority worker threads that is separate from the request threads.
+ * Concurrent requests for the same track share one computation.
+ */
+@Service
+public class WaveformService {
+
+    private static final Logger logger = LoggerFactory.getLogger(WaveformService.class);
+
+    // Peaks are taken from a mono downmix at a low rate, plenty for a seek bar
+    private static final int DECODE_SAMPLE_RATE = 11025;
+    // Samples folded into one min/max pair while decoding
+    private static final int BLOCK_SAMPLES = 64;
+
+    private final TrackWaveformRepository waveformRepository;
+    private final AudioInfoService audioInfoService;
+    private final PcmDecoder pcmDecoder;
+    private final int buckets;
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentHashMap<Long, CompletableFuture<TrackWaveform>> inProgress = new ConcurrentHashMap<>();
+
+    @Autowired
+    public WaveformService(
+            TrackWaveformRepository waveformRepository,
+            AudioInfoService audioInfoService,
+            PcmDecoder pcmDecoder,
+            @Value("${waveform.buckets:2048}") int buckets,
+            @Value("${waveform.threads:2}") int threads,
+            @Value("${waveform.queue-size:64}") int queueSize) {
+        this.waveformRepository = waveformRepository;
+        this.audioInfoService = audioInfoService;
+        this.pcmDecoder = pcmDecoder;
+        this.buckets = buckets;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "waveform-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Get the waveform of a track, computing it in the background if it is missing or stale.
+     * The future fails with a RejectedExecutionException if the worker queue is full,
+     * and with an IllegalStateException if ffmpeg is not available.
+     *
+     * @param track The track entity
+     * @return The waveform, once available
+     */
+    public CompletableFuture<TrackWaveform> getWaveform(Track track) {
+        Path path = audioInfoService.getAudioFilePath(track);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        Optional<TrackWaveform> stored = waveformRepository.findById(track.getId());
+        if (stored.isPresent() && stored.get().getBuckets() == buckets
+                && stored.get().getFileSize() == attributes.size()
+                && stored.get().getLastModified() == attributes.lastModifiedTime().toMillis()) {
+            return CompletableFuture.completedFuture(stored.get());
+        }
+        if (!pcmDecoder.isAvailable()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("ffmpeg is not available to decode audio"));
+        }
+
+        CompletableFuture<TrackWaveform> created = new CompletableFuture<>();
+        CompletableFuture<TrackWaveform> running = inProgress.putIfAbsent(track.getId(), created);
+        if (running != null) {
+            return running;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    created.complete(computeWaveform(track.getId(), path, attributes));
+                } catch (Exception e) {
+                    created.completeExceptionally(e);
+                } finally {
+                    inProgress.remove(track.getId(), created);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inProgress.remove(track.getId(), created);
+            created.completeExceptionally(e);
+        }
+        return created;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private TrackWaveform computeWaveform(Long trackId, Path path, BasicFileAttributes attributes) throws IOException {
+        long started = System.currentTimeMillis();
+        BlockPeaks blocks = new BlockPeaks();
+        pcmDecoder.decode(path, DECODE_SAMPLE_RATE, 1, blocks::add);
+        byte[] peaks = blocks.toBuckets(buckets);
+
+        TrackWaveform waveform = waveformRepository.save(new TrackWaveform(
+                trackId, attributes.size(), attributes.lastModifiedTime().toMillis(), buckets, peaks));
+        logger.debug("Computed waveform of track {} in {} ms", trackId, System.currentTimeMillis() - started);
+        return waveform;
+    }
+
+    /**
+     * Min/max of every block of decoded samples, folded into the final buckets at the end
+     * because the exact sample count is only known once decoding has finished
+     */
+    private static final class BlockPeaks {
+        private float[] minima = new float[4096];
+        private float[] maxima = new float[4096];
+        private int blocks;
+        private int samplesInBlock;
+        private float min = Float.MAX_VALUE;
+        private float max = -Float.MAX_VALUE;
+
+        void add(float[] samples, int count) {
+            for (int i = 0; i < count; i++) {
+                float sample = samples[i];
+                if (sample < min) {
+                    min = sample;
+                }
+                if (sample > max) {
+                    max = sample;
+                }
+                if (++samplesInBlock == BLOCK_SAMPLES) {
+                    closeBlock();
+                }
+            }
+        }
+
+        private void closeBlock() {
+            if (blocks == minima.length) {
+                minima = Arrays.copyOf(minima, blocks * 2);
+                maxima = Arrays.copyOf(maxima, blocks * 2);
+            }
+            minima[blocks] = min;
+            maxima[blocks] = max;
+            blocks++;
+            samplesInBlock = 0;
+            min = Float.MAX_VALUE;
+            max = -Float.MAX_VALUE;
+        }
+
+        byte[] toBuckets(int buckets) {
+            if (samplesInBlock > 0) {
+                closeBlock();
+            }
+            byte[] peaks = new byte[buckets * 2];
+            if (blocks == 0) {
+                return peaks;
+            }
+            for (int bucket = 0; bucket < buckets; bucket++) {
+                int first = (int) ((long) bucket * blocks / buckets);
+                int last = Math.max(first + 1, (int) ((long) (bucket + 1) * blocks / buckets));
+                float bucketMin = Float.MAX_VALUE;
+                float bucketMax = -Float.MAX_VALUE;
+                for (int block = first; block < last; block++) {
+                    bucketMin = Math.min(bucketMin, minima[block]);
+                    bucketMax = Math.max(bucketMax, maxima[block]);
+                }
+                peaks[bucket * 2] = toByte(bucketMin);
+                peaks[bucket * 2 + 1] = toByte(bucketMax);
+            }
+            return peaks;
+        }
+
+        private static byte toByte(float sample) {
+            return (byte) Math.round(Math.max(-1f, Math.min(1f, sample)) * 127);
+        }
+    }
+}
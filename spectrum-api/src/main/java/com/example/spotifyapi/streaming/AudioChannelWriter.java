@@ -0,0 +1,129 @@
+package com.example.spotifyapi.streaming;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes regions of local audio files to the servlet response without
+ * pushing the audio bytes through freshly allocated heap buffers.
+ *
+ * When the connector supports sendfile (Tomcat NIO without TLS) the region is
+ * handed to Tomcat, which transfers it from the page cache straight to the socket.
+ * Otherwise the bytes are copied through a small pool of reusable buffers,
+ * so a stream does not allocate per chunk.
+ */
+@Component
+public class AudioChannelWriter {
+
+    // Request attributes understood by Tomcat's Http11Processor
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final BlockingQueue<ByteBuffer> bufferPool;
+    private final int bufferSize;
+    private final boolean sendfileEnabled;
+
+    public AudioChannelWriter(
+            @Value("${streaming.buffer-size:65536}") int bufferSize,
+            @Value("${streaming.buffer-pool-size:32}") int bufferPoolSize,
+            @Value("${streaming.sendfile-enabled:true}") boolean sendfileEnabled) {
+        this.bufferSize = bufferSize;
+        this.bufferPool = new ArrayBlockingQueue<>(bufferPoolSize);
+        this.sendfileEnabled = sendfileEnabled;
+    }
+
+    /**
+     * Ask the servlet container to send a file region with sendfile.
+     * The caller must already have set the status and Content-Length, and must
+     * not write to the response body when this returns true.
+     *
+     * @param request The current request
+     * @param file The file to send
+     * @param start Offset of the first byte to send
+     * @param length Number of bytes to send
+     * @return true if the container will send the region, false if the caller has to write it
+     */
+    public boolean trySendfile(HttpServletRequest request, Path file, long start, long length) {
+        if (!sendfileEnabled || !Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            return false;
+        }
+        request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+        request.setAttribute(SENDFILE_START, start);
+        request.setAttribute(SENDFILE_END, start + length);
+        return true;
+    }
+
+    /**
+     * Copy a region of a file channel to an output stream using positional reads,
+     * so the same channel can be shared by concurrent requests.
+     *
+     * @param channel The source channel
+     * @param start Offset of the first byte to copy
+     * @param length Number of bytes to copy
+     * @param out The destination stream
+     * @throws IOException If reading or writing fails, or the file is shorter than expected
+     */
+    public void write(FileChannel channel, long start, long length, OutputStream out) throws IOException {
+        ByteBuffer buffer = acquire();
+        try {
+            long position = start;
+            long remaining = length;
+            while (remaining > 0) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), remaining));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new EOFException("Audio file ended at byte " + position + " before the requested range");
+                }
+                out.write(buffer.array(), 0, read);
+                position += read;
+                remaining -= read;
+            }
+        } finally {
+            release(buffer);
+        }
+    }
+
+    /**
+     * Copy a stream (used for remote audio URLs) through a pooled buffer.
+     *
+     * @param in The source stream
+     * @param out The destination stream
+     * @throws IOException If reading or writing fails
+     */
+    public void copy(InputStream in, OutputStream out) throws IOException {
+        ByteBuffer buffer = acquire();
+        try {
+            byte[] bytes = buffer.array();
+            int read;
+            while ((read = in.read(bytes)) != -1) {
+                out.write(bytes, 0, read);
+            }
+        } finally {
+            release(buffer);
+        }
+    }
+
+    private ByteBuffer acquire() {
+        ByteBuffer buffer = bufferPool.poll();
+        return buffer != null ? buffer : ByteBuffer.allocate(bufferSize);
+    }
+
+    private void release(ByteBuffer buffer) {
+        // Dropped if the pool is already full
+        bufferPool.offer(buffer);
+    }
+}
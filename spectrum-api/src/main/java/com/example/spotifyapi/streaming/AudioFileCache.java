@@ -0,0 +1,287 @@
+package com.example.spotifyapi.streaming;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of resolved audio files keyed by track ID.
+ *
+ * Each entry holds the resolved path, size, modification time and an open
+ * read-only FileChannel that is shared by all requests for the track, so a
+ * seek on a network share does not pay for path checks and a new file handle.
+ * Entries are evicted least-recently-used when the cache is full, after being
+ * idle for a while, when the file's mtime changes, or when the library is
+ * synchronized.
+ */
+@Component
+public class AudioFileCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(AudioFileCache.class);
+
+    private final int maxEntries;
+    private final long idleTimeoutMs;
+    private final long revalidateAfterMs;
+
+    // Access-ordered so the eldest entry is the least recently used one
+    private final LinkedHashMap<Long, AudioFile> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    public AudioFileCache(
+            @Value("${streaming.file-cache.max-entries:256}") int maxEntries,
+            @Value("${streaming.file-cache.idle-timeout-seconds:300}") long idleTimeoutSeconds,
+            @Value("${streaming.file-cache.revalidate-after-seconds:30}") long revalidateAfterSeconds) {
+        this.maxEntries = maxEntries;
+        this.idleTimeoutMs = TimeUnit.SECONDS.toMillis(idleTimeoutSeconds);
+        this.revalidateAfterMs = TimeUnit.SECONDS.toMillis(revalidateAfterSeconds);
+    }
+
+    /**
+     * Get the cached file for a track, opening it on a miss.
+     * The returned file must be released once the caller is done with its channel.
+     *
+     * @param trackId The track ID
+     * @param pathResolver Resolves the track's file path on a cache miss
+     * @return The retained audio file
+     * @throws IOException If the file does not exist or cannot be opened
+     */
+    public AudioFile acquire(Long trackId, Supplier<Path> pathResolver) throws IOException {
+        long now = System.currentTimeMillis();
+        List<AudioFile> evicted = new ArrayList<>();
+        AudioFile audioFile;
+        boolean revalidate = false;
+
+        synchronized (entries) {
+            audioFile = entries.get(trackId);
+            if (audioFile != null) {
+                audioFile.lastAccessed = now;
+                audioFile.retain();
+                // Only one request revalidates, the others keep using the handle meanwhile
+                if (now - audioFile.lastValidated > revalidateAfterMs) {
+                    audioFile.lastValidated = now;
+                    revalidate = true;
+                }
+            }
+        }
+
+        // Read the attributes outside the lock, a slow share must not block other tracks
+        if (revalidate && !audioFile.isUnchanged()) {
+            synchronized (entries) {
+                // Unless it was replaced or invalidated meanwhile
+                if (entries.get(trackId) == audioFile) {
+                    entries.remove(trackId);
+                    evicted.add(audioFile);
+                }
+            }
+            audioFile.close();
+            audioFile = null;
+        }
+
+        if (audioFile == null) {
+            // Open outside the lock, a slow share must not block other tracks
+            AudioFile opened = AudioFile.open(pathResolver.get());
+            synchronized (entries) {
+                AudioFile raced = entries.get(trackId);
+                if (raced != null) {
+                    // Another request opened the same track first, use that handle
+                    raced.lastAccessed = now;
+                    raced.retain();
+                    evicted.add(opened);
+                    audioFile = raced;
+                } else {
+                    opened.retain();
+                    entries.put(trackId, opened);
+                    audioFile = opened;
+                    Iterator<AudioFile> eldest = entries.values().iterator();
+                    while (entries.size() > maxEntries && eldest.hasNext()) {
+                        evicted.add(eldest.next());
+                        eldest.remove();
+                    }
+                }
+            }
+        }
+
+        evicted.forEach(AudioFile::evict);
+        return audioFile;
+    }
+
+    /**
+     * Drop a track from the cache, e.g. after its file was moved
+     *
+     * @param trackId The track ID
+     */
+    public void invalidate(Long trackId) {
+        AudioFile audioFile;
+        synchronized (entries) {
+            audioFile = entries.remove(trackId);
+        }
+        if (audioFile != null) {
+            audioFile.evict();
+        }
+    }
+
+    /**
+     * Drop every cached file, e.g. after a library synchronization
+     */
+    public void invalidateAll() {
+        List<AudioFile> evicted;
+        synchronized (entries) {
+            evicted = new ArrayList<>(entries.values());
+            entries.clear();
+        }
+        evicted.forEach(AudioFile::evict);
+    }
+
+    // Close handles of tracks nobody has streamed for a while
+    @Scheduled(fixedRate = 60000)
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        List<AudioFile> evicted = new ArrayList<>();
+        synchronized (entries) {
+            entries.values().removeIf(audioFile -> {
+                if (now - audioFile.lastAccessed > idleTimeoutMs) {
+                    evicted.add(audioFile);
+                    return true;
+                }
+                return false;
+            });
+        }
+        evicted.forEach(AudioFile::evict);
+        if (!evicted.isEmpty()) {
+            logger.debug("Closed {} idle audio file handles", evicted.size());
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        invalidateAll();
+    }
+
+    /**
+     * A resolved audio file with its shared read-only channel.
+     * The channel is closed once the file is evicted and no request holds it anymore.
+     */
+    public static final class AudioFile implements AutoCloseable {
+
+        private final Path path;
+        private final long size;
+        private final long lastModified;
+        private final FileChannel channel;
+
+        private volatile long lastAccessed;
+        private volatile long lastValidated;
+        private int references;
+        private boolean evicted;
+
+        private AudioFile(Path path, long size, long lastModified, FileChannel channel) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.channel = channel;
+            this.lastAccessed = System.currentTimeMillis();
+            this.lastValidated = this.lastAccessed;
+        }
+
+        static AudioFile open(Path path) throws IOException {
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (IOException e) {
+                throw new IOException("Could not read audio file: " + path, e);
+            }
+            if (!attributes.isRegularFile()) {
+                throw new IOException("Could not read audio file: " + path);
+            }
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+            return new AudioFile(path, attributes.size(), attributes.lastModifiedTime().toMillis(), channel);
+        }
+
+        /**
+         * Open a file that is not held by the cache, e.g. a cached transcode.
+         * Closing it closes its channel.
+         *
+         * @param path The file to open
+         * @return The retained audio file
+         * @throws IOException If the file does not exist or cannot be opened
+         */
+        public static AudioFile openDetached(Path path) throws IOException {
+            AudioFile audioFile = open(path);
+            audioFile.evicted = true;
+            audioFile.retain();
+            return audioFile;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public FileChannel getChannel() {
+            return channel;
+        }
+
+        private boolean isUnchanged() {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                boolean unchanged = attributes.size() == size
+                        && attributes.lastModifiedTime().toMillis() == lastModified;
+                lastValidated = System.currentTimeMillis();
+                return unchanged;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        private synchronized void retain() {
+            references++;
+        }
+
+        private synchronized void evict() {
+            evicted = true;
+            closeIfUnused();
+        }
+
+        /**
+         * Release the file once the caller is done with it
+         */
+        @Override
+        public synchronized void close() {
+            references--;
+            closeIfUnused();
+        }
+
+        private void closeIfUnused() {
+            if (evicted && references <= 0 && channel.isOpen()) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    logger.warn("Error closing audio file {}: {}", path, e.getMessage());
+                }
+            }
+        }
+    }
+}
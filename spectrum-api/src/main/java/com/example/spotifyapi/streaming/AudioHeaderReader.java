@@ -0,0 +1,409 @@
+package com.example.spotifyapi.streaming;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads stream properties and tags from the headers of FLAC and MP3 files.
+ *
+ * Only the blocks that are needed are read with positional reads on the
+ * channel: STREAMINFO and VORBIS_COMMENT for FLAC; the ID3v2 text frames,
+ * the first frame header and its Xing/Info, LAME or VBRI header for MP3.
+ * Embedded pictures and the audio itself are skipped, so a file costs a few KB.
+ */
+public final class AudioHeaderReader {
+
+    private static final int FLAC_STREAMINFO = 0;
+    private static final int FLAC_VORBIS_COMMENT = 4;
+
+    // Upper bound for tag blocks that are read into memory
+    private static final int MAX_TAG_BLOCK = 256 * 1024;
+    // How far past the ID3v2 tag the first MPEG frame is searched for
+    private static final int FRAME_SEARCH_LENGTH = 8192;
+
+    private static final Map<String, String> ID3_TEXT_FRAMES = Map.ofEntries(
+            Map.entry("TIT2", "title"), Map.entry("TT2", "title"),
+            Map.entry("TPE1", "artist"), Map.entry("TP1", "artist"),
+            Map.entry("TPE2", "albumartist"), Map.entry("TP2", "albumartist"),
+            Map.entry("TALB", "album"), Map.entry("TAL", "album"),
+            Map.entry("TRCK", "tracknumber"), Map.entry("TRK", "tracknumber"),
+            Map.entry("TPOS", "discnumber"), Map.entry("TPA", "discnumber"),
+            Map.entry("TYER", "date"), Map.entry("TDRC", "date"), Map.entry("TYE", "date"),
+            Map.entry("TCON", "genre"), Map.entry("TCO", "genre"));
+
+    private AudioHeaderReader() {
+    }
+
+    /**
+     * Stream properties and tags of an audio file.
+     * Tag keys are lower-case Vorbis comment names (title, artist, album, tracknumber, date, ...).
+     */
+    public static final class AudioInfo {
+        private String format;
+        private int sampleRate;
+        private int bitsPerSample;
+        private int channels;
+        private long durationMs;
+        private int bitrateKbps;
+        private String encoder;
+        private final Map<String, String> tags = new LinkedHashMap<>();
+
+        public String getFormat() {
+            return format;
+        }
+
+        public int getSampleRate() {
+            return sampleRate;
+        }
+
+        /**
+         * @return The bit depth, 0 for lossy formats
+         */
+        public int getBitsPerSample() {
+            return bitsPerSample;
+        }
+
+        public int getChannels() {
+            return channels;
+        }
+
+        public long getDurationMs() {
+            return durationMs;
+        }
+
+        /**
+         * @return The average bitrate over the audio data
+         */
+        public int getBitrateKbps() {
+            return bitrateKbps;
+        }
+
+        /**
+         * @return The encoder named in the file, or null
+         */
+        public String getEncoder() {
+            return encoder;
+        }
+
+        public Map<String, String> getTags() {
+            return tags;
+        }
+    }
+
+    /**
+     * Read the headers of a FLAC or MP3 file
+     *
+     * @param channel An open channel of the file, only positional reads are used
+     * @param fileSize The size of the file
+     * @return The stream properties and tags
+     * @throws IOException If the file cannot be read or is neither FLAC nor MP3
+     */
+    public static AudioInfo read(FileChannel channel, long fileSize) throws IOException {
+        ByteBuffer start = readAt(channel, 0, (int) Math.min(10, fileSize));
+        AudioInfo info = new AudioInfo();
+        if (FlacFormat.isFlac(start)) {
+            readFlac(channel, fileSize, info);
+        } else {
+            readMp3(channel, fileSize, start, info);
+        }
+        return info;
+    }
+
+    private static void readFlac(FileChannel channel, long fileSize, AudioInfo info) throws IOException {
+        info.format = "flac";
+        FlacFormat.Header header = null;
+        long position = 4;
+        boolean last = false;
+        while (!last) {
+            if (position + 4 > fileSize) {
+                throw new IOException("Truncated FLAC metadata");
+            }
+            int blockHeader = readAt(channel, position, 4).getInt(0);
+            last = (blockHeader >>> 31) != 0;
+            int type = (blockHeader >>> 24) & 0x7F;
+            int length = blockHeader & 0xFFFFFF;
+            long body = position + 4;
+            if (type == FLAC_STREAMINFO && length >= 34) {
+                ByteBuffer streamInfo = readAt(channel, body, 34);
+                if (streamInfo.limit() < 34) {
+                    throw new IOException("Truncated FLAC metadata");
+                }
+                header = new FlacFormat.Header();
+                FlacFormat.readStreamInfo(streamInfo, 0, header);
+            } else if (type == FLAC_VORBIS_COMMENT && length <= MAX_TAG_BLOCK) {
+                readVorbisComment(readAt(channel, body, length), info);
+            }
+            position = body + length;
+        }
+        if (header == null) {
+            throw new IOException("FLAC stream without STREAMINFO");
+        }
+
+        info.sampleRate = header.getSampleRate();
+        info.bitsPerSample = header.getBitsPerSample();
+        info.channels = header.getChannels();
+        if (header.getSampleRate() > 0 && header.getTotalSamples() > 0) {
+            info.durationMs = header.getTotalSamples() * 1000 / header.getSampleRate();
+        }
+        if (info.durationMs > 0) {
+            info.bitrateKbps = (int) ((fileSize - position) * 8 / info.durationMs);
+        }
+    }
+
+    private static void readVorbisComment(ByteBuffer block, AudioInfo info) {
+        block.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            int vendorLength = block.getInt();
+            byte[] vendor = new byte[vendorLength];
+            block.get(vendor);
+            info.encoder = new String(vendor, StandardCharsets.UTF_8);
+            int count = block.getInt();
+            for (int i = 0; i < count; i++) {
+                byte[] comment = new byte[block.getInt()];
+                block.get(comment);
+                String entry = new String(comment, StandardCharsets.UTF_8);
+                int separator = entry.indexOf('=');
+                if (separator > 0) {
+                    info.tags.putIfAbsent(entry.substring(0, separator).toLowerCase(Locale.ROOT), entry.substring(separator + 1));
+                }
+            }
+        } catch (RuntimeException e) {
+            // A malformed comment block only loses the remaining tags
+        }
+    }
+
+    private static void readMp3(FileChannel channel, long fileSize, ByteBuffer start, AudioInfo info) throws IOException {
+        info.format = "mp3";
+        int tagLength = Mp3Format.id3v2Length(start);
+        if (tagLength > 0) {
+            readId3v2(channel, start, tagLength, fileSize, info);
+        }
+
+        // Locate the first frame whose header is followed by another one
+        ByteBuffer frames = readAt(channel, tagLength, (int) Math.min(FRAME_SEARCH_LENGTH, fileSize - tagLength));
+        Mp3Format.FrameHeader frame = null;
+        int frameOffset = 0;
+        for (int i = 0; i + 4 <= frames.limit(); i++) {
+            Mp3Format.FrameHeader candidate = Mp3Format.parseFrameHeader(frames.getInt(i));
+            if (candidate == null) {
+                continue;
+            }
+            int next = i + candidate.getFrameLength();
+            if (next + 4 > frames.limit() || Mp3Format.parseFrameHeader(frames.getInt(next)) != null) {
+                frame = candidate;
+                frameOffset = i;
+                break;
+            }
+        }
+        if (frame == null) {
+            throw new IOException("No MPEG audio frames found");
+        }
+
+        info.sampleRate = frame.getSampleRate();
+        info.channels = frame.getChannels();
+        long audioStart = tagLength + frameOffset;
+        long audioEnd = fileSize;
+        if (fileSize - audioStart >= 128) {
+            ByteBuffer trailer = readAt(channel, fileSize - 128, 128);
+            if (trailer.get(0) == 'T' && trailer.get(1) == 'A' && trailer.get(2) == 'G') {
+                audioEnd -= 128;
+                if (info.tags.isEmpty()) {
+                    readId3v1(trailer, info);
+                }
+            }
+        }
+
+        if (!readVbrHeader(frames, frameOffset, frame, audioEnd - audioStart, info)) {
+            // Constant bitrate: the duration follows from the audio length
+            info.bitrateKbps = frame.getBitrateKbps();
+            info.durationMs = (audioEnd - audioStart) * 8 / frame.getBitrateKbps();
+        }
+    }
+
+    /**
+     * Read a Xing/Info header (with an optional LAME extension) or a VBRI header from the first frame
+     *
+     * @return true if one was found and the duration and bitrate were set from it
+     */
+    private static boolean readVbrHeader(ByteBuffer frames, int frameOffset, Mp3Format.FrameHeader frame,
+                                         long audioLength, AudioInfo info) {
+        int sideInfo = frame.isMpeg1() ? (frame.getChannels() == 1 ? 17 : 32) : (frame.getChannels() == 1 ? 9 : 17);
+        int xing = frameOffset + 4 + sideInfo;
+        long frameCount = -1;
+        long byteCount = -1;
+        long paddingSamples = 0;
+
+        if (xing + 8 <= frames.limit() && (matches(frames, xing, "Xing") || matches(frames, xing, "Info"))) {
+            int flags = frames.getInt(xing + 4);
+            int position = xing + 8;
+            if ((flags & 1) != 0 && position + 4 <= frames.limit()) {
+                frameCount = frames.getInt(position) & 0xFFFFFFFFL;
+                position += 4;
+            }
+            if ((flags & 2) != 0 && position + 4 <= frames.limit()) {
+                byteCount = frames.getInt(position) & 0xFFFFFFFFL;
+                position += 4;
+            }
+            if ((flags & 4) != 0) {
+                position += 100;
+            }
+            if ((flags & 8) != 0) {
+                position += 4;
+            }
+            // LAME tag: 9 byte version string, encoder delay and padding 12 bits each at offset 21
+            if (position + 24 <= frames.limit() && (matches(frames, position, "LAME") || matches(frames, position, "Lavc"))) {
+                byte[] version = new byte[9];
+                frames.get(position, version);
+                info.encoder = new String(version, StandardCharsets.ISO_8859_1).trim();
+                int delays = ((frames.get(position + 21) & 0xFF) << 16)
+                        | ((frames.get(position + 22) & 0xFF) << 8)
+                        | (frames.get(position + 23) & 0xFF);
+                paddingSamples = (delays >>> 12) + (delays & 0xFFF);
+            }
+        } else {
+            int vbri = frameOffset + 36;
+            if (vbri + 18 <= frames.limit() && matches(frames, vbri, "VBRI")) {
+                byteCount = frames.getInt(vbri + 10) & 0xFFFFFFFFL;
+                frameCount = frames.getInt(vbri + 14) & 0xFFFFFFFFL;
+            }
+        }
+        if (frameCount <= 0) {
+            return false;
+        }
+
+        long samples = Math.max(0, frameCount * frame.getSamplesPerFrame() - paddingSamples);
+        info.durationMs = samples * 1000 / frame.getSampleRate();
+        long bytes = byteCount > 0 ? byteCount : audioLength;
+        if (info.durationMs > 0) {
+            info.bitrateKbps = (int) (bytes * 8 / info.durationMs);
+        }
+        return true;
+    }
+
+    private static void readId3v2(FileChannel channel, ByteBuffer start, int tagLength, long fileSize, AudioInfo info)
+            throws IOException {
+        int version = start.get(3);
+        boolean extendedHeader = (start.get(5) & 0x40) != 0;
+        long position = 10;
+        long end = Math.min(tagLength, fileSize);
+        if (extendedHeader && version >= 3) {
+            ByteBuffer size = readAt(channel, position, 4);
+            position += version == 4 ? Mp3Format.syncsafe(size, 0) : size.getInt(0) + 4;
+        }
+
+        int headerLength = version == 2 ? 6 : 10;
+        while (position + headerLength <= end) {
+            ByteBuffer frameHeader = readAt(channel, position, headerLength);
+            if (frameHeader.get(0) == 0) {
+                break; // Padding
+            }
+            String id;
+            int size;
+            if (version == 2) {
+                id = new String(new byte[] {frameHeader.get(0), frameHeader.get(1), frameHeader.get(2)}, StandardCharsets.ISO_8859_1);
+                size = ((frameHeader.get(3) & 0xFF) << 16) | ((frameHeader.get(4) & 0xFF) << 8) | (frameHeader.get(5) & 0xFF);
+            } else {
+                byte[] idBytes = new byte[4];
+                frameHeader.get(0, idBytes);
+                id = new String(idBytes, StandardCharsets.ISO_8859_1);
+                size = version == 4 ? Mp3Format.syncsafe(frameHeader, 4) : frameHeader.getInt(4);
+            }
+            long body = position + headerLength;
+            if (size <= 0 || body + size > end) {
+                break;
+            }
+            String key = ID3_TEXT_FRAMES.get(id);
+            if (key != null && size <= MAX_TAG_BLOCK) {
+                String value = decodeId3Text(readAt(channel, body, size));
+                if (!value.isEmpty()) {
+                    info.tags.putIfAbsent(key, value);
+                }
+            } else if ((id.equals("TXXX") || id.equals("TXX")) && size <= MAX_TAG_BLOCK) {
+                // User-defined text: description, then value
+                String[] parts = decodeId3Text(readAt(channel, body, size), true).split("\u0000", 2);
+                if (parts.length == 2 && !parts[0].isEmpty()) {
+                    info.tags.putIfAbsent(parts[0].toLowerCase(Locale.ROOT), parts[1]);
+                }
+            } else if ((id.equals("TSSE") || id.equals("TSS")) && size <= MAX_TAG_BLOCK && info.encoder == null) {
+                info.encoder = decodeId3Text(readAt(channel, body, size));
+            }
+            position = body + size;
+        }
+    }
+
+    private static String decodeId3Text(ByteBuffer frame) {
+        String text = decodeId3Text(frame, false);
+        int terminator = text.indexOf('\u0000');
+        return terminator >= 0 ? text.substring(0, terminator) : text;
+    }
+
+    private static String decodeId3Text(ByteBuffer frame, boolean keepSeparators) {
+        if (frame.limit() < 1) {
+            return "";
+        }
+        Charset charset = switch (frame.get(0)) {
+            case 1 -> StandardCharsets.UTF_16;
+            case 2 -> StandardCharsets.UTF_16BE;
+            case 3 -> StandardCharsets.UTF_8;
+            default -> StandardCharsets.ISO_8859_1;
+        };
+        byte[] bytes = new byte[frame.limit() - 1];
+        frame.get(1, bytes);
+        String text = new String(bytes, charset);
+        // Drop the terminator and any padding
+        int end = text.length();
+        while (end > 0 && text.charAt(end - 1) == '\u0000') {
+            end--;
+        }
+        // A UTF-16 value after a separator carries its own byte order mark
+        String trimmed = text.substring(0, end);
+        return keepSeparators ? trimmed.replace("\uFEFF", "") : trimmed;
+    }
+
+    private static void readId3v1(ByteBuffer tag, AudioInfo info) {
+        putId3v1Field(tag, 3, 30, "title", info);
+        putId3v1Field(tag, 33, 30, "artist", info);
+        putId3v1Field(tag, 63, 30, "album", info);
+        putId3v1Field(tag, 93, 4, "date", info);
+        // ID3v1.1 keeps the track number in the last byte of the comment
+        if (tag.get(125) == 0 && tag.get(126) != 0) {
+            info.tags.put("tracknumber", String.valueOf(tag.get(126) & 0xFF));
+        }
+    }
+
+    private static void putId3v1Field(ByteBuffer tag, int offset, int length, String key, AudioInfo info) {
+        byte[] bytes = new byte[length];
+        tag.get(offset, bytes);
+        String value = new String(bytes, StandardCharsets.ISO_8859_1).replace("\u0000", "").trim();
+        if (!value.isEmpty()) {
+            info.tags.put(key, value);
+        }
+    }
+
+    private static boolean matches(ByteBuffer buffer, int position, String marker) {
+        for (int i = 0; i < marker.length(); i++) {
+            if (buffer.get(position + i) != marker.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ByteBuffer readAt(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.max(0, length));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
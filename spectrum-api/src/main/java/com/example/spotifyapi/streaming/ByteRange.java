@@ -0,0 +1,146 @@
+package com.example.spotifyapi.streaming;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A satisfiable byte range of a file, with inclusive first and last positions,
+ * plus the parser for RFC 7233 "Range: bytes=..." headers.
+ */
+public final class ByteRange {
+
+    private static final String BYTES_UNIT = "bytes=";
+
+    private final long start;
+    private final long end;
+
+    public ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long length() {
+        return end - start + 1;
+    }
+
+    /**
+     * @param contentLength The total length of the file
+     * @return The Content-Range header value for this range
+     */
+    public String contentRange(long contentLength) {
+        return "bytes " + start + "-" + end + "/" + contentLength;
+    }
+
+    /**
+     * Parse a Range header against a file of the given length.
+     * Supports "start-end", open-ended "start-" and suffix "-length" specs, and any
+     * number of comma-separated specs. Overlapping or adjacent ranges are coalesced,
+     * and together they are shortened to at most maxRequestBytes: the range crossing
+     * the limit is truncated and the ranges after it are dropped.
+     *
+     * @param header The Range header value
+     * @param contentLength The total length of the file
+     * @param maxRequestBytes The largest number of bytes served for the whole request, or 0 for no limit
+     * @return The satisfiable ranges in ascending order; empty if none of them is satisfiable
+     * @throws IllegalArgumentException If the header is malformed or uses another unit,
+     *         in which case RFC 7233 says it must be ignored
+     */
+    public static List<ByteRange> parse(String header, long contentLength, long maxRequestBytes) {
+        String value = header.trim();
+        if (!value.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length())) {
+            throw new IllegalArgumentException("Unsupported range unit: " + header);
+        }
+
+        List<ByteRange> ranges = new ArrayList<>();
+        for (String spec : value.substring(BYTES_UNIT.length()).split(",")) {
+            ByteRange range = parseSpec(spec.trim(), contentLength);
+            if (range != null) {
+                ranges.add(range);
+            }
+        }
+
+        List<ByteRange> merged = coalesce(ranges);
+        if (maxRequestBytes <= 0) {
+            return merged;
+        }
+        List<ByteRange> capped = new ArrayList<>(merged.size());
+        long remaining = maxRequestBytes;
+        for (ByteRange range : merged) {
+            if (range.length() >= remaining) {
+                capped.add(new ByteRange(range.start, range.start + remaining - 1));
+                break;
+            }
+            capped.add(range);
+            remaining -= range.length();
+        }
+        return capped;
+    }
+
+    /**
+     * @return The range for one spec, or null if it is valid but not satisfiable
+     */
+    private static ByteRange parseSpec(String spec, long contentLength) {
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            throw new IllegalArgumentException("Malformed range: " + spec);
+        }
+        String first = spec.substring(0, dash).trim();
+        String last = spec.substring(dash + 1).trim();
+
+        try {
+            if (first.isEmpty()) {
+                // Suffix range: the final N bytes of the file
+                long suffixLength = Long.parseLong(last);
+                if (suffixLength < 0) {
+                    throw new IllegalArgumentException("Malformed range: " + spec);
+                }
+                if (suffixLength == 0 || contentLength == 0) {
+                    return null;
+                }
+                return new ByteRange(Math.max(0, contentLength - suffixLength), contentLength - 1);
+            }
+
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+            if (start < 0 || end < start) {
+                throw new IllegalArgumentException("Malformed range: " + spec);
+            }
+            if (start >= contentLength) {
+                return null;
+            }
+            return new ByteRange(start, Math.min(end, contentLength - 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed range: " + spec, e);
+        }
+    }
+
+    private static List<ByteRange> coalesce(List<ByteRange> ranges) {
+        if (ranges.size() < 2) {
+            return ranges;
+        }
+        ranges.sort(Comparator.comparingLong(ByteRange::getStart));
+
+        List<ByteRange> merged = new ArrayList<>();
+        ByteRange current = ranges.get(0);
+        for (int i = 1; i < ranges.size(); i++) {
+            ByteRange next = ranges.get(i);
+            if (next.start <= current.end + 1) {
+                current = new ByteRange(current.start, Math.max(current.end, next.end));
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+}
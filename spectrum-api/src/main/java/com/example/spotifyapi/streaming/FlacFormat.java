@@ -0,0 +1,59 @@
+package com.example.spotifyapi.streaming;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Minimal reader for the FLAC container: the stream marker and the STREAMINFO block.
+ */
+public final class FlacFormat {
+
+    private FlacFormat() {
+    }
+
+    /**
+     * The audio properties of the STREAMINFO block
+     */
+    public static final class Header {
+        private int sampleRate;
+        private int channels;
+        private int bitsPerSample;
+        private long totalSamples;
+
+        public int getSampleRate() {
+            return sampleRate;
+        }
+
+        public int getChannels() {
+            return channels;
+        }
+
+        public int getBitsPerSample() {
+            return bitsPerSample;
+        }
+
+        /**
+         * @return The number of samples per channel, 0 if unknown
+         */
+        public long getTotalSamples() {
+            return totalSamples;
+        }
+    }
+
+    /**
+     * @param buffer The start of the file
+     * @return true if the buffer starts with the "fLaC" marker
+     */
+    public static boolean isFlac(ByteBuffer buffer) {
+        return buffer.limit() >= 4
+                && buffer.get(0) == 'f' && buffer.get(1) == 'L' && buffer.get(2) == 'a' && buffer.get(3) == 'C';
+    }
+
+    static void readStreamInfo(ByteBuffer buffer, int body, Header header) {
+        // 20 bits sample rate, 3 bits channels - 1, 5 bits bits per sample - 1, 36 bits total samples
+        long packed = buffer.getLong(body + 10);
+        header.sampleRate = (int) (packed >>> 44);
+        header.channels = (int) ((packed >>> 41) & 0x7) + 1;
+        header.bitsPerSample = (int) ((packed >>> 36) & 0x1F) + 1;
+        header.totalSamples = packed & 0xFFFFFFFFFL;
+    }
+}
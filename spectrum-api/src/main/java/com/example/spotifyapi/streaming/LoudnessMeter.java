@@ -0,0 +1,206 @@
+package com.example.spotifyapi.streaming;
+
+import java.util.Arrays;
+
+/**
+ * Loudness measurement per ITU-R BS.1770 / EBU R128 for 48 kHz audio.
+ *
+ * Samples are K-weighted and their energy collected per 100 ms; gating blocks
+ * are 400 ms with 75% overlap. The block energies are kept so that the
+ * integrated loudness of an album can be gated over the blocks of all its
+ * tracks. The true peak is measured on a 4x oversampled signal.
+ */
+public final class LoudnessMeter {
+
+    public static final int SAMPLE_RATE = 48000;
+
+    private static final int SUB_BLOCK_FRAMES = SAMPLE_RATE / 10;
+    private static final double ABSOLUTE_GATE_LUFS = -70.0;
+    private static final double RELATIVE_GATE_LU = -10.0;
+
+    // K-weighting at 48 kHz: high shelf, then high pass (BS.1770 Annex 1)
+    private static final double[] SHELF_B = {1.53512485958697, -2.69169618940638, 1.19839281085285};
+    private static final double[] SHELF_A = {-1.69065929318241, 0.73248077421585};
+    private static final double[] HIGH_PASS_B = {1.0, -2.0, 1.0};
+    private static final double[] HIGH_PASS_A = {-1.99004745483398, 0.99007225036621};
+
+    // 4x oversampling interpolator: Hann-windowed sinc, 12 taps per phase
+    private static final int OVERSAMPLING = 4;
+    private static final int TAPS = 12;
+    private static final double[][] INTERPOLATOR = new double[OVERSAMPLING][TAPS];
+
+    static {
+        for (int phase = 0; phase < OVERSAMPLING; phase++) {
+            double sum = 0;
+            for (int tap = 0; tap < TAPS; tap++) {
+                double x = (TAPS / 2 - 1) + (double) phase / OVERSAMPLING - tap;
+                double sinc = x == 0 ? 1 : Math.sin(Math.PI * x) / (Math.PI * x);
+                double window = 0.5 * (1 + Math.cos(Math.PI * x / (TAPS / 2)));
+                INTERPOLATOR[phase][tap] = sinc * window;
+                sum += INTERPOLATOR[phase][tap];
+            }
+            for (int tap = 0; tap < TAPS; tap++) {
+                INTERPOLATOR[phase][tap] /= sum;
+            }
+        }
+    }
+
+    private final int channels;
+    // Filter state per channel: x1, x2, y1, y2 of both stages
+    private final double[][] shelfState;
+    private final double[][] highPassState;
+    // Last TAPS samples per channel, written twice so a contiguous window can always be read
+    private final double[][] history;
+    private int historyPosition;
+
+    private final double[] subBlockEnergy;
+    private int subBlockFrames;
+    private double[] subBlocks = new double[1024];
+    private int subBlockCount;
+    private double truePeak;
+
+    public LoudnessMeter(int channels) {
+        this.channels = channels;
+        this.shelfState = new double[channels][4];
+        this.highPassState = new double[channels][4];
+        this.history = new double[channels][TAPS * 2];
+        this.subBlockEnergy = new double[channels];
+    }
+
+    /**
+     * Add interleaved samples, see {@link PcmDecoder.SampleSink}
+     *
+     * @param samples Interleaved samples in [-1, 1]
+     * @param count The number of valid samples
+     */
+    public void add(float[] samples, int count) {
+        for (int i = 0; i + channels <= count; i += channels) {
+            for (int channel = 0; channel < channels; channel++) {
+                double sample = samples[i + channel];
+                measurePeak(channel, sample);
+                double weighted = filter(highPassState[channel], HIGH_PASS_B, HIGH_PASS_A,
+                        filter(shelfState[channel], SHELF_B, SHELF_A, sample));
+                subBlockEnergy[channel] += weighted * weighted;
+            }
+            historyPosition = (historyPosition + 1) % TAPS;
+            if (++subBlockFrames == SUB_BLOCK_FRAMES) {
+                closeSubBlock();
+            }
+        }
+    }
+
+    /**
+     * @return The mean square energy, summed over channels, of every 400 ms gating block
+     */
+    public double[] getBlockEnergies() {
+        int blocks = Math.max(0, subBlockCount - 3);
+        double[] energies = new double[blocks];
+        for (int block = 0; block < blocks; block++) {
+            energies[block] = (subBlocks[block] + subBlocks[block + 1] + subBlocks[block + 2] + subBlocks[block + 3]) / 4;
+        }
+        return energies;
+    }
+
+    /**
+     * @return The integrated loudness in LUFS
+     */
+    public double getIntegratedLoudness() {
+        return integratedLoudness(getBlockEnergies());
+    }
+
+    /**
+     * @return The true peak as a linear amplitude
+     */
+    public double getTruePeak() {
+        return truePeak;
+    }
+
+    /**
+     * Gate blocks and integrate their loudness, e.g. over all blocks of an album
+     *
+     * @param blockEnergies Block energies from {@link #getBlockEnergies()}
+     * @return The integrated loudness in LUFS, or the absolute gate if every block is below it
+     */
+    public static double integratedLoudness(double[] blockEnergies) {
+        double absoluteGate = toEnergy(ABSOLUTE_GATE_LUFS);
+        double sum = 0;
+        int count = 0;
+        for (double energy : blockEnergies) {
+            if (energy > absoluteGate) {
+                sum += energy;
+                count++;
+            }
+        }
+        if (count == 0) {
+            return ABSOLUTE_GATE_LUFS;
+        }
+
+        double relativeGate = sum / count * Math.pow(10, RELATIVE_GATE_LU / 10);
+        double gatedSum = 0;
+        int gatedCount = 0;
+        for (double energy : blockEnergies) {
+            if (energy > absoluteGate && energy > relativeGate) {
+                gatedSum += energy;
+                gatedCount++;
+            }
+        }
+        return gatedCount == 0 ? ABSOLUTE_GATE_LUFS : toLoudness(gatedSum / gatedCount);
+    }
+
+    /**
+     * @param amplitude A linear amplitude
+     * @return The amplitude in dB, at least -120
+     */
+    public static double toDecibels(double amplitude) {
+        return amplitude <= 0 ? -120 : Math.max(-120, 20 * Math.log10(amplitude));
+    }
+
+    private static double toLoudness(double energy) {
+        return -0.691 + 10 * Math.log10(energy);
+    }
+
+    private static double toEnergy(double loudness) {
+        return Math.pow(10, (loudness + 0.691) / 10);
+    }
+
+    private static double filter(double[] state, double[] b, double[] a, double x) {
+        double y = b[0] * x + b[1] * state[0] + b[2] * state[1] - a[0] * state[2] - a[1] * state[3];
+        state[1] = state[0];
+        state[0] = x;
+        state[3] = state[2];
+        state[2] = y;
+        return y;
+    }
+
+    private void measurePeak(int channel, double sample) {
+        double[] window = history[channel];
+        window[historyPosition] = sample;
+        window[historyPosition + TAPS] = sample;
+        // The window ending at the newest sample starts just after it in the doubled buffer
+        int start = historyPosition + 1;
+        for (int phase = 0; phase < OVERSAMPLING; phase++) {
+            double[] coefficients = INTERPOLATOR[phase];
+            double value = 0;
+            for (int tap = 0; tap < TAPS; tap++) {
+                value += coefficients[tap] * window[start + tap];
+            }
+            double magnitude = Math.abs(value);
+            if (magnitude > truePeak) {
+                truePeak = magnitude;
+            }
+        }
+    }
+
+    private void closeSubBlock() {
+        double energy = 0;
+        for (int channel = 0; channel < channels; channel++) {
+            energy += subBlockEnergy[channel] / SUB_BLOCK_FRAMES;
+            subBlockEnergy[channel] = 0;
+        }
+        if (subBlockCount == subBlocks.length) {
+            subBlocks = Arrays.copyOf(subBlocks, subBlockCount * 2);
+        }
+        subBlocks[subBlockCount++] = energy;
+        subBlockFrames = 0;
+    }
+}
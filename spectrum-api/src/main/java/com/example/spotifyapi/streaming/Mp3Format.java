@@ -0,0 +1,168 @@
+package com.example.spotifyapi.streaming;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal reader for MPEG audio (MP3) streams: the ID3v2 tag header and frame headers.
+ */
+public final class Mp3Format {
+
+    private static final int[][] BITRATES_KBPS = {
+            // MPEG-1 layer I, II, III
+            {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+            {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+            {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320},
+            // MPEG-2 and 2.5 layer I, II/III
+            {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},
+            {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}
+    };
+
+    private static final int[] MPEG1_SAMPLE_RATES = {44100, 48000, 32000};
+
+    private static final byte[] TIMESTAMP_OWNER = "com.apple.streaming.transportStreamTimestamp\0".getBytes(StandardCharsets.ISO_8859_1);
+
+    private Mp3Format() {
+    }
+
+    /**
+     * A decoded MPEG audio frame header
+     */
+    public static final class FrameHeader {
+        private final boolean mpeg1;
+        private final int layer;
+        private final int bitrateKbps;
+        private final int sampleRate;
+        private final int samplesPerFrame;
+        private final int frameLength;
+        private final int channels;
+
+        private FrameHeader(boolean mpeg1, int layer, int bitrateKbps, int sampleRate,
+                            int samplesPerFrame, int frameLength, int channels) {
+            this.mpeg1 = mpeg1;
+            this.layer = layer;
+            this.bitrateKbps = bitrateKbps;
+            this.sampleRate = sampleRate;
+            this.samplesPerFrame = samplesPerFrame;
+            this.frameLength = frameLength;
+            this.channels = channels;
+        }
+
+        public boolean isMpeg1() {
+            return mpeg1;
+        }
+
+        public int getLayer() {
+            return layer;
+        }
+
+        public int getBitrateKbps() {
+            return bitrateKbps;
+        }
+
+        public int getSampleRate() {
+            return sampleRate;
+        }
+
+        public int getSamplesPerFrame() {
+            return samplesPerFrame;
+        }
+
+        public int getFrameLength() {
+            return frameLength;
+        }
+
+        public int getChannels() {
+            return channels;
+        }
+    }
+
+    /**
+     * @param buffer The start of the file
+     * @return The length of the ID3v2 tag at the start of the file, 0 if there is none
+     */
+    public static int id3v2Length(ByteBuffer buffer) {
+        if (buffer.limit() < 10 || buffer.get(0) != 'I' || buffer.get(1) != 'D' || buffer.get(2) != '3') {
+            return 0;
+        }
+        boolean footer = (buffer.get(5) & 0x10) != 0;
+        return 10 + syncsafe(buffer, 6) + (footer ? 10 : 0);
+    }
+
+    /**
+     * Build the ID3v2 tag that starts an HLS packed audio segment: a PRIV frame
+     * with the MPEG-2 timestamp (90 kHz, 33 bits) of the segment's first sample
+     *
+     * @param startSample The number of samples before the segment
+     * @param sampleRate The sample rate of the stream
+     * @return The tag bytes
+     */
+    public static byte[] transportStreamTimestampTag(long startSample, int sampleRate) {
+        int frameLength = TIMESTAMP_OWNER.length + 8;
+        ByteBuffer tag = ByteBuffer.allocate(20 + frameLength);
+        tag.put(new byte[]{'I', 'D', '3', 4, 0, 0});
+        tag.putInt(toSyncsafe(10 + frameLength));
+        tag.put(new byte[]{'P', 'R', 'I', 'V'});
+        tag.putInt(toSyncsafe(frameLength));
+        tag.putShort((short) 0);
+        tag.put(TIMESTAMP_OWNER);
+        tag.putLong(startSample * 90000 / sampleRate & 0x1FFFFFFFFL);
+        return tag.array();
+    }
+
+    private static int toSyncsafe(int value) {
+        return ((value << 3) & 0x7F000000) | ((value << 2) & 0x7F0000) | ((value << 1) & 0x7F00) | (value & 0x7F);
+    }
+
+    /**
+     * @param buffer The buffer
+     * @param position The offset of a 4 byte syncsafe integer
+     * @return The decoded 28 bit value
+     */
+    public static int syncsafe(ByteBuffer buffer, int position) {
+        return ((buffer.get(position) & 0x7F) << 21)
+                | ((buffer.get(position + 1) & 0x7F) << 14)
+                | ((buffer.get(position + 2) & 0x7F) << 7)
+                | (buffer.get(position + 3) & 0x7F);
+    }
+
+    /**
+     * Decode a frame header
+     *
+     * @param header The 4 header bytes as a big-endian int
+     * @return The header, or null if the bytes are not a supported frame header
+     */
+    public static FrameHeader parseFrameHeader(int header) {
+        if ((header >>> 21) != 0x7FF) {
+            return null;
+        }
+        int version = (header >>> 19) & 3;   // 0 = MPEG-2.5, 1 = reserved, 2 = MPEG-2, 3 = MPEG-1
+        int layerBits = (header >>> 17) & 3; // 1 = layer III, 2 = layer II, 3 = layer I
+        int bitrateIndex = (header >>> 12) & 0xF;
+        int sampleRateIndex = (header >>> 10) & 3;
+        // Free-format bitrates are not supported
+        if (version == 1 || layerBits == 0 || bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3) {
+            return null;
+        }
+
+        boolean mpeg1 = version == 3;
+        int layer = 4 - layerBits;
+        int bitrate = mpeg1
+                ? BITRATES_KBPS[layer - 1][bitrateIndex]
+                : BITRATES_KBPS[layer == 1 ? 3 : 4][bitrateIndex];
+        int sampleRate = MPEG1_SAMPLE_RATES[sampleRateIndex] >> (mpeg1 ? 0 : version == 2 ? 1 : 2);
+        int padding = (header >>> 9) & 1;
+        int channels = ((header >>> 6) & 3) == 3 ? 1 : 2;
+
+        int samplesPerFrame;
+        int frameLength;
+        if (layer == 1) {
+            samplesPerFrame = 384;
+            frameLength = (12 * bitrate * 1000 / sampleRate + padding) * 4;
+        } else {
+            samplesPerFrame = layer == 3 && !mpeg1 ? 576 : 1152;
+            frameLength = samplesPerFrame / 8 * bitrate * 1000 / sampleRate + padding;
+        }
+        return new FrameHeader(mpeg1, layer, bitrate, sampleRate, samplesPerFrame, frameLength, channels);
+    }
+}
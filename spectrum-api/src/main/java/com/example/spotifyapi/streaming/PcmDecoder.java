@@ -0,0 +1,108 @@
+package com.example.spotifyapi.streaming;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Decodes audio files to interleaved 32-bit float samples with a local ffmpeg process.
+ *
+ * Samples are handed to the caller chunk by chunk in one reused array, so a
+ * whole track is analyzed in a single streaming pass without being held in memory.
+ * Callers bound their own concurrency.
+ */
+@Component
+public class PcmDecoder {
+
+    private final String ffmpegPath;
+    private final int bufferSize;
+    private final Transcoder transcoder;
+
+    /**
+     * Receives decoded samples
+     */
+    @FunctionalInterface
+    public interface SampleSink {
+        /**
+         * @param samples Interleaved samples in [-1, 1], only valid during the call
+         * @param count The number of valid samples, a multiple of the channel count
+         */
+        void accept(float[] samples, int count);
+    }
+
+    public PcmDecoder(
+            @Value("${streaming.transcode.ffmpeg-path:ffmpeg}") String ffmpegPath,
+            @Value("${streaming.buffer-size:65536}") int bufferSize,
+            Transcoder transcoder) {
+        this.ffmpegPath = ffmpegPath;
+        this.bufferSize = bufferSize;
+        this.transcoder = transcoder;
+    }
+
+    /**
+     * @return true if the configured ffmpeg binary can be run
+     */
+    public boolean isAvailable() {
+        return transcoder.isAvailable();
+    }
+
+    /**
+     * Decode a file, resampled and mixed to the given format
+     *
+     * @param source The file to decode
+     * @param sampleRate The output sample rate
+     * @param channels The output channel count
+     * @param sink Receives the samples
+     * @throws IOException If ffmpeg cannot be run or fails
+     */
+    public void decode(Path source, int sampleRate, int channels, SampleSink sink) throws IOException {
+        List<String> command = List.of(ffmpegPath, "-nostdin", "-v", "error", "-i", source.toString(),
+                "-vn", "-ac", String.valueOf(channels), "-ar", String.valueOf(sampleRate), "-f", "f32le", "pipe:1");
+        Process process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try {
+            // Whole frames only, so every chunk starts on the first channel
+            int frameBytes = 4 * channels;
+            byte[] bytes = new byte[Math.max(frameBytes, bufferSize / frameBytes * frameBytes)];
+            float[] samples = new float[bytes.length / 4];
+            FloatBuffer floats = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            int filled = 0;
+            try (InputStream pcm = process.getInputStream()) {
+                int read;
+                while ((read = pcm.read(bytes, filled, bytes.length - filled)) != -1) {
+                    filled += read;
+                    int usable = filled / frameBytes * frameBytes;
+                    if (usable == 0) {
+                        continue;
+                    }
+                    floats.clear();
+                    floats.get(samples, 0, usable / 4);
+                    sink.accept(samples, usable / 4);
+                    // Keep a partial frame for the next read
+                    System.arraycopy(bytes, usable, bytes, 0, filled - usable);
+                    filled -= usable;
+                }
+            }
+
+            int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                throw new IOException("ffmpeg exited with code " + exitCode + " for " + source);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decoding " + source, e);
+        } finally {
+            if (process.isAlive()) {
+                process.destroyForcibly();
+            }
+        }
+    }
+}
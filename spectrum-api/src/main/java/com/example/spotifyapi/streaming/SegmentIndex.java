@@ -0,0 +1,219 @@
+package com.example.spotifyapi.streaming;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Byte offsets and durations of the fixed-duration segments of an MP3 file.
+ *
+ * Segments start on frame boundaries, so every segment is an independent byte
+ * range of the file that can be served without decoding. The start sample of
+ * each segment gives the timestamp HLS players need to place packed audio.
+ */
+public final class SegmentIndex {
+
+    private static final int FORMAT_VERSION = 2;
+
+    private final int sampleRate;
+    private final long[] offsets;
+    private final long[] startSamples;
+    private final int[] durationsMs;
+
+    private SegmentIndex(int sampleRate, long[] offsets, long[] startSamples, int[] durationsMs) {
+        this.sampleRate = sampleRate;
+        this.offsets = offsets;
+        this.startSamples = startSamples;
+        this.durationsMs = durationsMs;
+    }
+
+    public int segmentCount() {
+        return durationsMs.length;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public long getSegmentStart(int segment) {
+        return offsets[segment];
+    }
+
+    /**
+     * @return The offset just past the last byte of the segment
+     */
+    public long getSegmentEnd(int segment) {
+        return offsets[segment + 1];
+    }
+
+    /**
+     * @return The number of samples before the segment
+     */
+    public long getStartSample(int segment) {
+        return startSamples[segment];
+    }
+
+    public int getDurationMs(int segment) {
+        return durationsMs[segment];
+    }
+
+    public int getMaxDurationMs() {
+        return Arrays.stream(durationsMs).max().orElse(0);
+    }
+
+    /**
+     * @return The compact binary form stored with the track
+     */
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(12 + offsets.length * 8 + startSamples.length * 8 + durationsMs.length * 4);
+        buffer.putInt(FORMAT_VERSION);
+        buffer.putInt(durationsMs.length);
+        buffer.putInt(sampleRate);
+        for (long offset : offsets) {
+            buffer.putLong(offset);
+        }
+        for (long startSample : startSamples) {
+            buffer.putLong(startSample);
+        }
+        for (int duration : durationsMs) {
+            buffer.putInt(duration);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @param bytes The output of toBytes
+     * @return The index, or null if it was written by another format version
+     */
+    public static SegmentIndex fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.getInt() != FORMAT_VERSION) {
+            return null;
+        }
+        int count = buffer.getInt();
+        int sampleRate = buffer.getInt();
+        long[] offsets = new long[count + 1];
+        for (int i = 0; i <= count; i++) {
+            offsets[i] = buffer.getLong();
+        }
+        long[] startSamples = new long[count];
+        for (int i = 0; i < count; i++) {
+            startSamples[i] = buffer.getLong();
+        }
+        int[] durations = new int[count];
+        for (int i = 0; i < count; i++) {
+            durations[i] = buffer.getInt();
+        }
+        return new SegmentIndex(sampleRate, offsets, startSamples, durations);
+    }
+
+    /**
+     * Build the index of an MP3 file by reading its frame headers
+     *
+     * @param file The audio file
+     * @param segmentMs The target segment duration
+     * @return The segment index
+     * @throws IOException If the file cannot be read or is not MP3
+     */
+    public static SegmentIndex build(Path file, int segmentMs) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Audio file too large to segment: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return buildMp3(buffer, segmentMs);
+        }
+    }
+
+    private static SegmentIndex buildMp3(ByteBuffer buffer, int segmentMs) throws IOException {
+        int firstFrame = Mp3Format.id3v2Length(buffer);
+        int limit = buffer.limit();
+        // Leave out a trailing ID3v1 tag
+        if (limit >= 128 && buffer.get(limit - 128) == 'T' && buffer.get(limit - 127) == 'A' && buffer.get(limit - 126) == 'G') {
+            limit -= 128;
+        }
+
+        Builder builder = null;
+        int sampleRate = 0;
+        long samples = 0;
+        int end = firstFrame;
+        boolean synced = false;
+        int position = firstFrame;
+        while (position + 4 <= limit) {
+            Mp3Format.FrameHeader frame = Mp3Format.parseFrameHeader(buffer.getInt(position));
+            if (frame == null || (sampleRate != 0 && frame.getSampleRate() != sampleRate)) {
+                synced = false;
+                position++;
+                continue;
+            }
+            int next = position + frame.getFrameLength();
+            if (next > limit) {
+                break;
+            }
+            // After losing sync, only trust a header that is followed by another one
+            if (!synced && next + 4 <= limit && Mp3Format.parseFrameHeader(buffer.getInt(next)) == null) {
+                position++;
+                continue;
+            }
+            if (builder == null) {
+                sampleRate = frame.getSampleRate();
+                builder = new Builder(sampleRate, segmentMs);
+            }
+            builder.frame(samples, position);
+            samples += frame.getSamplesPerFrame();
+            synced = true;
+            end = next;
+            position = next;
+        }
+        if (builder == null) {
+            throw new IOException("No MPEG audio frames found");
+        }
+        return builder.finish(samples, end);
+    }
+
+    /**
+     * Collects segment boundaries from frame positions given in file order
+     */
+    private static final class Builder {
+        private final int sampleRate;
+        private final long segmentSamples;
+        private long[] offsets = new long[64];
+        private long[] startSamples = new long[64];
+        private int count;
+        private long nextBoundary;
+
+        Builder(int sampleRate, int segmentMs) {
+            this.sampleRate = sampleRate;
+            this.segmentSamples = Math.max(1, (long) sampleRate * segmentMs / 1000);
+        }
+
+        void frame(long sample, long offset) {
+            if (count > 0 && sample < nextBoundary) {
+                return;
+            }
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                startSamples = Arrays.copyOf(startSamples, count * 2);
+            }
+            offsets[count] = offset;
+            startSamples[count] = sample;
+            count++;
+            nextBoundary = sample + segmentSamples;
+        }
+
+        SegmentIndex finish(long endSample, long endOffset) {
+            long[] segmentOffsets = Arrays.copyOf(offsets, count + 1);
+            segmentOffsets[count] = endOffset;
+            int[] durations = new int[count];
+            for (int i = 0; i < count; i++) {
+                long nextSample = i + 1 < count ? startSamples[i + 1] : Math.max(endSample, startSamples[i]);
+                durations[i] = (int) ((nextSample - startSamples[i]) * 1000 / sampleRate);
+            }
+            return new SegmentIndex(sampleRate, segmentOffsets, Arrays.copyOf(startSamples, count), durations);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.spotifyapi.streaming;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Size-capped LRU disk cache of finished transcodes.
+ *
+ * Transcodes are written to a temporary file while they stream and only
+ * committed once ffmpeg finished successfully, so the cache never holds
+ * truncated outputs. When the cache grows past its cap, the least recently
+ * played outputs are deleted.
+ */
+@Component
+public class TranscodeCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(TranscodeCache.class);
+    private static final String TEMP_SUFFIX = ".part";
+
+    private final Path directory;
+    private final long maxBytes;
+
+    // Access-ordered: file name -> size in bytes
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    public TranscodeCache(
+            @Value("${streaming.transcode.cache-dir:./transcode-cache}") String directory,
+            @Value("${streaming.transcode.cache-max-bytes:2147483648}") long maxBytes) {
+        this.directory = Paths.get(directory);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Load the outputs left by a previous run, oldest first, and drop unfinished ones
+     */
+    @PostConstruct
+    public void initialize() {
+        try {
+            Files.createDirectories(directory);
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path file : stream) {
+                    if (file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                        Files.deleteIfExists(file);
+                    } else if (Files.isRegularFile(file)) {
+                        files.add(file);
+                    }
+                }
+            }
+            files.sort(Comparator.comparingLong(this::lastModified));
+            synchronized (entries) {
+                for (Path file : files) {
+                    long size = Files.size(file);
+                    entries.put(file.getFileName().toString(), size);
+                    totalBytes += size;
+                }
+            }
+            evictOverflow();
+            logger.info("Transcode cache at {} holds {} files ({} bytes)", directory, entries.size(), totalBytes);
+        } catch (IOException e) {
+            logger.error("Could not initialize transcode cache at {}", directory, e);
+        }
+    }
+
+    /**
+     * @param key The cache key, used as the file name
+     * @return The cached output, or null on a miss
+     */
+    public Path lookup(String key) {
+        synchronized (entries) {
+            if (entries.get(key) == null) {
+                return null;
+            }
+        }
+        Path file = directory.resolve(key);
+        if (!Files.isRegularFile(file)) {
+            remove(key);
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * @return A new temporary file in the cache directory to write a transcode to
+     * @throws IOException If the file cannot be created
+     */
+    public Path createTempFile() throws IOException {
+        return Files.createTempFile(directory, "transcode-", TEMP_SUFFIX);
+    }
+
+    /**
+     * Move a finished transcode into the cache
+     *
+     * @param tempFile The file returned by createTempFile
+     * @param key The cache key
+     * @throws IOException If the file cannot be moved
+     */
+    public void commit(Path tempFile, String key) throws IOException {
+        Path target = directory.resolve(key);
+        try {
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        long size = Files.size(target);
+        synchronized (entries) {
+            Long previous = entries.put(key, size);
+            totalBytes += size - (previous != null ? previous : 0);
+        }
+        evictOverflow();
+    }
+
+    private void remove(String key) {
+        synchronized (entries) {
+            Long size = entries.remove(key);
+            if (size != null) {
+                totalBytes -= size;
+            }
+        }
+    }
+
+    private void evictOverflow() {
+        List<String> evicted = new ArrayList<>();
+        synchronized (entries) {
+            Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+            while (totalBytes > maxBytes && eldest.hasNext()) {
+                Map.Entry<String, Long> entry = eldest.next();
+                totalBytes -= entry.getValue();
+                evicted.add(entry.getKey());
+                eldest.remove();
+            }
+        }
+        for (String key : evicted) {
+            try {
+                Files.deleteIfExists(directory.resolve(key));
+            } catch (IOException e) {
+                logger.warn("Could not delete cached transcode {}: {}", key, e.getMessage());
+            }
+        }
+    }
+
+    private long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
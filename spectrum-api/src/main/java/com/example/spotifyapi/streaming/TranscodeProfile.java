@@ -0,0 +1,65 @@
+package com.example.spotifyapi.streaming;
+
+import java.util.List;
+
+/**
+ * Bitrate profiles a client can select with ?profile=low|medium|lossless.
+ * Lossless serves the stored file untouched, the others are encoded to MP3.
+ */
+public enum TranscodeProfile {
+    LOW("low", "mp3", "audio/mpeg", "96k"),
+    MEDIUM("medium", "mp3", "audio/mpeg", "192k"),
+    LOSSLESS("lossless", null, null, null);
+
+    private final String profileName;
+    private final String extension;
+    private final String contentType;
+    private final String bitrate;
+
+    TranscodeProfile(String profileName, String extension, String contentType, String bitrate) {
+        this.profileName = profileName;
+        this.extension = extension;
+        this.contentType = contentType;
+        this.bitrate = bitrate;
+    }
+
+    /**
+     * @param name The profile name from the request, may be null
+     * @return The matching profile, LOSSLESS if no name was given
+     * @throws IllegalArgumentException If the name is unknown
+     */
+    public static TranscodeProfile fromName(String name) {
+        if (name == null || name.isBlank()) {
+            return LOSSLESS;
+        }
+        for (TranscodeProfile profile : values()) {
+            if (profile.profileName.equalsIgnoreCase(name.trim())) {
+                return profile;
+            }
+        }
+        throw new IllegalArgumentException("Unknown streaming profile: " + name);
+    }
+
+    public String getProfileName() {
+        return profileName;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public boolean isPassthrough() {
+        return bitrate == null;
+    }
+
+    /**
+     * @return The ffmpeg output options for this profile
+     */
+    List<String> ffmpegOutputArguments() {
+        return List.of("-map", "0:a:0", "-map_metadata", "-1", "-c:a", "libmp3lame", "-b:a", bitrate, "-f", extension);
+    }
+}
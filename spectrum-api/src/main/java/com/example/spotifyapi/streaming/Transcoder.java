@@ -0,0 +1,331 @@
+package com.example.spotifyapi.streaming;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Encodes audio files to a bitrate profile with a local ffmpeg process.
+ *
+ * The encoder output is written to a temporary file in the transcode cache at
+ * ffmpeg's own speed, and every request for it follows that file chunk by
+ * chunk, so playback starts before encoding has finished and a paused client
+ * never holds an encoder. Requests for the same output share one encode. The
+ * number of concurrent encoders is bounded, a slot is held until ffmpeg exits.
+ */
+@Component
+public class Transcoder {
+
+    private static final Logger logger = LoggerFactory.getLogger(Transcoder.class);
+
+    private final String ffmpegPath;
+    private final int bufferSize;
+    private final Semaphore slots;
+    private final long slotTimeoutMs;
+    private final TranscodeCache transcodeCache;
+    private final AudioChannelWriter audioChannelWriter;
+    private final ExecutorService encoderExecutor;
+
+    // Running encodes by transcode cache key
+    private final Map<String, Encode> inFlight = new HashMap<>();
+
+    private volatile Boolean available;
+
+    public Transcoder(
+            @Value("${streaming.transcode.ffmpeg-path:ffmpeg}") String ffmpegPath,
+            @Value("${streaming.buffer-size:65536}") int bufferSize,
+            @Value("${streaming.transcode.max-concurrent:2}") int maxConcurrent,
+            @Value("${streaming.transcode.queue-timeout-seconds:10}") long slotTimeoutSeconds,
+            TranscodeCache transcodeCache,
+            AudioChannelWriter audioChannelWriter) {
+        this.ffmpegPath = ffmpegPath;
+        this.bufferSize = bufferSize;
+        this.slots = new Semaphore(maxConcurrent, true);
+        this.slotTimeoutMs = TimeUnit.SECONDS.toMillis(slotTimeoutSeconds);
+        this.transcodeCache = transcodeCache;
+        this.audioChannelWriter = audioChannelWriter;
+        AtomicInteger threadNumber = new AtomicInteger();
+        // Unbounded, the slots limit the running encodes
+        this.encoderExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "transcode-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        encoderExecutor.shutdownNow();
+        synchronized (inFlight) {
+            inFlight.values().forEach(Encode::destroy);
+        }
+    }
+
+    /**
+     * @return true if the configured ffmpeg binary can be run
+     */
+    public boolean isAvailable() {
+        Boolean result = available;
+        if (result == null) {
+            result = probeFfmpeg();
+            available = result;
+        }
+        return result;
+    }
+
+    /**
+     * Transcode a file to the given profile, writing the output to the stream
+     * and, if encoding completes, to the transcode cache under the given key.
+     * Joins the running encode of the same key instead of starting another one.
+     *
+     * @param source The file to encode
+     * @param profile The target profile, must not be passthrough
+     * @param cacheKey The transcode cache key of the output
+     * @param out The stream the output is written to
+     * @throws IOException If ffmpeg fails, the client goes away, or no encoder slot frees up in time
+     */
+    public void transcode(Path source, TranscodeProfile profile, String cacheKey, OutputStream out) throws IOException {
+        // Opened while the encode is registered, so the channel stays valid when the file is committed
+        Encode encode;
+        FileChannel channel;
+        synchronized (inFlight) {
+            encode = inFlight.get(cacheKey);
+            channel = encode != null ? encode.openOutput() : null;
+        }
+        if (encode == null) {
+            Encode created = startEncode(source, profile);
+            try {
+                synchronized (inFlight) {
+                    // Another request may have started the same output while this one waited for a slot
+                    encode = inFlight.putIfAbsent(cacheKey, created);
+                    if (encode == null) {
+                        encode = created;
+                    }
+                    channel = encode.openOutput();
+                }
+            } catch (IOException | RuntimeException e) {
+                discard(cacheKey, created, e.getMessage());
+                throw e;
+            }
+            if (encode != created) {
+                discard(cacheKey, created, "Another request started the same transcode");
+            } else {
+                try {
+                    encoderExecutor.execute(() -> encode(source, cacheKey, created));
+                } catch (RejectedExecutionException e) {
+                    discard(cacheKey, created, "Transcoder is shutting down");
+                    channel.close();
+                    throw new IOException("Transcoder is shutting down", e);
+                }
+            }
+        }
+
+        try (FileChannel output = channel) {
+            long position = 0;
+            while (true) {
+                long written = encode.awaitOutput(position);
+                if (written > position) {
+                    audioChannelWriter.write(output, position, written - position, out);
+                    // Sent now, the next bytes may take a while
+                    out.flush();
+                    position = written;
+                } else if (encode.completed) {
+                    return;
+                } else {
+                    throw new IOException(encode.failure);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while transcoding " + source, e);
+        }
+    }
+
+    /**
+     * Start an ffmpeg process writing to a new temporary file, once an encoder slot is free.
+     * The caller owns the slot until the process is handed to encode().
+     */
+    private Encode startEncode(Path source, TranscodeProfile profile) throws IOException {
+        try {
+            if (!slots.tryAcquire(slotTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Too many concurrent transcodes");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a transcode slot", e);
+        }
+
+        Path tempFile = null;
+        try {
+            tempFile = transcodeCache.createTempFile();
+            List<String> command = new ArrayList<>();
+            command.add(ffmpegPath);
+            command.addAll(List.of("-nostdin", "-v", "error", "-i", source.toString()));
+            command.addAll(profile.ffmpegOutputArguments());
+            command.add("pipe:1");
+            Encode encode = new Encode(tempFile);
+            encode.process = new ProcessBuilder(command)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            return encode;
+        } catch (IOException | RuntimeException e) {
+            slots.release();
+            if (tempFile != null) {
+                Files.deleteIfExists(tempFile);
+            }
+            throw e;
+        }
+    }
+
+    // Copies ffmpeg's output to the temporary file, at ffmpeg's speed
+    private void encode(Path source, String cacheKey, Encode encode) {
+        boolean completed = false;
+        String failure = null;
+        try {
+            byte[] buffer = new byte[bufferSize];
+            try (InputStream encoded = encode.process.getInputStream();
+                 OutputStream cacheOut = Files.newOutputStream(encode.tempFile)) {
+                int read;
+                while ((read = encoded.read(buffer)) != -1) {
+                    cacheOut.write(buffer, 0, read);
+                    encode.advance(read);
+                }
+            }
+            int exitCode = encode.process.waitFor();
+            if (exitCode != 0) {
+                failure = "ffmpeg exited with code " + exitCode + " for " + source;
+            } else {
+                completed = true;
+            }
+        } catch (IOException e) {
+            failure = "Error transcoding " + source + ": " + e.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = "Interrupted while transcoding " + source;
+        } finally {
+            encode.destroy();
+            slots.release();
+            if (failure != null) {
+                logger.warn(failure);
+            }
+            encode.finish(completed, failure);
+            finishEncode(cacheKey, encode);
+        }
+    }
+
+    // Stops an encode that was never handed to encode(), releasing its slot
+    private void discard(String cacheKey, Encode encode, String reason) {
+        encode.destroy();
+        encode.finish(false, reason);
+        finishEncode(cacheKey, encode);
+        slots.release();
+    }
+
+    private void finishEncode(String cacheKey, Encode encode) {
+        synchronized (inFlight) {
+            inFlight.remove(cacheKey, encode);
+        }
+        try {
+            if (encode.completed) {
+                transcodeCache.commit(encode.tempFile, cacheKey);
+            } else {
+                Files.deleteIfExists(encode.tempFile);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not finish transcode cache entry {}: {}", cacheKey, e.getMessage());
+        }
+    }
+
+    /**
+     * A running encode: the temporary file it writes and how far it got
+     */
+    private static final class Encode {
+        private final Path tempFile;
+        private volatile Process process;
+        private long written;
+        private boolean finished;
+        private volatile boolean completed;
+        private volatile String failure;
+
+        private Encode(Path tempFile) {
+            this.tempFile = tempFile;
+        }
+
+        private synchronized void advance(int bytes) {
+            written += bytes;
+            notifyAll();
+        }
+
+        private synchronized void finish(boolean completed, String failure) {
+            this.completed = completed;
+            this.failure = failure != null ? failure : "Transcode failed";
+            finished = true;
+            notifyAll();
+        }
+
+        /**
+         * @param position The number of bytes the caller already has
+         * @return The number of bytes written so far, only equal to position once the encode finished
+         */
+        private synchronized long awaitOutput(long position) throws InterruptedException {
+            while (written <= position && !finished) {
+                wait();
+            }
+            return written;
+        }
+
+        private FileChannel openOutput() throws IOException {
+            return FileChannel.open(tempFile, StandardOpenOption.READ);
+        }
+
+        private void destroy() {
+            Process running = process;
+            if (running != null && running.isAlive()) {
+                running.destroyForcibly();
+            }
+        }
+    }
+
+    private boolean probeFfmpeg() {
+        try {
+            Process process = new ProcessBuilder(ffmpegPath, "-version")
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                return false;
+            }
+            boolean found = process.exitValue() == 0;
+            logger.info("ffmpeg {} at '{}'", found ? "found" : "not usable", ffmpegPath);
+            return found;
+        } catch (IOException e) {
+            logger.info("ffmpeg not found at '{}', transcoding is disabled", ffmpegPath);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -5,6 +5,16 @@ import { FiSearch, FiX } from 'react-icons/fi';
 import { BsMusicNoteBeamed } from 'react-icons/bs';
 import '../styles/SearchBar.css';
 
+// Group the suggestions into the dropdown's sections
+function groupSuggestions(suggestions) {
+  return {
+    artists: suggestions.filter(suggestion => suggestion.type === 'ARTIST'),
+    albums: suggestions.filter(suggestion => suggestion.type === 'ALBUM'),
+    tracks: suggestions.filter(suggestion => suggestion.type === 'TRACK'),
+    playlists: suggestions.filter(suggestion => suggestion.type === 'PLAYLIST')
+  };
+}
+
 function SearchBar() {
   const [searchQuery, setSearchQuery] = useState('');
   const [searchResults, setSearchResults] = useState(null);
@@ -30,7 +40,8 @@ function SearchBar() {
     };
   }, []);
 
-  // Memoized search function to prevent unnecessary API calls
+  // Memoized suggestion lookup to prevent unnecessary API calls.
+  // Only the library is searched while typing, Lidarr is searched on submit from the search page
   const fetchSearchResults = useCallback((query) => {
     // Use cached results if available and query length > 2
     const normalizedQuery = query.trim().toLowerCase();
@@ -56,14 +67,15 @@ function SearchBar() {
     // Otherwise, make the API call
     setIsLoading(true);
     
-    searchService.search(query)
+    searchService.suggest(query)
       .then(response => {
+        const results = groupSuggestions(response.data);
         // Store in cache
         searchCache.current[normalizedQuery] = {
-          data: response.data,
+          data: results,
           timestamp: currentTime
         };
-        setSearchResults(response.data);
+        setSearchResults(results);
         setShowDropdown(true);
         previousQuery.current = query;
       })
@@ -176,9 +188,9 @@ function SearchBar() {
                   <div className="dropdown-section">
                     <h3>Artists</h3>
                     <ul>
-                      {searchResults.artists.map(artist => (
+                      {searchResults.artists.map((artist, index) => (
                         <li 
-                          key={artist.id || artist.foreignId} 
+                          key={artist.id || artist.foreignId || index} 
                           onClick={() => handleResultClick('artist', artist.name, artist.foreignId, artist.metadata, artist.lidarrId)}
                         >
                           {artist.imageUrl && (
@@ -206,9 +218,9 @@ function SearchBar() {
                   <div className="dropdown-section">
                     <h3>Albums</h3>
                     <ul>
-                      {searchResults.albums.map(album => (
+                      {searchResults.albums.map((album, index) => (
                         <li 
-                          key={album.id || album.foreignId} 
+                          key={album.id || album.foreignId || index} 
                           onClick={() => handleResultClick('album', album.name, album.foreignId, album.metadata, album.lidarrId)}
                         >
                           {album.imageUrl && (
@@ -236,9 +248,9 @@ function SearchBar() {
                   <div className="dropdown-section">
                     <h3>Tracks</h3>
                     <ul>
-                      {searchResults.tracks.map(track => (
+                      {searchResults.tracks.map((track, index) => (
                         <li 
-                          key={track.id || track.foreignId} 
+                          key={track.id || track.foreignId || index} 
                           onClick={() => handleResultClick('track', track.name, track.foreignId, track.metadata, track.lidarrId)}
                         >
                           {track.imageUrl && (
@@ -266,9 +278,9 @@ function SearchBar() {
                   <div className="dropdown-section">
                     <h3>Playlists</h3>
                     <ul>
-                      {searchResults.playlists.map(playlist => (
+                      {searchResults.playlists.map((playlist, index) => (
                         <li 
-                          key={playlist.id || playlist.foreignId} 
+                          key={playlist.id || playlist.foreignId || index} 
                           onClick={() => handleResultClick('playlist', playlist.name, playlist.foreignId, playlist.metadata, playlist.lidarrId)}
                         >
                           {playlist.imageUrl && (
@@ -194,7 +194,9 @@ export const trackService = {
 
 // Search service
 export const searchService = {
-  search: (query) => api.get(`/search?query=${encodeURIComponent(query)}`)
+  search: (query) => api.get(`/search?query=${encodeURIComponent(query)}`),
+  // Library names only, Lidarr is searched by search() on submit
+  suggest: (query) => api.get(`/search/suggest?query=${encodeURIComponent(query)}`)
 };
 
 export const artistService = {